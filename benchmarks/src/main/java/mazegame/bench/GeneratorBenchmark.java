@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.bench;
+
+import java.util.concurrent.TimeUnit;
+import mazegame.Maze;
+import mazegame.MazeOptions;
+import mazegame.MazeOptions.Algorithm;
+import mazegame.MazeOptions.Selection;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how fast each Algorithm generates mazes of different sizes. Every
+ * maze is made with the same seed, so each run generates the same mazes and
+ * results can be compared between versions.
+ * 
+ * PRIM and WILSON take time that grows with the square of the number of
+ * cells, and a single 1000x1000 WILSON maze takes over ten minutes, so they
+ * are measured at smaller sizes by QuadraticGeneratorBenchmark instead.
+ * 
+ * GROWING_TREE runs with the NEWEST Selection unless selection is given,
+ * such as -p algorithm=GROWING_TREE -p selection=NEWEST,RANDOM,MIXED, and
+ * newestRatio sets the share of newest picks for MIXED. The other
+ * Algorithms ignore both.
+ * 
+ * Besides mazes per second, the benchmark counts cells per second, which
+ * stays the same across sizes for an algorithm that scales linearly. Run
+ * with the GC profiler (the default for the jmh task) to see the allocation
+ * rate.
+ * @author Jeffery Thompson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class GeneratorBenchmark {
+	@Param({"100", "1000", "4000"})
+	int size;
+	
+	@Param({"DFS", "FAST_WILSON", "GROWING_TREE", "SIDEWINDER", "BINARY_TREE"})
+	Algorithm algorithm;
+	
+	@Param({"NEWEST"})
+	Selection selection;
+	
+	@Param({"0.5"})
+	double newestRatio;
+	
+	private MazeOptions options;
+	
+	@Setup(Level.Trial)
+	public void setup(){
+		options = new MazeOptions(size, size);
+		options.setAlgorithm(algorithm);
+		options.setSelection(selection);
+		options.setNewestRatio(newestRatio);
+		options.setSeed(42);
+	}
+	
+	@Benchmark
+	public Maze generate(Cells cells){
+		cells.cells += (long)size*size;
+		return new Maze(options);
+	}
+	
+	/**
+	 * Counts the cells generated, reported by JMH as cells per second.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Cells {
+		public long cells;
+		
+		@Setup(Level.Iteration)
+		public void reset(){
+			cells = 0;
+		}
+	}
+}
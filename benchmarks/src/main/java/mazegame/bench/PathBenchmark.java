@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.bench;
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+import mazegame.Direction;
+import mazegame.Maze;
+import mazegame.Maze.Cell;
+import mazegame.MazeOptions;
+import mazegame.Point;
+import mazegame.player.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the path bookkeeping done for every move on a path that is
+ * already long. The path is built once, from a random walk through a large
+ * maze, so its allocation is not part of the score. Each invocation then
+ * takes one step past the end of the path and one step back:
+ * 
+ * add() extends the path and then backtracks, which is what Path.add() does
+ * for a Player moving forward and turning back, including the backtrack
+ * bits. pushPop() does the same with push() and pop(), the plain stack
+ * operations. The score is the time per step, so paths of different lengths
+ * can be compared directly.
+ * @author Jeffery Thompson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class PathBenchmark {
+	@Param({"1000", "1048576"})
+	int length;
+	
+	private Path path;
+	private Point head, next;
+	private Direction forward, back;
+	
+	@Setup(Level.Trial)
+	public void setup(){
+		MazeOptions o = new MazeOptions(1000, 1000);
+		o.setSeed(42);
+		Maze maze = new Maze(o);
+		Walk walk = new Walk(maze, length, 42);
+		path = new Path(maze, Color.red, Color.yellow);
+		for(int i = 0; i < length; i++) path.push(walk.points[i], walk.directions[i]);
+		
+		//from the end of the path, find a step that does not turn back
+		Direction last = walk.directions[length-1];
+		Cell c = maze.getCell(walk.points[length-1]).getNeighbor(last);
+		for(;;){
+			forward = null;
+			for(Direction d : Direction.values())
+				if(!c.hasWall(d) && c.hasNeighbor(d) && d != last.opposite()) forward = d;
+			if(forward != null) break;
+			//dead end, so step back out of it first
+			path.push(c.getPos(), last.opposite());
+			last = last.opposite();
+			c = c.getNeighbor(last);
+		}
+		head = c.getPos();
+		next = c.getNeighbor(forward).getPos();
+		back = forward.opposite();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(2)
+	public Path add(){
+		path.add(head, forward);
+		path.add(next, back);
+		return path;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(2)
+	public Path.PathPoint pushPop(){
+		path.push(head, forward);
+		return path.pop();
+	}
+}
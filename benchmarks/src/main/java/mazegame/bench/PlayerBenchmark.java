@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.bench;
+
+import java.awt.Color;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import mazegame.Direction;
+import mazegame.Maze;
+import mazegame.MazeOptions;
+import mazegame.Point;
+import mazegame.player.OccupancyIndex;
+import mazegame.player.Player;
+import mazegame.player.PlayerList;
+import mazegame.player.PlayerRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of one Player.move() with many Players in the maze. The
+ * Players take turns moving, each along a random walk through open passages
+ * from where it started and then back again, so every move succeeds and
+ * updates the Player's Path. With the PlayerList on, the Players are added
+ * to it and also keep its OccupancyIndex up to date.
+ * 
+ * registryMove makes the same moves with the same players held in a
+ * PlayerRegistry, which keeps an OccupancyIndex of its own when the
+ * PlayerList is on.
+ * @author Jeffery Thompson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class PlayerBenchmark {
+	/**
+	 * Moves in the walks of all the Players together, though each Player
+	 * gets a walk of at least 16 steps out.
+	 */
+	private static final int MOVES = 1 << 16;
+	
+	@Param({"1", "100", "10000"})
+	int players;
+	
+	@Param({"false", "true"})
+	boolean playerList;
+	
+	private Player[] list;
+	private final PlayerList listed = new PlayerList();
+	private PlayerRegistry registry;
+	
+	/**
+	 * Player p's k-th move is moves[p*cycle + k % cycle]. A cycle is a walk
+	 * out and the same walk back, which ends where it started.
+	 */
+	private Direction[] moves;
+	private int cycle;
+	private int[] step;
+	private int next = 0;
+	
+	@Setup(Level.Trial)
+	public void setup(){
+		MazeOptions o = new MazeOptions(500, 500);
+		o.setSeed(42);
+		Maze m = new Maze(o);
+		Random rand = new Random(42);
+		list = new Player[players];
+		registry = new PlayerRegistry(m, players);
+		int half = Math.max(16, MOVES/players);
+		cycle = 2*half;
+		moves = new Direction[players*cycle];
+		step = new int[players];
+		Point goal = o.getGoal();
+		for(int i = 0; i < players; i++){
+			Point start;
+			do {
+				start = new Point(rand.nextInt(500), rand.nextInt(500));
+			} while(Math.abs(start.getX() - goal.getX()) + Math.abs(start.getY() - goal.getY()) <= 1);
+			list[i] = new Player(m, Color.red, start);
+			if(playerList) listed.add(list[i]);
+			registry.add(start);
+			
+			Walk walk = new Walk(m, start, half, rand.nextLong());
+			for(int k = 0; k < half; k++){
+				moves[i*cycle + k] = walk.directions[k];
+				moves[i*cycle + cycle-1 - k] = walk.directions[k].opposite();
+			}
+		}
+		if(playerList) registry.setOccupancy(new OccupancyIndex(m));
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		listed.clear();
+	}
+	
+	private int nextPlayer(){
+		int p = next;
+		if(++next == players) next = 0;
+		return p;
+	}
+	
+	private Direction nextMove(int p){
+		int k = step[p];
+		step[p] = k+1 == cycle ? 0 : k+1;
+		return moves[p*cycle + k];
+	}
+	
+	@Benchmark
+	public boolean move(){
+		int p = nextPlayer();
+		return list[p].move(nextMove(p));
+	}
+	
+	@Benchmark
+	public boolean registryMove(){
+		int p = nextPlayer();
+		return registry.move(p, nextMove(p));
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.bench;
+
+import java.util.concurrent.TimeUnit;
+import mazegame.Maze;
+import mazegame.MazeOptions;
+import mazegame.MazeOptions.Algorithm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the Algorithms whose time grows with the square of the number of
+ * cells, at sizes they can finish. PRIM removes Cells from the middle of a
+ * list, and WILSON searches the whole maze for unvisited Cells before every
+ * walk. Both are kept as they are so that their seeds still make the same
+ * mazes. The sizes overlap GeneratorBenchmark at 100, so the two can be
+ * compared.
+ * @author Jeffery Thompson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class QuadraticGeneratorBenchmark {
+	@Param({"100", "300"})
+	int size;
+	
+	@Param({"PRIM", "WILSON"})
+	Algorithm algorithm;
+	
+	private MazeOptions options;
+	
+	@Setup(Level.Trial)
+	public void setup(){
+		options = new MazeOptions(size, size);
+		options.setAlgorithm(algorithm);
+		options.setSeed(42);
+	}
+	
+	@Benchmark
+	public Maze generate(GeneratorBenchmark.Cells cells){
+		cells.cells += (long)size*size;
+		return new Maze(options);
+	}
+}
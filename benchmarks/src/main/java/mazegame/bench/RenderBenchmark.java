@@ -0,0 +1,115 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.bench;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import mazegame.Maze;
+import mazegame.MazeOptions;
+import mazegame.Point;
+import mazegame.gui.MazePanel;
+import mazegame.player.GameState;
+import mazegame.player.Player;
+import mazegame.player.PlayerList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures drawing a maze into an offscreen BufferedImage, without a
+ * display: Maze.paint() at different sizes and cell sizes, and
+ * MazePanel.render(), which is what paintComponent() draws, with two Players
+ * and their paths. The panel keeps the default CELL_SIZE and is zoomed to
+ * the same cell size instead, like it is in the game.
+ * @author Jeffery Thompson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Djava.awt.headless=true"})
+public class RenderBenchmark {
+	@Param({"50", "200", "500"})
+	int size;
+	
+	@Param({"2", "4", "16"})
+	int cellSize;
+	
+	private Maze maze;
+	private BufferedImage image;
+	private MazePanel panel;
+	
+	@Setup(Level.Trial)
+	public void setup(){
+		MazeOptions o = new MazeOptions(size, size);
+		o.setSeed(42);
+		maze = new Maze(o);
+		image = new BufferedImage(size*cellSize+1, size*cellSize+1, BufferedImage.TYPE_INT_RGB);
+		
+		Player p1 = new Player(maze, Color.red);
+		Player p2 = new Player(maze, Color.blue, new Point(size-1, size-1));
+		Walk walk = new Walk(maze, size*size/4, 42);
+		for(int i = 0; i < walk.directions.length; i++) p1.move(walk.directions[i]);
+		PlayerList.getLocal().add(p1);
+		PlayerList.getLocal().add(p2);
+		GameState state = new GameState(maze);
+		panel = new MazePanel(maze, state);
+		panel.setZoom((double)cellSize/Maze.CELL_SIZE);
+		panel.awaitRendering();
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		PlayerList.getLocal().clear();
+	}
+	
+	@Benchmark
+	public BufferedImage paintMaze(){
+		Graphics2D g = image.createGraphics();
+		maze.paint(g, cellSize, 0, 0, size, size);
+		g.dispose();
+		return image;
+	}
+	
+	@Benchmark
+	public BufferedImage renderPanel(){
+		Graphics2D g = image.createGraphics();
+		panel.render(g);
+		g.dispose();
+		return image;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.bench;
+
+import java.util.Random;
+import mazegame.Direction;
+import mazegame.Maze;
+import mazegame.Maze.Cell;
+import mazegame.Point;
+
+/**
+ * A random walk through the passages of a Maze, made ahead of time so the
+ * benchmarks that replay it only measure the code under test.
+ * @author Jeffery Thompson
+ */
+class Walk {
+	final Point[] points;
+	final Direction[] directions;
+	
+	/**
+	 * Walks from the start of the maze, choosing a random open Direction at
+	 * every step. Since the walk is random, it often goes back the way it
+	 * came, which exercises backtracking.
+	 * @param m Maze to walk through
+	 * @param length number of steps
+	 * @param seed seed for the random choices
+	 */
+	Walk(Maze m, int length, long seed){
+		this(m, m.getOptions().getStart(), length, seed, false);
+	}
+	
+	/**
+	 * Walks from the given Point the same way, except that it never steps
+	 * onto the goal, so a Player following it never finishes and every move
+	 * succeeds. The start must not be the goal or next to it.
+	 * @param m Maze to walk through
+	 * @param start Point to start from
+	 * @param length number of steps
+	 * @param seed seed for the random choices
+	 */
+	Walk(Maze m, Point start, int length, long seed){
+		this(m, start, length, seed, true);
+	}
+	
+	private Walk(Maze m, Point start, int length, long seed, boolean avoidGoal){
+		points = new Point[length];
+		directions = new Direction[length];
+		Random rand = new Random(seed);
+		Direction[] dirs = Direction.values();
+		Point goal = m.getOptions().getGoal();
+		Cell c = m.getCell(start);
+		for(int i = 0; i < length; i++){
+			Direction d;
+			do {
+				d = dirs[rand.nextInt(4)];
+			} while(c.hasWall(d) || !c.hasNeighbor(d)
+					|| (avoidGoal && c.getNeighbor(d).getPos().equals(goal)));
+			points[i] = c.getPos();
+			directions[i] = d;
+			c = c.getNeighbor(d);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame;
+
+/**
+ * Thrown when a GenerationToken stops a MazeGenerator before the maze is
+ * finished. The partly generated Maze and the progress made are kept, so a
+ * caller that can use a maze with unreachable Cells may still do so, and
+ * any other caller can simply give up.
+ * @author Jeffery Thompson
+ */
+public class GenerationCancelledException extends RuntimeException {
+	private final transient Maze maze;
+	private final transient GenerationProgress progress;
+	private final boolean expired;
+	
+	GenerationCancelledException(Maze m, GenerationProgress p, boolean e){
+		super((e ? "Generation timed out: " : "Generation cancelled: ") + p);
+		maze = m;
+		progress = p;
+		expired = e;
+	}
+	
+	/**
+	 * Gets the Maze as it was when generation stopped. Only the passages
+	 * carved so far are open, so some Cells may not be reachable.
+	 * @return partly generated Maze
+	 */
+	public Maze getMaze(){
+		return maze;
+	}
+	
+	/**
+	 * Gets the progress made before generation stopped.
+	 * @return progress of the generation
+	 */
+	public GenerationProgress getProgress(){
+		return progress;
+	}
+	
+	/**
+	 * Checks if generation stopped because the deadline passed, rather than
+	 * being cancelled or interrupted.
+	 * @return true if the deadline passed
+	 */
+	public boolean isExpired(){
+		return expired;
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame;
+
+/**
+ * A listener for the progress of a MazeGenerator. Progress is sampled, not
+ * reported for every step, so a listener costs almost nothing however large
+ * the maze is. All the methods are called on the thread generating the maze.
+ * @author Jeffery Thompson
+ */
+public interface GenerationListener {
+	/**
+	 * Called before the first wall is broken.
+	 * @param m Maze being generated
+	 */
+	void started(Maze m);
+	/**
+	 * Called every so often while the maze is being generated.
+	 * @param p progress so far
+	 */
+	void progress(GenerationProgress p);
+	/**
+	 * Called when the maze is finished, or when a GenerationToken stops it
+	 * early, in which case fewer passages than the total were carved.
+	 * @param p final progress
+	 */
+	void finished(GenerationProgress p);
+}
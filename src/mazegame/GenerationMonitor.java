@@ -0,0 +1,227 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import mazegame.MazeOptions.Algorithm;
+
+/**
+ * Counts the work done by a MazeGenerator and reports it to a
+ * GenerationListener and to Java Flight Recorder. The generator calls
+ * carve() and step() as it goes, which only increment counters; every
+ * SAMPLE_STEPS calls the monitor checks the clock, and reports progress if
+ * enough time has passed. Nothing is printed, so generating a maze costs
+ * the same whether anyone is watching or not.
+ * 
+ * The same check of the clock is where a GenerationToken is checked, so
+ * cancellation and deadlines cost nothing between checks.
+ * 
+ * Two JFR events are recorded: mazegame.Generation, for the whole maze, and
+ * mazegame.GenerationProgress, at each report. Loading the first event class
+ * starts up the whole of JFR, which takes hundreds of milliseconds, so the
+ * events are only created when JFR is already running.
+ * @author Jeffery Thompson
+ */
+class GenerationMonitor {
+	/**
+	 * Number of steps between checks of the clock. Must be a power of two.
+	 */
+	static final int SAMPLE_STEPS = 4096;
+	/**
+	 * Shortest time between progress reports.
+	 */
+	static final long REPORT_NANOS = 100000000L;
+	
+	private final Maze maze;
+	private final Algorithm algorithm;
+	private final GenerationListener listener;
+	private final GenerationToken token;
+	private final GenerationEvent event;
+	
+	private final long total;
+	private long start, nextReport;
+	private long carved = 0, steps = 0;
+	private long walks = 0, walkSteps = 0, longestWalk = 0;
+	
+	GenerationMonitor(Maze m, Algorithm a, GenerationListener l, GenerationToken t){
+		maze = m;
+		algorithm = a;
+		listener = l;
+		token = t;
+		event = FlightRecorder.isInitialized() ? new GenerationEvent() : null;
+		total = (long)m.getOptions().getSizeX()*m.getOptions().getSizeY() - 1;
+	}
+	
+	void start(){
+		if(event != null) event.begin();
+		start = System.nanoTime();
+		nextReport = start + REPORT_NANOS;
+		if(listener != null) listener.started(maze);
+		if(token != null && token.shouldStop(start)) stop(start);
+	}
+	
+	/**
+	 * Counts a passage carved between two Cells.
+	 */
+	void carve(){
+		carved++;
+		if((++steps & (SAMPLE_STEPS-1)) == 0) sample();
+	}
+	
+	/**
+	 * Counts many passages carved at once, for generators that carve on
+	 * several threads and report back to the thread that owns the monitor.
+	 * @param count number of passages carved
+	 */
+	void carve(long count){
+		carved += count;
+		long before = steps;
+		steps += count;
+		if(before/SAMPLE_STEPS != steps/SAMPLE_STEPS) sample();
+	}
+	
+	/**
+	 * Counts a step that does not carve, such as one step of a random walk.
+	 */
+	void step(){
+		if((++steps & (SAMPLE_STEPS-1)) == 0) sample();
+	}
+	
+	/**
+	 * Checks the clock now, for steps that are too slow to wait for
+	 * SAMPLE_STEPS of.
+	 */
+	void checkpoint(){
+		sample();
+	}
+	
+	/**
+	 * Counts a finished random walk.
+	 * @param length number of steps in the walk
+	 */
+	void walk(long length){
+		walks++;
+		walkSteps += length;
+		if(length > longestWalk) longestWalk = length;
+	}
+	
+	void finish(){
+		GenerationProgress p = progress(System.nanoTime());
+		commit(false);
+		if(listener != null) listener.finished(p);
+	}
+	
+	/**
+	 * Stops generation, reporting the progress so far as finished.
+	 * @throws GenerationCancelledException always
+	 */
+	private void stop(long now){
+		GenerationProgress p = progress(now);
+		commit(true);
+		if(listener != null) listener.finished(p);
+		throw new GenerationCancelledException(maze, p,
+				!token.isCancelled() && token.isExpired(now));
+	}
+	
+	private void commit(boolean cancelled){
+		if(event != null && event.shouldCommit()){
+			event.algorithm = algorithm.name();
+			event.sizeX = maze.getOptions().getSizeX();
+			event.sizeY = maze.getOptions().getSizeY();
+			event.seed = maze.getOptions().getSeed();
+			event.carved = carved;
+			event.walks = walks;
+			event.walkSteps = walkSteps;
+			event.longestWalk = longestWalk;
+			event.cancelled = cancelled;
+			event.commit();
+		}
+	}
+	
+	private void sample(){
+		long now = System.nanoTime();
+		if(token != null && token.shouldStop(now)) stop(now);
+		if(now - nextReport < 0) return;
+		nextReport = now + REPORT_NANOS;
+		ProgressEvent e = event != null ? new ProgressEvent() : null;
+		if(e != null && e.shouldCommit()){
+			e.algorithm = algorithm.name();
+			e.carved = carved;
+			e.total = total;
+			e.walkSteps = walkSteps;
+			e.commit();
+		}
+		if(listener != null) listener.progress(progress(now));
+	}
+	
+	private GenerationProgress progress(long now){
+		return new GenerationProgress(algorithm, carved, total, now - start,
+				walks, walkSteps, longestWalk);
+	}
+	
+	@Name("mazegame.Generation")
+	@Label("Maze Generation")
+	@Category("MazeGame")
+	@Description("Generation of one maze")
+	static class GenerationEvent extends Event {
+		@Label("Algorithm")
+		String algorithm;
+		@Label("Width")
+		int sizeX;
+		@Label("Height")
+		int sizeY;
+		@Label("Seed")
+		long seed;
+		@Label("Passages Carved")
+		long carved;
+		@Label("Random Walks")
+		long walks;
+		@Label("Random Walk Steps")
+		long walkSteps;
+		@Label("Longest Random Walk")
+		long longestWalk;
+		@Label("Cancelled")
+		boolean cancelled;
+	}
+	
+	@Name("mazegame.GenerationProgress")
+	@Label("Maze Generation Progress")
+	@Category("MazeGame")
+	@Description("Progress of a long maze generation, sampled")
+	static class ProgressEvent extends Event {
+		@Label("Algorithm")
+		String algorithm;
+		@Label("Passages Carved")
+		long carved;
+		@Label("Total Passages")
+		long total;
+		@Label("Random Walk Steps")
+		long walkSteps;
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame;
+
+import mazegame.MazeOptions.Algorithm;
+
+/**
+ * How far a MazeGenerator has got. A perfect maze is finished when it has
+ * one passage fewer than it has Cells, so the number of passages carved
+ * shows how much is left. For Wilson's algorithm, the random walks are also
+ * counted, since most of its time is spent walking.
+ * @author Jeffery Thompson
+ */
+public class GenerationProgress {
+	private final Algorithm algorithm;
+	private final long carved, total;
+	private final long elapsed;
+	private final long walks, walkSteps, longestWalk;
+	
+	GenerationProgress(Algorithm a, long c, long t, long e, long w, long s, long l){
+		algorithm = a;
+		carved = c;
+		total = t;
+		elapsed = e;
+		walks = w;
+		walkSteps = s;
+		longestWalk = l;
+	}
+	
+	public Algorithm getAlgorithm(){
+		return algorithm;
+	}
+	
+	/**
+	 * Gets the number of passages carved so far.
+	 * @return passages carved
+	 */
+	public long getCarved(){
+		return carved;
+	}
+	/**
+	 * Gets the number of passages a finished maze has.
+	 * @return total passages
+	 */
+	public long getTotal(){
+		return total;
+	}
+	/**
+	 * Gets how much of the maze is finished.
+	 * @return fraction from 0 to 1
+	 */
+	public double getFraction(){
+		return total == 0 ? 1 : (double)carved/total;
+	}
+	
+	/**
+	 * Gets the time since generation started.
+	 * @return elapsed time in nanoseconds
+	 */
+	public long getElapsedNanos(){
+		return elapsed;
+	}
+	
+	/**
+	 * Gets the number of random walks finished.
+	 * @return number of walks, 0 for algorithms that do not walk
+	 */
+	public long getWalks(){
+		return walks;
+	}
+	/**
+	 * Gets the total length of the random walks, including the parts that
+	 * were erased when the walk crossed itself.
+	 * @return steps walked
+	 */
+	public long getWalkSteps(){
+		return walkSteps;
+	}
+	public long getLongestWalk(){
+		return longestWalk;
+	}
+	
+	@Override
+	public String toString(){
+		String s = String.format("%s: %d/%d passages (%.1f%%) in %.1f ms",
+				algorithm, carved, total, 100*getFraction(), elapsed/1e6);
+		if(walks > 0) s += String.format(", %d walks, %d steps, longest %d",
+				walks, walkSteps, longestWalk);
+		return s;
+	}
+}
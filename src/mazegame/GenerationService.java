@@ -0,0 +1,175 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame;
+
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates mazes on background threads so the caller never waits for a
+ * MazeGenerator. Each request returns a CompletableFuture of the Maze.
+ * 
+ * The service also guesses what will be asked for next. After every request
+ * it starts generating another maze with the same options and a new seed,
+ * and a caller such as NewMazeDialog can call prefetch() while the user is
+ * still choosing options. When a request matches the maze being prefetched,
+ * that maze is used, so it is often ready immediately.
+ * 
+ * Cancelling a future stops its Maze from being generated. If generation
+ * has already started, the GenerationToken it was started with is cancelled,
+ * so the worker thread stops within a few thousand steps. A request with a
+ * timeout completes exceptionally with a GenerationCancelledException if
+ * its Maze is not ready in time.
+ * @author Jeffery Thompson
+ */
+public class GenerationService {
+	private final ExecutorService executor;
+	private final Random random = new Random();
+	
+	private MazeOptions prefetchOptions;
+	private CompletableFuture<Maze> prefetch;
+	private GenerationToken prefetchToken;
+	
+	private volatile GenerationListener listener;
+	
+	/**
+	 * Creates a service that uses all but one of the processors, so the user
+	 * interface stays responsive.
+	 */
+	public GenerationService(){
+		this(Math.max(1, Runtime.getRuntime().availableProcessors()-1));
+	}
+	
+	/**
+	 * Creates a service with the given number of worker threads.
+	 * @param threads number of mazes generated at once
+	 */
+	public GenerationService(int threads){
+		AtomicInteger count = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(threads, (Runnable r) -> {
+			Thread t = new Thread(r, "Maze generator " + count.incrementAndGet());
+			t.setDaemon(true);
+			t.setPriority(Thread.NORM_PRIORITY - 1);
+			return t;
+		});
+	}
+	
+	/**
+	 * Generates a Maze. If a Maze matching the options is being prefetched,
+	 * that Maze is used, with its own seed. Otherwise the options are used as
+	 * they are. Either way, another Maze with the same options is prefetched
+	 * afterwards.
+	 * @param o MazeOptions of the maze
+	 * @return future of the Maze
+	 */
+	public CompletableFuture<Maze> generate(MazeOptions o){
+		return generate(o, -1);
+	}
+	
+	/**
+	 * Generates a Maze, giving up if it is not ready within the timeout. The
+	 * time spent waiting for a worker thread counts towards the timeout. A
+	 * prefetched Maze that is still being generated gets the same deadline.
+	 * @param o MazeOptions of the maze
+	 * @param timeout time allowed for the Maze
+	 * @param unit TimeUnit of the timeout
+	 * @return future of the Maze
+	 */
+	public CompletableFuture<Maze> generate(MazeOptions o, long timeout, TimeUnit unit){
+		return generate(o, unit.toNanos(timeout));
+	}
+	
+	private synchronized CompletableFuture<Maze> generate(MazeOptions o, long timeout){
+		CompletableFuture<Maze> f;
+		if(o.matches(prefetchOptions) && !prefetch.isCancelled()){
+			f = prefetch;
+			if(timeout >= 0) prefetchToken.setTimeout(timeout, TimeUnit.NANOSECONDS);
+			prefetch = null;
+			prefetchOptions = null;
+			prefetchToken = null;
+		}
+		else {
+			GenerationToken t = new GenerationToken();
+			if(timeout >= 0) t.setTimeout(timeout, TimeUnit.NANOSECONDS);
+			f = submit(new MazeOptions(o), t);
+		}
+		prefetch(o);
+		return f;
+	}
+	
+	/**
+	 * Starts generating a Maze that is likely to be asked for soon. The Maze
+	 * being prefetched before is cancelled, unless it already matches.
+	 * @param o MazeOptions of the maze; the seed is replaced
+	 */
+	public synchronized void prefetch(MazeOptions o){
+		if(o.matches(prefetchOptions) && !prefetch.isCancelled()) return;
+		cancelPrefetch();
+		prefetchOptions = new MazeOptions(o);
+		prefetchOptions.setSeed(random.nextLong());
+		prefetchToken = new GenerationToken();
+		prefetch = submit(prefetchOptions, prefetchToken);
+	}
+	
+	/**
+	 * Cancels the Maze being prefetched.
+	 */
+	public synchronized void cancelPrefetch(){
+		if(prefetch != null) prefetch.cancel(false);
+		prefetch = null;
+		prefetchOptions = null;
+		prefetchToken = null;
+	}
+	
+	/**
+	 * Sets the listener for the progress of every Maze the service generates,
+	 * including prefetched ones. It is called on the worker threads.
+	 * @param l listener for generation progress, or null
+	 */
+	public void setListener(GenerationListener l){
+		listener = l;
+	}
+	
+	/**
+	 * Stops the worker threads. Mazes that have not been generated yet are
+	 * never completed, and the ones being generated are interrupted.
+	 */
+	public void shutdown(){
+		cancelPrefetch();
+		executor.shutdownNow();
+	}
+	
+	private CompletableFuture<Maze> submit(MazeOptions o, GenerationToken t){
+		CompletableFuture<Maze> f = CompletableFuture.supplyAsync(
+				() -> new Maze(o, listener, t), executor);
+		f.whenComplete((Maze m, Throwable e) -> {
+			if(f.isCancelled()) t.cancel();
+		});
+		return f;
+	}
+}
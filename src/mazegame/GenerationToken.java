@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token that stops a MazeGenerator early. The token is cancelled by
+ * calling cancel(), by passing its deadline, or by interrupting the thread
+ * generating the maze. The generator checks the token every few thousand
+ * steps, so a cancelled generation stops within a fraction of a millisecond,
+ * and throws a GenerationCancelledException holding the partly carved maze.
+ * @author Jeffery Thompson
+ */
+public class GenerationToken {
+	private volatile boolean cancelled = false;
+	private volatile long deadline;
+	private volatile boolean hasDeadline = false;
+	
+	/**
+	 * Creates a token with no deadline.
+	 */
+	public GenerationToken(){
+	}
+	
+	/**
+	 * Creates a token that expires after the given time.
+	 * @param timeout time allowed for generation
+	 * @param unit TimeUnit of the timeout
+	 */
+	public GenerationToken(long timeout, TimeUnit unit){
+		setTimeout(timeout, unit);
+	}
+	
+	/**
+	 * Cancels the generation.
+	 */
+	public void cancel(){
+		cancelled = true;
+	}
+	
+	/**
+	 * Sets the deadline to the given time from now, replacing any earlier
+	 * deadline.
+	 * @param timeout time allowed for generation
+	 * @param unit TimeUnit of the timeout
+	 */
+	public void setTimeout(long timeout, TimeUnit unit){
+		deadline = System.nanoTime() + unit.toNanos(timeout);
+		hasDeadline = true;
+	}
+	
+	/**
+	 * Checks if the token was cancelled with cancel(). Passing the deadline
+	 * does not count.
+	 * @return true if cancel() was called
+	 */
+	public boolean isCancelled(){
+		return cancelled;
+	}
+	
+	/**
+	 * Checks if the deadline has passed.
+	 * @param now current System.nanoTime()
+	 * @return true if the token has a deadline and it has passed
+	 */
+	public boolean isExpired(long now){
+		return hasDeadline && now - deadline >= 0;
+	}
+	
+	/**
+	 * Checks if generation should stop, because the token was cancelled, the
+	 * deadline passed or the current thread was interrupted.
+	 * @param now current System.nanoTime()
+	 * @return true if generation should stop
+	 */
+	boolean shouldStop(long now){
+		return cancelled || isExpired(now) || Thread.currentThread().isInterrupted();
+	}
+}
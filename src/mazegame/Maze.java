@@ -52,13 +52,51 @@ public class Maze {
 	 * @param o MazeOptions for the maze
 	 */
 	public Maze(MazeOptions o){
+		this(o, true, null, null);
+	}
+	
+	/**
+	 * Creates a Maze object with the given MazeOptions, reporting the progress
+	 * of its generation to the GenerationListener l.
+	 * @param o MazeOptions for the maze
+	 * @param l listener for generation progress
+	 */
+	public Maze(MazeOptions o, GenerationListener l){
+		this(o, true, l, null);
+	}
+	
+	/**
+	 * Creates a Maze object with the given MazeOptions, giving up if the
+	 * GenerationToken t is cancelled or its deadline passes.
+	 * @param o MazeOptions for the maze
+	 * @param l listener for generation progress, or null
+	 * @param t token to stop generation, or null
+	 * @throws GenerationCancelledException if generation was stopped early
+	 */
+	public Maze(MazeOptions o, GenerationListener l, GenerationToken t){
+		this(o, true, l, t);
+	}
+	
+	private Maze(MazeOptions o, boolean generate, GenerationListener l,
+			GenerationToken t){
 		this.options = o;
 		grid = new Cell[options.getSizeX()][options.getSizeY()];
 		for(int i = 0; i < options.getSizeX(); i++)
 			for(int j = 0; j < options.getSizeY(); j++)
 				grid[i][j] = new Cell(i, j);
 		
-		MazeGenerator.generateMaze(this, options.getAlgorithm());
+		if(generate) MazeGenerator.generateMaze(this, options.getAlgorithm(), l, t);
+	}
+	
+	/**
+	 * Creates a Maze with every wall intact, without running a generator.
+	 * This is used to rebuild a maze whose walls are already known, such as
+	 * one received from a server.
+	 * @param o MazeOptions for the maze
+	 * @return Maze with no passages
+	 */
+	public static Maze blank(MazeOptions o){
+		return new Maze(o, false, null, null);
 	}
 	
 	/**
@@ -102,15 +140,67 @@ public class Maze {
 		return unvisited;
 	}
 	
+	/**
+	 * Estimates the heap used by the maze: the grid, and for each Cell its
+	 * position and the EnumMap of its walls.
+	 * @return size in bytes
+	 * @see MemoryFootprint
+	 */
+	public long getFootprint(){
+		int sizeX = options.getSizeX(), sizeY = options.getSizeY();
+		long cell = MemoryFootprint.shallow(Cell.class)
+				+ MemoryFootprint.shallow(Point.class)
+				+ MemoryFootprint.shallow(EnumMap.class)
+				+ MemoryFootprint.array(Object.class, Direction.values().length);
+		return MemoryFootprint.shallow(Maze.class)
+				+ MemoryFootprint.shallow(MazeOptions.class)
+				+ 2*MemoryFootprint.shallow(Point.class)
+				+ MemoryFootprint.array(Cell[].class, sizeX)
+				+ sizeX*MemoryFootprint.array(Cell.class, sizeY)
+				+ (long)sizeX*sizeY*cell;
+	}
+	
 	/**
 	 * Paints the maze using the Graphics2D object g. This method calls each
 	 * Cell's paint method.
 	 * @param g Graphics2D object to draw onto
 	 */
 	public void paint(Graphics2D g){
-		for(int i = 0; i < options.getSizeX(); i++)
-			for(int j = 0; j < options.getSizeY(); j++){
-				if(grid[i][j] != null) grid[i][j].paint(g);
+		paint(g, 0, 0, options.getSizeX(), options.getSizeY());
+	}
+	
+	/**
+	 * Paints the Cells from (x0,y0) up to, but not including, (x1,y1) using
+	 * the Graphics2D object g. The Cells are painted in the same order as
+	 * paint(g), so painting a region with a clip gives the same pixels as
+	 * painting the whole maze. Since each Cell's background reaches one pixel
+	 * into the next row and column, the region should start one Cell before
+	 * the clip.
+	 * @param g Graphics2D object to draw onto
+	 * @param x0 first column of Cells
+	 * @param y0 first row of Cells
+	 * @param x1 column to stop at (exclusive)
+	 * @param y1 row to stop at (exclusive)
+	 */
+	public void paint(Graphics2D g, int x0, int y0, int x1, int y1){
+		paint(g, CELL_SIZE, x0, y0, x1, y1);
+	}
+	
+	/**
+	 * Paints the Cells from (x0,y0) up to, but not including, (x1,y1) at the
+	 * given cell size instead of CELL_SIZE, so the maze can be drawn at
+	 * another size without changing how it is shown elsewhere.
+	 * @param g Graphics2D object to draw onto
+	 * @param cellSize size of a Cell in pixels
+	 * @param x0 first column of Cells
+	 * @param y0 first row of Cells
+	 * @param x1 column to stop at (exclusive)
+	 * @param y1 row to stop at (exclusive)
+	 */
+	public void paint(Graphics2D g, int cellSize, int x0, int y0, int x1, int y1){
+		for(int i = Math.max(x0, 0); i < x1 && i < options.getSizeX(); i++)
+			for(int j = Math.max(y0, 0); j < y1 && j < options.getSizeY(); j++){
+				if(grid[i][j] != null) grid[i][j].paint(g, cellSize);
 			}
 	}
 	
@@ -253,10 +343,20 @@ public class Maze {
 		 * @param g 
 		 */
 		public void paint(Graphics2D g){
+			paint(g, CELL_SIZE);
+		}
+		
+		/**
+		 * Paints the Cell to the specified Graphics2D object at the given
+		 * cell size.
+		 * @param g Graphics2D object to draw onto
+		 * @param size size of the Cell in pixels
+		 */
+		public void paint(Graphics2D g, int size){
 			//Cell background
 			g.setColor(Color.white);
-			g.fillRect(pos.x*CELL_SIZE+1, pos.y*CELL_SIZE+1, 
-					CELL_SIZE, CELL_SIZE);
+			g.fillRect(pos.x*size+1, pos.y*size+1, 
+					size, size);
 			
 			//draw checkerboard goal
 			g.setColor(Color.black);
@@ -264,27 +364,27 @@ public class Maze {
 				for(int i = 0; i < 4; i++) 
 					for(int j = 0; j < 4; j++)
 						if(i%2==j%2)
-							g.fillRect(pos.x*CELL_SIZE+i*CELL_SIZE/4, pos.y*CELL_SIZE+j*CELL_SIZE/4,
-									CELL_SIZE/4, CELL_SIZE/4);
+							g.fillRect(pos.x*size+i*size/4, pos.y*size+j*size/4,
+									size/4, size/4);
 			}
 			//draw corner pixels
-			g.fillRect(pos.x*CELL_SIZE, pos.y*CELL_SIZE, 1, 1); //top left
-			g.fillRect((pos.x+1)*CELL_SIZE-1, pos.y*CELL_SIZE, 1, 1); //top right
-			g.fillRect((pos.x+1)*CELL_SIZE-1, (pos.y+1)*CELL_SIZE-1, 1, 1); //bottom right
-			g.fillRect(pos.x*CELL_SIZE, (pos.y+1)*CELL_SIZE-1, 1, 1); //bottom left
+			g.fillRect(pos.x*size, pos.y*size, 1, 1); //top left
+			g.fillRect((pos.x+1)*size-1, pos.y*size, 1, 1); //top right
+			g.fillRect((pos.x+1)*size-1, (pos.y+1)*size-1, 1, 1); //bottom right
+			g.fillRect(pos.x*size, (pos.y+1)*size-1, 1, 1); //bottom left
 			//draw walls
 			if(wall.get(Direction.NORTH))
-				g.drawLine(pos.x*CELL_SIZE, pos.y*CELL_SIZE,
-					(pos.x+1)*CELL_SIZE-1, pos.y*CELL_SIZE);
+				g.drawLine(pos.x*size, pos.y*size,
+					(pos.x+1)*size-1, pos.y*size);
 			if(wall.get(Direction.EAST))
-				g.drawLine((pos.x+1)*CELL_SIZE-1, pos.y*CELL_SIZE,
-					(pos.x+1)*CELL_SIZE-1, (pos.y+1)*CELL_SIZE-1);
+				g.drawLine((pos.x+1)*size-1, pos.y*size,
+					(pos.x+1)*size-1, (pos.y+1)*size-1);
 			if(wall.get(Direction.SOUTH))
-				g.drawLine(pos.x*CELL_SIZE, (pos.y+1)*CELL_SIZE-1,
-					(pos.x+1)*CELL_SIZE-1, (pos.y+1)*CELL_SIZE-1);
+				g.drawLine(pos.x*size, (pos.y+1)*size-1,
+					(pos.x+1)*size-1, (pos.y+1)*size-1);
 			if(wall.get(Direction.WEST))
-				g.drawLine(pos.x*CELL_SIZE, pos.y*CELL_SIZE,
-					pos.x*CELL_SIZE, (pos.y+1)*CELL_SIZE-1);
+				g.drawLine(pos.x*size, pos.y*size,
+					pos.x*size, (pos.y+1)*size-1);
 		}
 	}
 }
@@ -25,21 +25,70 @@ package mazegame;
 
 import mazegame.player.PlayerList;
 import mazegame.player.Player;
+import mazegame.player.PlayerLoadTest;
 import java.awt.Color;
+import java.util.Arrays;
+import mazegame.bot.BotSimulation;
 import mazegame.gui.MazeFrame;
+import mazegame.io.MazeBatch;
+import mazegame.io.MazeExporter;
+import mazegame.io.ReplayPlayback;
+import mazegame.net.GameServer;
+import mazegame.net.LoadClient;
+import mazegame.net.SnapshotBenchmark;
+import mazegame.stats.RaceStats;
 
 /**
  *
  * @author Jeff
  */
 public class MazeGame {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+		if(args.length > 0){
+			String[] rest = Arrays.copyOfRange(args, 1, args.length);
+			switch(args[0]){
+				case "export":
+					MazeExporter.main(rest);
+					return;
+				case "batch":
+					MazeBatch.main(rest);
+					return;
+				case "bots":
+					BotSimulation.main(rest);
+					return;
+				case "replay":
+					ReplayPlayback.main(rest);
+					return;
+				case "memory":
+					MemoryFootprint.main(rest);
+					return;
+				case "playerload":
+					PlayerLoadTest.main(rest);
+					return;
+				case "server":
+					GameServer.main(rest);
+					return;
+				case "netload":
+					LoadClient.main(rest);
+					return;
+				case "netbench":
+					SnapshotBenchmark.main(rest);
+					return;
+				case "stats":
+					RaceStats.main(rest);
+					return;
+				default:
+					System.err.println("Unknown command: " + args[0]);
+					System.err.println("Commands: export, batch, bots, memory, playerload, replay, server, netload, netbench, stats");
+					System.exit(1);
+			}
+		}
 		MazeOptions options = new MazeOptions(21,21);
 		options.setAlgorithm(MazeOptions.Algorithm.WILSON);
 		options.setGoal(new Point(10,10));
 		Maze m = new Maze(options);
-		PlayerList.add(new Player(m,Color.red));
-		PlayerList.add(new Player(m,Color.blue,new Point(20,20)));
+		PlayerList.getLocal().add(new Player(m,Color.red));
+		PlayerList.getLocal().add(new Player(m,Color.blue,new Point(20,20)));
 	    MazeFrame mf = new MazeFrame(m);
     }
 }
@@ -27,9 +27,13 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 import mazegame.Maze.Cell;
 import mazegame.MazeOptions.Algorithm;
+import mazegame.MazeOptions.Selection;
 import mazegame.player.Path;
 import mazegame.player.Path.PathPoint;
 
@@ -42,25 +46,70 @@ import mazegame.player.Path.PathPoint;
  * @author Jeffery Thompson
  */
 public class MazeGenerator {
+	private static final Direction[] DIRECTIONS = Direction.values();
+	private static final int[] DX = {0, 1, 0, -1};
+	private static final int[] DY = {-1, 0, 1, 0};
+	private static final int ROWS_PER_TASK = 16;
 	
 	public static void generateMaze(Maze m, Algorithm a){
+		generateMaze(m, a, null);
+	}
+	
+	/**
+	 * Generates a maze on the Maze m, reporting progress to the
+	 * GenerationListener l. Progress is also recorded as JFR events when a
+	 * flight recording is running.
+	 * @param m Maze to generate
+	 * @param a generation Algorithm
+	 * @param l listener for progress, or null
+	 */
+	public static void generateMaze(Maze m, Algorithm a, GenerationListener l){
+		generateMaze(m, a, l, null);
+	}
+	
+	/**
+	 * Generates a maze on the Maze m, stopping early if the GenerationToken
+	 * t is cancelled or its deadline passes.
+	 * @param m Maze to generate
+	 * @param a generation Algorithm
+	 * @param l listener for progress, or null
+	 * @param t token to stop generation, or null
+	 * @throws GenerationCancelledException if generation was stopped early
+	 */
+	public static void generateMaze(Maze m, Algorithm a, GenerationListener l,
+			GenerationToken t){
+		GenerationMonitor monitor = new GenerationMonitor(m, a, l, t);
+		monitor.start();
 		switch(a){
 			case DFS:
-				generateDFSMaze(m);
+				generateDFSMaze(m, monitor);
 				break;
 			case PRIM:
-				generatePrimMaze(m);
+				generatePrimMaze(m, monitor);
 				break;
 			case WILSON:
-				generateWilsonMaze(m);
+				generateWilsonMaze(m, monitor);
+				break;
+			case FAST_WILSON:
+				generateFastWilsonMaze(m, monitor);
+				break;
+			case GROWING_TREE:
+				generateGrowingTreeMaze(m, monitor);
+				break;
+			case SIDEWINDER:
+				generateRowMaze(m, monitor, true);
+				break;
+			case BINARY_TREE:
+				generateRowMaze(m, monitor, false);
 				break;
 			default:
 				break;
 		}
+		monitor.finish();
 	}
 	
-	private static void generateDFSMaze(Maze m){
-		Random rand = new Random();
+	private static void generateDFSMaze(Maze m, GenerationMonitor monitor){
+		Random rand = new Random(m.getOptions().getSeed());
 		Stack<Cell> s = new Stack();
 		
 		Cell currCell = m.getCell(rand.nextInt(m.getOptions().getSizeX()),
@@ -74,18 +123,19 @@ public class MazeGenerator {
 			}
 			if(neighbors.isEmpty()){
 				currCell = s.pop();
+				monitor.step();
 			}
 			else {
 				currCell.breakWall(dir);
+				monitor.carve();
 				s.push(currCell);
 				currCell = currCell.getNeighbor(dir);
 			}
 		} while(!s.empty() && currCell != null);
 	}
 	
-	private static void generatePrimMaze(Maze m){
-		System.out.println("Generating prim maze");
-		Random rand = new Random();
+	private static void generatePrimMaze(Maze m, GenerationMonitor monitor){
+		Random rand = new Random(m.getOptions().getSeed());
 		List<Cell> cells = new ArrayList();
 		
 		cells.add(m.getCell(rand.nextInt(m.getOptions().getSizeX()),
@@ -99,37 +149,304 @@ public class MazeGenerator {
 				neighbors.remove(dir);
 				dir = Direction.values()[rand.nextInt(4)];
 			}
-			if(neighbors.isEmpty()) cells.remove(currCell);
+			if(neighbors.isEmpty()) {
+				cells.remove(currCell);
+				monitor.step();
+			}
 			else{
 				currCell.breakWall(dir);
+				monitor.carve();
 				cells.add(currCell.getNeighbor(dir));
 			}
 		}
 	}
 	
-	private static void generateWilsonMaze(Maze m){
-		System.out.println("Generating wilson maze");
-		Random rand = new Random();
+	private static void generateWilsonMaze(Maze m, GenerationMonitor monitor){
+		Random rand = new Random(m.getOptions().getSeed());
 		Path path = new Path();
 		
 		m.getCell(m.getOptions().getGoal()).visited = true;
 		do{
+			monitor.checkpoint();
 			List<Cell> unvisited = m.getUnvisitedCells();
-			System.out.println(unvisited.size());
 			Cell currCell = unvisited.get(rand.nextInt(unvisited.size()));
+			long length = 0;
 			do{
 				Direction dir = Direction.values()[rand.nextInt(4)];
 				if(currCell.hasNeighbor(dir)) {
 					path.push(currCell.getPos(),dir);
 					currCell = currCell.getNeighbor(dir);
+					length++;
+					monitor.step();
 				}
 			} while(!currCell.visited);
+			monitor.walk(length);
 			do{
 				PathPoint pp = path.pop();
 				Cell c = m.getCell(pp.getPoint());
-				if(!c.visited) c.breakWall(pp.getDirection());
+				if(!c.visited) {
+					c.breakWall(pp.getDirection());
+					monitor.carve();
+				}
 			} while(!path.isEmpty());
 		} while(!m.getUnvisitedCells().isEmpty());
 		
 	}
+	
+	/**
+	 * Generates a maze with the growing tree algorithm. Each step a Cell is
+	 * chosen with the MazeOptions' Selection; if it has unvisited neighbors,
+	 * a passage is carved to a random one, which is added, and otherwise the
+	 * Cell is removed.
+	 * 
+	 * Cells are indexes x*sizeY+y, kept twice: in order, between lo and hi,
+	 * for the newest and oldest Cells, and unordered in active, for random
+	 * picks. Removing a Cell swaps the last active Cell into its place and
+	 * marks it removed in index; removed Cells are skipped when they reach
+	 * either end of the order, so the order stays exact and every step is
+	 * O(1). Every Cell is added once, so no array needs to grow, and the loop
+	 * allocates nothing.
+	 */
+	private static void generateGrowingTreeMaze(Maze m, GenerationMonitor monitor){
+		int sizeX = m.getOptions().getSizeX(), sizeY = m.getOptions().getSizeY();
+		Selection selection = m.getOptions().getSelection();
+		double newestRatio = m.getOptions().getNewestRatio();
+		SplittableRandom rand = new SplittableRandom(m.getOptions().getSeed());
+		boolean[] visited = new boolean[sizeX*sizeY];
+		int[] order = new int[sizeX*sizeY];
+		int[] active = new int[sizeX*sizeY];
+		//where each added Cell is in active, or -1 once it is removed
+		int[] index = new int[sizeX*sizeY];
+		int lo = 0, hi = 0, count = 0;
+		
+		int first = rand.nextInt(sizeX)*sizeY + rand.nextInt(sizeY);
+		visited[first] = true;
+		order[hi++] = first;
+		active[count++] = first;
+		while(count > 0){
+			while(index[order[hi-1]] < 0) hi--;
+			while(index[order[lo]] < 0) lo++;
+			int cell;
+			switch(selection){
+				case NEWEST:
+					cell = order[hi-1];
+					break;
+				case OLDEST:
+					cell = order[lo];
+					break;
+				case MIXED:
+					cell = rand.nextDouble() < newestRatio ? order[hi-1] : active[rand.nextInt(count)];
+					break;
+				default:
+					cell = active[rand.nextInt(count)];
+					break;
+			}
+			int x = cell/sizeY, y = cell - x*sizeY;
+			
+			int open = 0;
+			for(int d = 0; d < 4; d++){
+				int nx = x + DX[d], ny = y + DY[d];
+				if(nx >= 0 && nx < sizeX && ny >= 0 && ny < sizeY && !visited[nx*sizeY + ny])
+					open |= 1 << d;
+			}
+			if(open == 0){
+				int last = active[--count];
+				active[index[cell]] = last;
+				index[last] = index[cell];
+				index[cell] = -1;
+				monitor.step();
+				continue;
+			}
+			int d = Integer.numberOfTrailingZeros(open);
+			for(int k = rand.nextInt(Integer.bitCount(open)); k > 0; k--){
+				open &= open-1;
+				d = Integer.numberOfTrailingZeros(open);
+			}
+			int next = (x + DX[d])*sizeY + y + DY[d];
+			m.getCell(x, y).breakWall(DIRECTIONS[d]);
+			visited[next] = true;
+			order[hi++] = next;
+			index[next] = count;
+			active[count++] = next;
+			monitor.carve();
+		}
+	}
+	
+	/**
+	 * Generates the same kind of maze as Wilson's algorithm, every maze with
+	 * equal probability, but in close to linear time. generateWilsonMaze()
+	 * searches every Cell for unvisited ones before each walk and keeps each
+	 * walk as a Path; it is kept as it is so that its seeds still make the
+	 * same mazes.
+	 * 
+	 * Here the walks run on arrays indexed by x*sizeY+y, and only the final
+	 * passages are carved into the Cells. Each walk remembers the last
+	 * direction taken out of each Cell, which erases loops without storing
+	 * the walk. Walks start from the unvisited Cells in order, which Wilson's
+	 * algorithm allows without losing uniformity, so no search is needed.
+	 * The tree is rooted at the centre of the maze, the Cell a random walk
+	 * reaches soonest on average, which shortens the first walk.
+	 */
+	private static void generateFastWilsonMaze(Maze m, GenerationMonitor monitor){
+		int sizeX = m.getOptions().getSizeX(), sizeY = m.getOptions().getSizeY();
+		int n = sizeX*sizeY;
+		SplittableRandom rand = new SplittableRandom(m.getOptions().getSeed());
+		boolean[] visited = new boolean[n];
+		byte[] exit = new byte[n];
+		long bits = 0;
+		int bitsLeft = 0;
+		int x, y;
+		
+		visited[sizeX/2*sizeY + sizeY/2] = true;
+		for(int start = 0; start < n; start++){
+			if(visited[start]) continue;
+			x = start/sizeY;
+			y = start%sizeY;
+			int cell = start;
+			long length = 0;
+			while(!visited[cell]){
+				if(bitsLeft == 0){
+					bits = rand.nextLong();
+					bitsLeft = 32;
+				}
+				int d = (int)bits & 3;
+				bits >>>= 2;
+				bitsLeft--;
+				int nx = x + DX[d], ny = y + DY[d];
+				if(nx < 0 || nx >= sizeX || ny < 0 || ny >= sizeY) continue;
+				exit[cell] = (byte)d;
+				x = nx;
+				y = ny;
+				cell = nx*sizeY + ny;
+				length++;
+				monitor.step();
+			}
+			monitor.walk(length);
+			
+			x = start/sizeY;
+			y = start%sizeY;
+			cell = start;
+			while(!visited[cell]){
+				visited[cell] = true;
+				int d = exit[cell];
+				m.getCell(x, y).breakWall(DIRECTIONS[d]);
+				monitor.carve();
+				x += DX[d];
+				y += DY[d];
+				cell = x*sizeY + y;
+			}
+		}
+	}
+
+	/**
+	 * Generates a sidewinder or binary tree maze. Both decide each row on its
+	 * own, carving only east along the row and north into the row above, so
+	 * bands of rows are carved in parallel on the common ForkJoinPool,
+	 * straight into the Cells. This is safe because every wall belongs to
+	 * exactly one row: the south walls of a row are only opened by the row
+	 * below, and opening a wall that is already in a Cell's map does not
+	 * change the map's structure. Each row has its own random numbers, mixed
+	 * from the seed and the row, so a seed makes the same maze on any number
+	 * of threads.
+	 * 
+	 * The bands are handed out in waves, and the monitor is updated between
+	 * waves on this thread, so cancellation is still checked as it runs.
+	 * @param sidewinder true for sidewinder, false for binary tree
+	 */
+	private static void generateRowMaze(Maze m, GenerationMonitor monitor, boolean sidewinder){
+		int sizeY = m.getOptions().getSizeY();
+		long seed = m.getOptions().getSeed();
+		int tasks = (sizeY + ROWS_PER_TASK - 1)/ROWS_PER_TASK;
+		int wave = ForkJoinPool.getCommonPoolParallelism()*4;
+		
+		for(int first = 0; first < tasks; first += wave){
+			long carved = IntStream.range(first, Math.min(tasks, first + wave)).parallel()
+					.mapToLong(t -> carveRows(m, 0, t*ROWS_PER_TASK,
+							Math.min(sizeY, (t+1)*ROWS_PER_TASK), seed, sidewinder))
+					.sum();
+			monitor.carve(carved);
+		}
+	}
+	
+	/**
+	 * Carves the rows y0 to y1 of a sidewinder or binary tree maze. In a binary
+	 * tree maze each Cell opens north or east at random, or whichever of the
+	 * two it has. In a sidewinder maze, going east, each Cell either opens
+	 * east, extending the current run, or ends the run, which is then joined
+	 * north from one of its Cells; the top row is one run.
+	 * 
+	 * The Cells of a column are next to each other in the grid, so the band
+	 * is walked a column at a time, keeping the state of each row in arrays,
+	 * rather than a row at a time, which would touch a different column for
+	 * every Cell.
+	 * @param first row of the maze that is row 0 of m
+	 * @return number of passages carved
+	 */
+	private static long carveRows(Maze m, int first, int y0, int y1, long seed, boolean sidewinder){
+		int sizeX = m.getOptions().getSizeX(), rows = y1 - y0;
+		SplittableRandom[] rand = new SplittableRandom[rows];
+		long[] bits = new long[rows];
+		int[] bitsLeft = new int[rows];
+		int[] runStart = new int[rows];
+		for(int r = 0; r < rows; r++)
+			rand[r] = new SplittableRandom(mix(seed + (y0+r+1)*0x9E3779B97F4A7C15L));
+		
+		long carved = 0;
+		for(int x = 0; x < sizeX; x++){
+			for(int r = 0; r < rows; r++){
+				int y = y0 + r;
+				Direction dir;
+				if(y == 0) dir = x < sizeX-1 ? Direction.EAST : null;
+				else if(x == sizeX-1) dir = Direction.NORTH;
+				else {
+					if(bitsLeft[r] == 0){
+						bits[r] = rand[r].nextLong();
+						bitsLeft[r] = 64;
+					}
+					dir = (bits[r] & 1) != 0 ? Direction.EAST : Direction.NORTH;
+					bits[r] >>>= 1;
+					bitsLeft[r]--;
+				}
+				if(dir == null) continue;
+				if(sidewinder && dir == Direction.NORTH){
+					m.getCell(runStart[r] + rand[r].nextInt(x - runStart[r] + 1), y - first).breakWall(dir);
+					runStart[r] = x+1;
+				}
+				else m.getCell(x, y - first).breakWall(dir);
+				carved++;
+			}
+		}
+		return carved;
+	}
+	
+	/**
+	 * Carves a band of rows of the sidewinder or binary tree maze made with
+	 * the MazeOptions o into the blank Maze rows, whose row 0 is row y0 of
+	 * the maze. Rows depend only on the seed, so the band has the same
+	 * passages as those rows of the whole maze, except that the north walls
+	 * of its first row open into nothing and the south walls of its last row
+	 * are left closed unless it is the last row of the maze. This lets a
+	 * maze too big to hold be made a few rows at a time.
+	 * @param rows blank Maze as wide as the maze, holding the band
+	 * @param o options of the whole maze
+	 * @param y0 row of the maze the band starts at
+	 * @throws IllegalArgumentException if o is not for SIDEWINDER or
+	 * BINARY_TREE
+	 */
+	public static void generateRows(Maze rows, MazeOptions o, int y0){
+		if(o.getAlgorithm() != Algorithm.SIDEWINDER && o.getAlgorithm() != Algorithm.BINARY_TREE)
+			throw new IllegalArgumentException("Rows can't be made apart for " + o.getAlgorithm());
+		carveRows(rows, y0, y0, y0 + rows.getOptions().getSizeY(), o.getSeed(),
+				o.getAlgorithm() == Algorithm.SIDEWINDER);
+	}
+	
+	/**
+	 * Scrambles the bits of z (the finalizer of SplittableRandom's mixing
+	 * function), so seeds for neighboring rows give unrelated numbers.
+	 */
+	private static long mix(long z){
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
 }
@@ -23,6 +23,7 @@
  */
 package mazegame;
 
+import java.util.Random;
 
 /**
  * A class that stores options for a maze, including size, start and end points,
@@ -34,6 +35,9 @@ package mazegame;
 public class MazeOptions {
 	private final int sizeX, sizeY;
 	private Algorithm algorithm;
+	private long seed;
+	private Selection selection = Selection.NEWEST;
+	private double newestRatio = 0.5;
 	
 	private Point start;
 	private Point goal;
@@ -43,7 +47,8 @@ public class MazeOptions {
 	 * is required. The other options may be set with their specific methods.
 	 * The start Point defaults to the top left of the maze (0,0). The goal
 	 * Point defaults to the bottom right of the maze (x-1,y-1). The default
-	 * maze generation algorithm is DFS.
+	 * maze generation algorithm is DFS. The seed is chosen at random, so each
+	 * MazeOptions makes a different maze unless the seed is set.
 	 * @param x
 	 * @param y 
 	 */
@@ -51,9 +56,41 @@ public class MazeOptions {
 		sizeX = x;
 		sizeY = y;
 		algorithm = Algorithm.DFS;
+		seed = new Random().nextLong();
 		start = new Point(0,0);
 		goal = new Point(x-1,y-1);
 	}
+	/**
+	 * Creates a copy of the MazeOptions o, including its seed.
+	 * @param o MazeOptions to copy
+	 */
+	public MazeOptions(MazeOptions o){
+		sizeX = o.sizeX;
+		sizeY = o.sizeY;
+		algorithm = o.algorithm;
+		seed = o.seed;
+		selection = o.selection;
+		newestRatio = o.newestRatio;
+		start = new Point(o.start.x, o.start.y);
+		goal = new Point(o.goal.x, o.goal.y);
+	}
+	
+	/**
+	 * Checks if a maze made with the MazeOptions o would be the same kind of
+	 * maze as one made with these options: the same size, Algorithm, start
+	 * and goal, and for GROWING_TREE the same Selection. The seed is not
+	 * compared.
+	 * @param o MazeOptions to compare to
+	 * @return true if the options only differ in their seed
+	 */
+	public boolean matches(MazeOptions o){
+		return o != null && sizeX == o.sizeX && sizeY == o.sizeY
+				&& algorithm == o.algorithm
+				&& (algorithm != Algorithm.GROWING_TREE || selection == o.selection
+						&& (selection != Selection.MIXED || newestRatio == o.newestRatio))
+				&& start.equals(o.start) && goal.equals(o.goal);
+	}
+	
 	/**
 	 * Gets the horizontal size of the maze.
 	 * @return horizontal size
@@ -84,6 +121,72 @@ public class MazeOptions {
 	public void setAlgorithm(Algorithm a){
 		algorithm = a;
 	}
+	/**
+	 * Sets the Algorithm from a command line argument. The argument is an
+	 * Algorithm name, and for GROWING_TREE may add a Selection and, for MIXED,
+	 * a newest ratio, such as GROWING_TREE:MIXED:0.75. Case is ignored.
+	 * @param s Algorithm argument
+	 * @throws IllegalArgumentException if the argument names no Algorithm or
+	 * Selection, or the ratio is not a number
+	 */
+	public void parseAlgorithm(String s){
+		String[] parts = s.toUpperCase().split(":");
+		if(parts.length > 3 || parts.length > 1 && !parts[0].equals(Algorithm.GROWING_TREE.name()))
+			throw new IllegalArgumentException("Bad algorithm " + s);
+		algorithm = Algorithm.valueOf(parts[0]);
+		if(parts.length > 1) selection = Selection.valueOf(parts[1]);
+		if(parts.length > 2) setNewestRatio(Double.parseDouble(parts[2]));
+	}
+	
+	/**
+	 * Gets how the GROWING_TREE Algorithm chooses the next Cell to grow from.
+	 * @return cell Selection
+	 */
+	public Selection getSelection(){
+		return selection;
+	}
+	/**
+	 * Sets how the GROWING_TREE Algorithm chooses the next Cell to grow from.
+	 * @param s cell Selection
+	 */
+	public void setSelection(Selection s){
+		selection = s;
+	}
+	
+	/**
+	 * Gets the share of choices that take the newest Cell when the Selection
+	 * is MIXED. The rest take a random Cell.
+	 * @return ratio from 0 to 1
+	 */
+	public double getNewestRatio(){
+		return newestRatio;
+	}
+	/**
+	 * Sets the share of choices that take the newest Cell when the Selection
+	 * is MIXED. 1 makes the same kind of maze as DFS, 0 the same kind as
+	 * Prim's algorithm, and anything in between a mix of long rivers and
+	 * short branches.
+	 * @param r ratio, clamped to 0 and 1
+	 */
+	public void setNewestRatio(double r){
+		newestRatio = Math.max(0, Math.min(1, r));
+	}
+	
+	/**
+	 * Gets the seed for the random numbers used to generate the maze. Two
+	 * mazes with the same size, Algorithm and seed are the same maze.
+	 * @return generation seed
+	 */
+	public long getSeed(){
+		return seed;
+	}
+	/**
+	 * Sets the seed for the random numbers used to generate the maze.
+	 * @param s generation seed
+	 */
+	public void setSeed(long s){
+		seed = s;
+	}
 	
 	/**
 	 * Gets the starting Point of the maze. This is the recommended starting
@@ -147,7 +250,31 @@ public class MazeOptions {
 		 * probability. Since mazes with a lower "river" factor are more common,
 		 * this algorithm tends to create lower "river" mazes.
 		 */
-		WILSON;
+		WILSON,
+		/**
+		 * A much faster implementation of Wilson's algorithm. It makes the
+		 * same kind of mazes as WILSON, but not the same maze for a seed.
+		 */
+		FAST_WILSON,
+		/**
+		 * The growing tree algorithm, which grows the maze from a list of
+		 * Cells, choosing one with the MazeOptions' Selection each step.
+		 * Choosing the newest Cell makes mazes like DFS, and a random one
+		 * makes mazes like Prim's algorithm.
+		 */
+		GROWING_TREE,
+		/**
+		 * The sidewinder algorithm. Each row is made of runs joined to the
+		 * row above by one passage, so the top row is a single corridor and
+		 * solving upwards is easy. Rows are carved in parallel.
+		 */
+		SIDEWINDER,
+		/**
+		 * The binary tree algorithm. Each Cell opens either north or east, so
+		 * the top row and right column are corridors and the maze leans
+		 * towards the top right. Rows are carved in parallel.
+		 */
+		BINARY_TREE;
 		
 		@Override
 		public String toString(){
@@ -158,9 +285,41 @@ public class MazeOptions {
 					return "Prim's Algorithm";
 				case WILSON:
 					return "Wilson's Algorithm";
+				case FAST_WILSON:
+					return "Wilson's Algorithm (fast)";
+				case GROWING_TREE:
+					return "Growing Tree";
+				case SIDEWINDER:
+					return "Sidewinder";
+				case BINARY_TREE:
+					return "Binary Tree";
 				default:
 					return null;
 			}
 		}
 	}
+	
+	/**
+	 * How the GROWING_TREE Algorithm chooses which Cell to grow from.
+	 */
+	public enum Selection {
+		/**
+		 * The Cell added last. Makes long rivers, like DFS.
+		 */
+		NEWEST,
+		/**
+		 * Any of the Cells. Makes many short branches, like Prim's algorithm.
+		 */
+		RANDOM,
+		/**
+		 * The Cell added first. Makes long straight passages leading away
+		 * from the first Cell.
+		 */
+		OLDEST,
+		/**
+		 * The newest Cell for a share of the choices set by the newest ratio,
+		 * and a random Cell for the rest.
+		 */
+		MIXED
+	}
 }
@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame;
+
+import java.util.Arrays;
+import mazegame.Maze.Cell;
+
+/**
+ * Solves a maze by a breadth-first search out from the goal. Afterwards, every
+ * Cell knows which Direction leads towards the goal and how many moves away
+ * the goal is, so finding the way from any Cell takes no more searching.
+ * Since the mazes are perfect, this is the only way to the goal.
+ * @author Jeffery Thompson
+ */
+public class MazeSolver {
+	private static final byte NONE = -1;
+	
+	private final Maze maze;
+	private final int sizeX, sizeY;
+	private final byte[] next;
+	private final int[] distance;
+	
+	/**
+	 * Solves the Maze m for its goal Point.
+	 * @param m Maze to solve
+	 */
+	public MazeSolver(Maze m){
+		this(m, m.getOptions().getGoal());
+	}
+	
+	/**
+	 * Solves the Maze m for the given goal Point.
+	 * @param m Maze to solve
+	 * @param goal Point to find the way to
+	 */
+	public MazeSolver(Maze m, Point goal){
+		maze = m;
+		sizeX = m.getOptions().getSizeX();
+		sizeY = m.getOptions().getSizeY();
+		next = new byte[sizeX*sizeY];
+		distance = new int[sizeX*sizeY];
+		Arrays.fill(next, NONE);
+		Arrays.fill(distance, -1);
+		
+		int[] queue = new int[sizeX*sizeY];
+		int head = 0, tail = 0;
+		int g = goal.getX()*sizeY + goal.getY();
+		distance[g] = 0;
+		queue[tail++] = g;
+		while(head < tail){
+			int i = queue[head++];
+			Cell c = m.getCell(i/sizeY, i%sizeY);
+			for(Direction dir : Direction.values()){
+				if(c.hasWall(dir) || !c.hasNeighbor(dir)) continue;
+				Point p = c.getNeighbor(dir).getPos();
+				int n = p.getX()*sizeY + p.getY();
+				if(distance[n] >= 0) continue;
+				distance[n] = distance[i] + 1;
+				next[n] = (byte)dir.opposite().ordinal();
+				queue[tail++] = n;
+			}
+		}
+	}
+	
+	public Maze getMaze(){
+		return maze;
+	}
+	
+	/**
+	 * Gets the Direction to move from the Cell at (x,y) to get closer to the
+	 * goal.
+	 * @param x horizontal position of the Cell
+	 * @param y vertical position of the Cell
+	 * @return Direction towards the goal, or null at the goal or if the goal
+	 * can't be reached
+	 */
+	public Direction getDirection(int x, int y){
+		byte d = next[x*sizeY + y];
+		return d == NONE ? null : Direction.values()[d];
+	}
+	
+	/**
+	 * Gets the number of moves from the Cell at (x,y) to the goal.
+	 * @param x horizontal position of the Cell
+	 * @param y vertical position of the Cell
+	 * @return number of moves, or -1 if the goal can't be reached
+	 */
+	public int getDistance(int x, int y){
+		return distance[x*sizeY + y];
+	}
+}
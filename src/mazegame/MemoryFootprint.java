@@ -0,0 +1,248 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import mazegame.Maze.Cell;
+import mazegame.player.OccupancyIndex;
+import mazegame.player.Path;
+import mazegame.player.Player;
+import mazegame.player.PlayerList;
+
+/**
+ * Estimates how much heap the maze structures use. The estimates follow the
+ * object layout of a 64-bit HotSpot VM, read from the running VM: the size
+ * of an object header and a reference, and the alignment of objects. The
+ * size of an object is its header plus its instance fields, found by
+ * reflection, rounded up to the alignment.
+ * 
+ * Counting from the layout, instead of measuring the heap, gives the same
+ * answer every time, so it can be used to check the footprint against a
+ * budget. Objects that are shared, such as Boolean.TRUE or a Color, are not
+ * counted. Maze, Path, Player and PlayerList each have a getFootprint()
+ * method built on this class.
+ * @author Jeffery Thompson
+ */
+public final class MemoryFootprint {
+	/**
+	 * Size of an object header, a reference, and the alignment of objects.
+	 */
+	public static final int HEADER, REFERENCE, ALIGNMENT;
+	static {
+		boolean compressedOops = true, compressedClasses = true;
+		int alignment = 8;
+		try {
+			HotSpotDiagnosticMXBean vm = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+			compressedOops = Boolean.parseBoolean(vm.getVMOption("UseCompressedOops").getValue());
+			compressedClasses = Boolean.parseBoolean(vm.getVMOption("UseCompressedClassPointers").getValue());
+			alignment = Integer.parseInt(vm.getVMOption("ObjectAlignmentInBytes").getValue());
+		} catch(RuntimeException e){
+			// Not HotSpot; assume its defaults
+		}
+		HEADER = compressedClasses ? 12 : 16;
+		REFERENCE = compressedOops ? 4 : 8;
+		ALIGNMENT = alignment;
+	}
+	
+	private static final Map<Class, Long> shallow = new ConcurrentHashMap();
+	
+	private MemoryFootprint(){}
+	
+	/**
+	 * Gets the size of an object of the given class, not counting the
+	 * objects it refers to.
+	 * @param c class of the object
+	 * @return size in bytes
+	 */
+	public static long shallow(Class c){
+		Long size = shallow.get(c);
+		if(size == null){
+			long s = HEADER;
+			for(Class k = c; k != null; k = k.getSuperclass())
+				for(Field f : k.getDeclaredFields())
+					if(!Modifier.isStatic(f.getModifiers())) s += sizeOf(f.getType());
+			size = align(s);
+			shallow.put(c, size);
+		}
+		return size;
+	}
+	
+	/**
+	 * Gets the size of an array.
+	 * @param component type of the elements, such as int.class
+	 * @param length number of elements
+	 * @return size in bytes
+	 */
+	public static long array(Class component, long length){
+		return align(HEADER + 4 + length*sizeOf(component));
+	}
+	
+	/**
+	 * Gets the size of a field or array element of the given type.
+	 * @param type primitive type or class of a reference
+	 * @return size in bytes
+	 */
+	public static int sizeOf(Class type){
+		if(type == long.class || type == double.class) return 8;
+		if(type == int.class || type == float.class) return 4;
+		if(type == short.class || type == char.class) return 2;
+		if(type == byte.class || type == boolean.class) return 1;
+		return REFERENCE;
+	}
+	
+	/**
+	 * Rounds a size up to the alignment of objects.
+	 * @param size size in bytes
+	 * @return aligned size
+	 */
+	public static long align(long size){
+		return (size + ALIGNMENT-1)/ALIGNMENT*ALIGNMENT;
+	}
+	
+	/**
+	 * Gets the size of a ConcurrentHashMap with the given number of entries,
+	 * not counting its keys and values.
+	 * @param entries number of entries
+	 * @return size in bytes
+	 */
+	public static long concurrentHashMap(int entries){
+		long size = shallow(ConcurrentHashMap.class);
+		if(entries == 0) return size;
+		int table = 16;
+		while(table*3/4 < entries) table <<= 1;
+		try {
+			size += entries*shallow(Class.forName("java.util.concurrent.ConcurrentHashMap$Node"));
+		} catch(ClassNotFoundException e){
+			size += entries*align(HEADER + 8 + 3*REFERENCE);
+		}
+		return size + array(Object.class, table);
+	}
+	
+	/**
+	 * Gets the size of a boxed Integer key, which is 0 for the small values
+	 * that Integer.valueOf() shares.
+	 * @param i value of the key
+	 * @return size in bytes
+	 */
+	public static long integer(int i){
+		return i >= -128 && i <= 127 ? 0 : shallow(Integer.class);
+	}
+	
+	/**
+	 * Prints the footprint of a maze and its players, and checks each part
+	 * against a budget of its own. The budgets are per Cell, or per step for
+	 * a Path, so running the check at two sizes shows whether any part grows
+	 * faster than the maze. The footprint is also measured on the heap, as a
+	 * rough check of the estimate.
+	 * 
+	 * Usage: memory sizeX sizeY [players] [maze] [path] [player] [index]
+	 * where the budgets are the bytes per Cell of the Maze, the bytes per
+	 * step of a Path as long as the maze has Cells, the bytes per Cell of
+	 * each Player in the PlayerList, and the bytes per Cell of the
+	 * OccupancyIndex.
+	 * @param args command line arguments
+	 */
+	public static void main(String[] args){
+		if(args.length < 2){
+			System.err.println("Usage: memory sizeX sizeY [players] [maze] [path] [player] [index]");
+			System.exit(1);
+		}
+		System.setProperty("java.awt.headless", "true");
+		MazeOptions options = new MazeOptions(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+		int players = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+		long cells = (long)options.getSizeX()*options.getSizeY();
+		
+		long before = usedHeap();
+		Maze m = new Maze(options);
+		long measured = usedHeap() - before;
+		long maze = m.getFootprint();
+		System.out.printf("Maze %dx%d: %d bytes (%.1f bytes/cell), %d measured%n",
+				options.getSizeX(), options.getSizeY(), maze, (double)maze/cells, measured);
+		
+		PlayerList playerList = new PlayerList();
+		before = usedHeap();
+		for(int i = 0; i < players; i++)
+			playerList.add(new Player(m));
+		measured = usedHeap() - before;
+		long list = playerList.getFootprint();
+		OccupancyIndex o = playerList.getOccupancy();
+		long index = o == null ? 0 : o.getFootprint();
+		if(players > 0){
+			System.out.printf("Path: %d bytes, Player: %d bytes%n",
+					new Path(m, null, null).getFootprint(), playerList.get(0).getFootprint());
+			System.out.printf("PlayerList of %d: %d bytes (%.1f bytes/cell), %d measured%n",
+					players, list, (double)list/cells, measured);
+			System.out.printf("OccupancyIndex: %d bytes (%.2f bytes/cell)%n", index, (double)index/cells);
+		}
+		
+		//a Path with a step for every Cell, along a random walk
+		Path empty = new Path(m, null, null), path = new Path(m, null, null);
+		Random rand = new Random(0);
+		Direction[] dirs = Direction.values();
+		Cell c = m.getCell(options.getStart());
+		for(long i = 0; i < cells; i++){
+			Direction d;
+			do {
+				d = dirs[rand.nextInt(4)];
+			} while(c.hasWall(d) || !c.hasNeighbor(d));
+			path.push(c.getPos(), d);
+			c = c.getNeighbor(d);
+		}
+		double perStep = (double)(path.getFootprint() - empty.getFootprint())/cells;
+		System.out.printf("Path of %d steps: %d bytes (%.3f bytes/step)%n",
+				cells, path.getFootprint(), perStep);
+		
+		System.out.printf("Total: %d bytes, %.1f bytes/cell%n", maze + list, (double)(maze + list)/cells);
+		boolean within = true;
+		if(args.length > 3) within &= check("Maze", (double)maze/cells, args[3], "cell");
+		if(args.length > 4) within &= check("Path", perStep, args[4], "step");
+		if(args.length > 5 && players > 0)
+			within &= check("Player", (double)(list - index)/players/cells, args[5], "cell");
+		if(args.length > 6 && players > 0)
+			within &= check("OccupancyIndex", (double)index/cells, args[6], "cell");
+		if(!within) System.exit(1);
+	}
+	
+	private static boolean check(String part, double used, String budget, String unit){
+		double max = Double.parseDouble(budget);
+		if(used > max){
+			System.err.printf("%s footprint of %.3f bytes/%s is over the budget of %.3f%n", part, used, unit, max);
+			return false;
+		}
+		System.out.printf("%s footprint of %.3f bytes/%s is within the budget of %.3f%n", part, used, unit, max);
+		return true;
+	}
+	
+	private static long usedHeap(){
+		Runtime r = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++) System.gc();
+		return r.totalMemory() - r.freeMemory();
+	}
+}
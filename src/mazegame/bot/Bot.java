@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.bot;
+
+import java.awt.Color;
+import mazegame.Direction;
+import mazegame.Maze;
+import mazegame.Point;
+import mazegame.player.Player;
+import mazegame.player.PlayerRegistry;
+
+/**
+ * A computer controlled player. Each step, the Bot asks its BotStrategy for a
+ * Direction and moves that way, the same as a key press would.
+ * 
+ * A Bot's position and finish time are kept in a slot of a PlayerRegistry,
+ * so a Bot has no Path and thousands of them fit in a large maze. A Bot that
+ * is drawn can be given a Player, which it moves along with its slot so the
+ * Player's Path shows where it has been.
+ * @author Jeffery Thompson
+ */
+public class Bot {
+	private final PlayerRegistry players;
+	private final int id;
+	private final BotStrategy strategy;
+	private final Maze maze;
+	private final Color color;
+	private volatile Player player;
+	private long moves = 0;
+	
+	/**
+	 * Creates a Bot playing in a slot of a PlayerRegistry.
+	 * @param r registry the Bot's slot is in
+	 * @param id slot of the Bot
+	 * @param s strategy of the Bot
+	 * @param c color to draw the Bot with
+	 */
+	public Bot(PlayerRegistry r, int id, BotStrategy s, Color c){
+		players = r;
+		this.id = id;
+		strategy = s;
+		maze = r.getMaze();
+		color = c;
+	}
+	
+	/**
+	 * Gets the Bot's slot in its PlayerRegistry.
+	 * @return slot of the Bot
+	 */
+	public int getId(){
+		return id;
+	}
+	
+	public Color getColor(){
+		return color;
+	}
+	
+	/**
+	 * Gets the Bot's position, which is the Point of the Cell it is in.
+	 * @return position of the Bot
+	 */
+	public Point getPos(){
+		long p = players.getPosition(id);
+		return maze.getCell(PlayerRegistry.unpackX(p), PlayerRegistry.unpackY(p)).getPos();
+	}
+	
+	public boolean hasFinished(){
+		return players.hasFinished(id);
+	}
+	
+	/**
+	 * Gets the Player that follows this Bot, if it is drawn.
+	 * @return the Player, or null if the Bot has none
+	 * @see BotSimulation#show(Bot)
+	 */
+	public Player getPlayer(){
+		return player;
+	}
+	
+	void setPlayer(Player p){
+		player = p;
+	}
+	
+	/**
+	 * Gets the number of successful moves the Bot has made.
+	 * @return number of moves
+	 */
+	public long getMoves(){
+		return moves;
+	}
+	
+	/**
+	 * Makes one move. Reaching the goal finishes the Bot.
+	 * @return true if the Bot moved, false if it has finished or is stuck
+	 */
+	public boolean step(){
+		if(players.hasFinished(id)) return false;
+		Point pos = getPos();
+		Direction dir = strategy.nextMove(maze, pos);
+		if(dir == null || !players.move(id, dir)) return false;
+		strategy.moved(maze, pos, dir);
+		moves++;
+		Player p = player;
+		if(p != null){
+			p.move(dir);
+			p.checkWin();
+		}
+		return true;
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.bot;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import mazegame.Maze;
+import mazegame.MazeOptions;
+import mazegame.MazeSolver;
+import mazegame.Tickable;
+import mazegame.player.OccupancyIndex;
+import mazegame.player.Player;
+import mazegame.player.PlayerRegistry;
+
+/**
+ * Runs many Bots against one Maze. Each tick, every Bot that hasn't finished
+ * makes one move. The Bots are split into chunks that are stepped in
+ * parallel on a ForkJoinPool, so a tick uses every core. The Maze is only
+ * read, and each Bot is only stepped by one thread per tick.
+ * 
+ * The Bots' positions are kept in a PlayerRegistry with an OccupancyIndex,
+ * rather than in Players, so a Bot costs a few dozen bytes plus its
+ * strategy and no maze-sized Path. Only Bots passed to show() get a Player.
+ * 
+ * A BotSimulation can be run headless as fast as possible with run(), which
+ * reports how many moves per second the game core can handle, or it can be
+ * added to a GameLoop as a Tickable to watch the Bots play.
+ * @author Jeffery Thompson
+ */
+public class BotSimulation implements Tickable {
+	private static final int CHUNK_SIZE = 256;
+	
+	private final Maze maze;
+	private final PlayerRegistry players;
+	private final OccupancyIndex occupancy;
+	private final List<Bot> bots = new ArrayList();
+	private final ForkJoinPool pool;
+	private MazeSolver solver;
+	
+	private long ticks = 0;
+	private long moves = 0;
+	private long elapsed = 0;
+	
+	/**
+	 * Creates a simulation with no Bots.
+	 * @param m Maze the Bots play in
+	 * @param capacity most Bots the simulation can hold
+	 * @param threads number of threads to step the Bots on
+	 */
+	public BotSimulation(Maze m, int capacity, int threads){
+		maze = m;
+		players = new PlayerRegistry(m, capacity);
+		occupancy = new OccupancyIndex(m);
+		players.setOccupancy(occupancy);
+		pool = new ForkJoinPool(threads);
+	}
+	
+	/**
+	 * Adds a Bot at the Maze's start Point.
+	 * @param type strategy of the Bot
+	 * @param seed seed for the strategy's randomness
+	 * @return the new Bot
+	 * @throws IllegalStateException if the simulation is full
+	 */
+	public Bot addBot(BotStrategy.Type type, long seed){
+		Random rand = new Random(seed);
+		Color c = Color.getHSBColor(rand.nextFloat(), 1, 1);
+		int id = players.add();
+		if(id < 0) throw new IllegalStateException("Simulation is full");
+		//solved once, the first time an Optimal Bot is added
+		if(type == BotStrategy.Type.OPTIMAL && solver == null) solver = new MazeSolver(maze);
+		Bot b = new Bot(players, id, type.create(maze, solver, rand), c);
+		bots.add(b);
+		return b;
+	}
+	
+	/**
+	 * Gives a Bot a Player, so it can be drawn with its Path. The Player
+	 * starts where the Bot is now and follows it from then on.
+	 * @param b Bot to show
+	 * @return the Bot's Player
+	 */
+	public Player show(Bot b){
+		Player p = b.getPlayer();
+		if(p == null){
+			p = new Player(maze, b.getColor(), b.getPos());
+			b.setPlayer(p);
+		}
+		return p;
+	}
+	
+	public List<Bot> getBots(){
+		return bots;
+	}
+	
+	/**
+	 * Gets the registry holding the Bots' positions. A Bot's slot is its id.
+	 * @return the Bots' PlayerRegistry
+	 */
+	public PlayerRegistry getPlayers(){
+		return players;
+	}
+	
+	/**
+	 * Gets the index of where the Bots are, for finding the Bots in or near a
+	 * Cell. Collisions may be turned on in it.
+	 * @return the Bots' OccupancyIndex
+	 */
+	public OccupancyIndex getOccupancy(){
+		return occupancy;
+	}
+	
+	/**
+	 * Moves every unfinished Bot once.
+	 * @param tick number of the tick
+	 */
+	@Override
+	public void tick(long tick){
+		long start = System.nanoTime();
+		int chunks = (bots.size() + CHUNK_SIZE-1)/CHUNK_SIZE;
+		long moved = pool.submit(() -> IntStream.range(0, chunks).parallel().mapToLong(c -> {
+			long count = 0;
+			int end = Math.min(bots.size(), (c+1)*CHUNK_SIZE);
+			for(int i = c*CHUNK_SIZE; i < end; i++)
+				if(bots.get(i).step()) count++;
+			return count;
+		}).sum()).join();
+		moves += moved;
+		ticks++;
+		elapsed += System.nanoTime() - start;
+	}
+	
+	/**
+	 * Runs ticks until every Bot has finished or one of the limits is hit.
+	 * @param maxTicks most ticks to run
+	 * @param maxMillis most time to run for, in milliseconds
+	 */
+	public void run(long maxTicks, long maxMillis){
+		long deadline = System.nanoTime() + maxMillis*1_000_000;
+		while(ticks < maxTicks && System.nanoTime() < deadline && countFinished() < bots.size())
+			tick(ticks);
+	}
+	
+	public int countFinished(){
+		return players.countFinished();
+	}
+	
+	public long getTicks(){
+		return ticks;
+	}
+	public long getMoves(){
+		return moves;
+	}
+	
+	/**
+	 * Gets the number of moves made per second of time spent ticking.
+	 * @return moves per second
+	 */
+	public double getMovesPerSecond(){
+		return elapsed == 0 ? 0 : moves*1e9/elapsed;
+	}
+	
+	/**
+	 * Stops the simulation's threads.
+	 */
+	public void shutdown(){
+		pool.shutdown();
+	}
+	
+	/**
+	 * Describes how the simulation went.
+	 * @return summary of ticks, moves, throughput and finished Bots
+	 */
+	public String report(){
+		return String.format("%d bots, %d ticks, %d moves in %.1f ms: %.0f moves/s, %d finished",
+				bots.size(), ticks, moves, elapsed/1e6, getMovesPerSecond(), countFinished());
+	}
+	
+	/**
+	 * Runs a headless simulation and prints its report.
+	 * Usage: bots sizeX sizeY count strategy [algorithm] [threads] [maxSeconds]
+	 * @param args command line arguments
+	 */
+	public static void main(String[] args){
+		if(args.length < 4){
+			System.err.println("Usage: bots sizeX sizeY count WALL_FOLLOWER|TREMAUX|RANDOM_MOUSE|OPTIMAL"
+					+ " [algorithm] [threads] [maxSeconds]");
+			System.exit(1);
+		}
+		MazeOptions options = new MazeOptions(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+		if(args.length > 4) options.parseAlgorithm(args[4]);
+		int threads = args.length > 5 ? Integer.parseInt(args[5])
+				: Runtime.getRuntime().availableProcessors();
+		long maxMillis = args.length > 6 ? Long.parseLong(args[6])*1000 : 60_000;
+		BotStrategy.Type type = BotStrategy.Type.valueOf(args[3].toUpperCase());
+		
+		Maze m = new Maze(options);
+		int count = Integer.parseInt(args[2]);
+		BotSimulation sim = new BotSimulation(m, count, threads);
+		for(int i = 0; i < count; i++) sim.addBot(type, i);
+		
+		sim.run(Long.MAX_VALUE, maxMillis);
+		System.out.println(type + " on " + threads + " threads: " + sim.report());
+		sim.shutdown();
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.bot;
+
+import java.util.Random;
+import mazegame.Direction;
+import mazegame.Maze;
+import mazegame.MazeSolver;
+import mazegame.Point;
+
+/**
+ * A way for a Bot to find its way through a maze. A BotStrategy only sees the
+ * Cell its Bot is in, like a player would, and picks which way to go next.
+ * Strategies may keep state between moves, so each Bot gets its own instance.
+ * @author Jeffery Thompson
+ */
+public interface BotStrategy {
+	/**
+	 * Picks the next move from the Cell at Point pos. The Direction returned
+	 * should not have a wall, so the move always succeeds.
+	 * @param m Maze the Bot is in
+	 * @param pos current position of the Bot
+	 * @return Direction to move, or null to stay put
+	 */
+	Direction nextMove(Maze m, Point pos);
+	
+	/**
+	 * Tells the strategy that the move it picked was made. A move can still
+	 * fail, such as when another player is in the way, so a strategy that
+	 * remembers where it has been should update it here, not in nextMove().
+	 * @param m Maze the Bot is in
+	 * @param from position the Bot moved from
+	 * @param dir Direction the Bot moved
+	 */
+	default void moved(Maze m, Point from, Direction dir){
+	}
+	
+	/**
+	 * The available strategies.
+	 */
+	public enum Type {
+		/**
+		 * Keeps its right hand on the wall. Always finds the goal in a perfect
+		 * maze, but may visit most of it first.
+		 */
+		WALL_FOLLOWER,
+		/**
+		 * Marks each passage as it goes and never takes a passage twice in the
+		 * same direction. Walks each passage at most twice.
+		 */
+		TREMAUX,
+		/**
+		 * Goes in a random direction at each junction, only turning back at
+		 * dead ends.
+		 */
+		RANDOM_MOUSE,
+		/**
+		 * Knows the way and takes the shortest path to the goal.
+		 */
+		OPTIMAL;
+		
+		/**
+		 * Creates a new instance of this strategy for one Bot.
+		 * @param m Maze the Bot is in
+		 * @param rand source of randomness for the strategy
+		 * @return new BotStrategy
+		 */
+		public BotStrategy create(Maze m, Random rand){
+			return create(m, null, rand);
+		}
+		
+		/**
+		 * Creates a new instance of this strategy for one Bot, sharing a
+		 * MazeSolver that has already solved the maze.
+		 * @param m Maze the Bot is in
+		 * @param solver solver for m, or null to make one if needed
+		 * @param rand source of randomness for the strategy
+		 * @return new BotStrategy
+		 */
+		public BotStrategy create(Maze m, MazeSolver solver, Random rand){
+			switch(this){
+				case WALL_FOLLOWER:
+					return new WallFollower();
+				case TREMAUX:
+					return new Tremaux(m, rand);
+				case RANDOM_MOUSE:
+					return new RandomMouse(rand);
+				case OPTIMAL:
+					return new Optimal(solver != null ? solver : new MazeSolver(m));
+				default:
+					return null;
+			}
+		}
+		
+		@Override
+		public String toString(){
+			switch(this){
+				case WALL_FOLLOWER:
+					return "Wall Follower";
+				case TREMAUX:
+					return "Tr\u00e9maux";
+				case RANDOM_MOUSE:
+					return "Random Mouse";
+				case OPTIMAL:
+					return "Optimal";
+				default:
+					return null;
+			}
+		}
+	}
+}
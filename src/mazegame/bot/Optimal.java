@@ -0,0 +1,52 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.bot;
+
+import mazegame.Direction;
+import mazegame.Maze;
+import mazegame.MazeSolver;
+import mazegame.Point;
+
+/**
+ * Takes the shortest path to the goal using a MazeSolver. The solver is
+ * passed in so that every Optimal strategy in a BotSimulation can share one,
+ * and thousands of optimal bots only solve the maze once.
+ * @author Jeffery Thompson
+ */
+public class Optimal implements BotStrategy {
+	private final MazeSolver solver;
+	
+	/**
+	 * Creates a strategy that follows the given solver.
+	 * @param s solver for the Maze the Bot is in
+	 */
+	public Optimal(MazeSolver s){
+		solver = s;
+	}
+	
+	@Override
+	public Direction nextMove(Maze m, Point pos){
+		return solver.getDirection(pos.getX(), pos.getY());
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.bot;
+
+import java.util.Random;
+import mazegame.Direction;
+import mazegame.Maze;
+import mazegame.Maze.Cell;
+import mazegame.Point;
+
+/**
+ * Wanders the maze at random. It never turns back unless it is at a dead end,
+ * so it follows corridors and only makes choices at junctions.
+ * @author Jeffery Thompson
+ */
+public class RandomMouse implements BotStrategy {
+	private static final Direction[] DIRECTIONS = Direction.values();
+	
+	private final Random rand;
+	private final Direction[] open = new Direction[4];
+	private Direction last = null;
+	
+	public RandomMouse(Random r){
+		rand = r;
+	}
+	
+	@Override
+	public Direction nextMove(Maze m, Point pos){
+		Cell c = m.getCell(pos);
+		int count = 0;
+		for(Direction dir : DIRECTIONS)
+			if(!c.hasWall(dir) && c.hasNeighbor(dir) && (last == null || dir != last.opposite()))
+				open[count++] = dir;
+		if(count == 0){
+			//dead end, so turn back
+			return last == null ? null : last.opposite();
+		}
+		return open[rand.nextInt(count)];
+	}
+	
+	@Override
+	public void moved(Maze m, Point from, Direction dir){
+		last = dir;
+	}
+}
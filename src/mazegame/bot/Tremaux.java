@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.bot;
+
+import java.util.Random;
+import mazegame.Direction;
+import mazegame.Maze;
+import mazegame.Maze.Cell;
+import mazegame.Point;
+
+/**
+ * Tr&eacute;maux's algorithm. Every time the Bot walks down a passage, it
+ * marks both ends of it. At a Cell, it takes an unmarked passage if there is
+ * one; otherwise it goes back the way it came, unless that passage is already
+ * marked twice, in which case it takes the passage with the fewest marks.
+ * No passage is walked more than twice.
+ * 
+ * The marks are kept as one byte per Cell, two bits for each Direction, in
+ * pages of 4096 Cells that are only made when the Bot first marks a Cell in
+ * them. A Bot only uses memory for the part of the maze it has explored, so
+ * thousands of them fit in a large maze.
+ * @author Jeffery Thompson
+ */
+public class Tremaux implements BotStrategy {
+	private static final int PAGE_SHIFT = 12;
+	private static final Direction[] DIRECTIONS = Direction.values();
+	
+	private final Random rand;
+	private final int sizeY;
+	private final byte[][] pages;
+	private final Direction[] unmarked = new Direction[4];
+	private Direction last = null;
+	
+	public Tremaux(Maze m, Random r){
+		rand = r;
+		sizeY = m.getOptions().getSizeY();
+		long cells = (long)m.getOptions().getSizeX()*sizeY;
+		pages = new byte[(int)((cells + (1 << PAGE_SHIFT) - 1) >> PAGE_SHIFT)][];
+	}
+	
+	@Override
+	public Direction nextMove(Maze m, Point pos){
+		Cell c = m.getCell(pos);
+		Direction back = last == null ? null : last.opposite();
+		
+		int count = 0;
+		Direction fewest = null;
+		for(Direction dir : DIRECTIONS){
+			if(c.hasWall(dir) || !c.hasNeighbor(dir) || dir == back) continue;
+			int mark = getMark(pos.getX(), pos.getY(), dir);
+			if(mark == 0) unmarked[count++] = dir;
+			if(mark < 2 && (fewest == null || mark < getMark(pos.getX(), pos.getY(), fewest)))
+				fewest = dir;
+		}
+		
+		Direction dir;
+		if(count > 0) dir = unmarked[rand.nextInt(count)];
+		else if(back != null && getMark(pos.getX(), pos.getY(), back) < 2) dir = back;
+		else if(fewest != null) dir = fewest;
+		else dir = back;
+		return dir;
+	}
+	
+	/**
+	 * Marks both ends of the passage the Bot just walked down. This waits
+	 * until the move is made, so a blocked move leaves no marks.
+	 */
+	@Override
+	public void moved(Maze m, Point from, Direction dir){
+		mark(from.getX(), from.getY(), dir);
+		Point next = m.getCell(from).getNeighbor(dir).getPos();
+		mark(next.getX(), next.getY(), dir.opposite());
+		last = dir;
+	}
+	
+	private int getMark(int x, int y, Direction dir){
+		int i = x*sizeY + y;
+		byte[] page = pages[i >> PAGE_SHIFT];
+		if(page == null) return 0;
+		return (page[i & ((1 << PAGE_SHIFT) - 1)] >> (2*dir.ordinal())) & 3;
+	}
+	
+	private void mark(int x, int y, Direction dir){
+		int i = x*sizeY + y;
+		byte[] page = pages[i >> PAGE_SHIFT];
+		if(page == null) page = pages[i >> PAGE_SHIFT] = new byte[1 << PAGE_SHIFT];
+		i &= (1 << PAGE_SHIFT) - 1;
+		int shift = 2*dir.ordinal();
+		int mark = (page[i] >> shift) & 3;
+		if(mark < 3) page[i] = (byte)(page[i] + (1 << shift));
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.bot;
+
+import mazegame.Direction;
+import mazegame.Maze;
+import mazegame.Maze.Cell;
+import mazegame.Point;
+
+/**
+ * Follows the wall on its right hand side. At each Cell it tries to turn
+ * right, then go straight, then turn left, and only turns back at a dead end.
+ * @author Jeffery Thompson
+ */
+public class WallFollower implements BotStrategy {
+	//right, straight, left, back
+	private static final int[] TURNS = {1, 0, 3, 2};
+	private static final Direction[] DIRECTIONS = Direction.values();
+	
+	private Direction heading = Direction.EAST;
+	
+	@Override
+	public Direction nextMove(Maze m, Point pos){
+		Cell c = m.getCell(pos);
+		for(int turn : TURNS){
+			Direction dir = DIRECTIONS[(heading.ordinal()+turn) % 4];
+			if(!c.hasWall(dir) && c.hasNeighbor(dir)) return dir;
+		}
+		return null;
+	}
+	
+	@Override
+	public void moved(Maze m, Point from, Direction dir){
+		heading = dir;
+	}
+}
@@ -0,0 +1,239 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeff Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.gui;
+
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import mazegame.Tickable;
+
+/**
+ * An active rendering loop for a MazePanel. Instead of waiting for Swing to
+ * repaint, the loop draws the MazePanel onto a Canvas through a
+ * BufferStrategy as fast as it can, or at a capped frame rate.
+ * 
+ * The game is simulated with a fixed timestep: every 1/tickRate seconds of
+ * real time, each Tickable is ticked once, no matter how long frames take to
+ * draw. If drawing falls behind, several ticks are run before the next frame;
+ * if drawing is fast, frames are drawn between ticks.
+ * 
+ * The loop keeps track of the frame rate, tick rate and frame time, which are
+ * drawn in the corner of the Canvas when showMetrics is set.
+ * @author Jeff
+ */
+public class GameLoop implements Runnable {
+	public static final int DEFAULT_TICK_RATE = 60;
+	/**
+	 * Longest time that is simulated between two frames. Anything longer
+	 * (such as the computer being suspended) is dropped instead of being
+	 * caught up on all at once.
+	 */
+	private static final long MAX_FRAME_NANOS = 250_000_000L;
+	private static final long NANOS_PER_SECOND = 1_000_000_000L;
+	
+	private final Canvas canvas;
+	private final MazePanel panel;
+	private final long tickNanos;
+	private final long frameNanos;
+	private final List<Tickable> tickables = new CopyOnWriteArrayList();
+	
+	private volatile boolean running = false;
+	private volatile boolean showMetrics = true;
+	private Thread thread;
+	
+	private volatile double fps, tps, frameTime, maxFrameTime;
+	private long tick = 0;
+	
+	/**
+	 * Creates a GameLoop that draws the MazePanel onto the Canvas.
+	 * @param c Canvas to draw onto
+	 * @param p MazePanel to draw
+	 * @param tickRate ticks per second
+	 * @param maxFps highest frame rate to draw at, or 0 for no limit
+	 */
+	public GameLoop(Canvas c, MazePanel p, int tickRate, int maxFps){
+		canvas = c;
+		panel = p;
+		tickNanos = NANOS_PER_SECOND/tickRate;
+		frameNanos = maxFps > 0 ? NANOS_PER_SECOND/maxFps : 0;
+	}
+	
+	public void addTickable(Tickable t){
+		tickables.add(t);
+	}
+	public void removeTickable(Tickable t){
+		tickables.remove(t);
+	}
+	
+	/**
+	 * Starts the loop on its own thread. The Canvas must already be
+	 * displayable so its BufferStrategy can be created.
+	 */
+	public synchronized void start(){
+		if(running) return;
+		if(canvas.getBufferStrategy() == null) canvas.createBufferStrategy(2);
+		running = true;
+		thread = new Thread(this, "Game loop");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Stops the loop and waits for the frame being drawn to finish.
+	 */
+	public synchronized void stop(){
+		running = false;
+		if(thread != null && thread != Thread.currentThread()){
+			try {
+				thread.join();
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+		}
+		thread = null;
+	}
+	
+	public boolean isRunning(){
+		return running;
+	}
+	
+	public void setShowMetrics(boolean show){
+		showMetrics = show;
+	}
+	
+	/**
+	 * Gets the number of frames drawn in the last second.
+	 * @return frames per second
+	 */
+	public double getFps(){
+		return fps;
+	}
+	/**
+	 * Gets the number of ticks run in the last second. This should stay at
+	 * the tick rate unless ticking itself takes too long.
+	 * @return ticks per second
+	 */
+	public double getTps(){
+		return tps;
+	}
+	/**
+	 * Gets the average time between frames over the last second.
+	 * @return frame time in milliseconds
+	 */
+	public double getFrameTime(){
+		return frameTime;
+	}
+	/**
+	 * Gets the longest time between two frames over the last second.
+	 * @return longest frame time in milliseconds
+	 */
+	public double getMaxFrameTime(){
+		return maxFrameTime;
+	}
+	
+	@Override
+	public void run(){
+		long last = System.nanoTime();
+		long accumulator = 0;
+		long windowStart = last;
+		int frames = 0, ticks = 0;
+		long longest = 0;
+		
+		while(running){
+			long now = System.nanoTime();
+			long elapsed = now - last;
+			last = now;
+			accumulator += Math.min(elapsed, MAX_FRAME_NANOS);
+			longest = Math.max(longest, elapsed);
+			
+			while(accumulator >= tickNanos){
+				for(Tickable t : tickables) t.tick(tick);
+				tick++;
+				ticks++;
+				accumulator -= tickNanos;
+			}
+			
+			render();
+			frames++;
+			
+			if(now - windowStart >= NANOS_PER_SECOND){
+				double seconds = (double)(now - windowStart)/NANOS_PER_SECOND;
+				fps = frames/seconds;
+				tps = ticks/seconds;
+				frameTime = seconds*1000/frames;
+				maxFrameTime = longest/1e6;
+				windowStart = now;
+				frames = ticks = 0;
+				longest = 0;
+			}
+			
+			if(frameNanos > 0){
+				long wait = frameNanos - (System.nanoTime() - now);
+				if(wait > 0){
+					try {
+						Thread.sleep(wait/1_000_000, (int)(wait%1_000_000));
+					} catch(InterruptedException e){
+						running = false;
+					}
+				}
+			}
+			else Thread.yield();
+		}
+	}
+	
+	/**
+	 * Draws one frame, drawing it again if the contents of the
+	 * BufferStrategy were lost or restored while drawing.
+	 */
+	private void render(){
+		BufferStrategy bs = canvas.getBufferStrategy();
+		if(bs == null) return;
+		do {
+			do {
+				Graphics2D g = (Graphics2D)bs.getDrawGraphics();
+				g.setColor(panel.getBackground());
+				g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+				panel.render(g);
+				if(showMetrics) paintMetrics(g);
+				g.dispose();
+			} while(bs.contentsRestored());
+			bs.show();
+		} while(bs.contentsLost());
+		Toolkit.getDefaultToolkit().sync();
+	}
+	
+	private void paintMetrics(Graphics2D g){
+		String text = String.format("%.0f fps  %.0f tps  %.1f ms (max %.1f)",
+				fps, tps, frameTime, maxFrameTime);
+		g.setColor(new Color(0, 0, 0, 160));
+		g.fillRect(0, 0, g.getFontMetrics().stringWidth(text) + 8,
+				g.getFontMetrics().getHeight() + 4);
+		g.setColor(Color.white);
+		g.drawString(text, 4, g.getFontMetrics().getAscent() + 2);
+	}
+}
@@ -23,25 +23,45 @@
  */
 package mazegame.gui;
 
+import java.awt.Canvas;
+import java.awt.Cursor;
+import java.awt.Dimension;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import java.time.Duration;
-import java.time.format.DateTimeFormatter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
 import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.JPopupMenu;
 import javax.swing.JSeparator;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import mazegame.Direction;
+import mazegame.GenerationService;
 import mazegame.Maze;
+import mazegame.MazeOptions;
+import mazegame.io.Replay;
+import mazegame.player.GameSnapshot;
+import mazegame.player.GameState;
+import mazegame.player.OccupancyIndex;
 import mazegame.player.Player;
 import mazegame.player.PlayerList;
+import mazegame.stats.Histogram;
+import mazegame.stats.RaceStats;
 
 /**
  * A class for the main window of the application. The JFrame contains a menu
@@ -53,24 +73,68 @@ import mazegame.player.PlayerList;
 public class MazeFrame extends JFrame {
 	MazePanel panel;
 	Maze maze;
+	GameState state;
+	
+	Canvas canvas;
+	GameLoop loop;
+	
+	GenerationService generator = new GenerationService();
+	/**
+	 * The maze being generated for the last "New..." request.
+	 */
+	CompletableFuture<Maze> pending;
+	
+	RaceStats stats;
 	
 	JCheckBoxMenuItem blockView;
+	JCheckBoxMenuItem activeRendering;
+	JCheckBoxMenuItem collisions;
 	JMenuItem increaseView, decreaseView;
+	JMenuItem playReplay, stepReplay, fasterReplay, slowerReplay;
+	
+	/**
+	 * Plays the loaded replay while it is running.
+	 */
+	Timer replayTimer;
+	double replaySpeed = 1;
+	long lastReplayTick;
 	
 	public MazeFrame(Maze m) {
 		maze = m;
-		panel = new MazePanel(m);
+		try {
+			stats = RaceStats.load(RaceStats.defaultFile());
+		} catch(IOException e){
+			System.err.println("Could not load statistics: " + e.getMessage());
+			stats = new RaceStats();
+		}
+		state = new GameState(m);
+		state.addListener(new GameListener());
+		panel = new MazePanel(m, state);
 		this.add(panel);
 		
+		canvas = new Canvas(){
+			@Override
+			public Dimension getPreferredSize(){
+				return panel.getPreferredSize();
+			}
+		};
+		canvas.setIgnoreRepaint(true);
+		loop = new GameLoop(canvas, panel, GameLoop.DEFAULT_TICK_RATE, 0);
+		
+		//menus have to be heavyweight to show up over the Canvas
+		JPopupMenu.setDefaultLightWeightPopupEnabled(false);
 		createMenuBar();
 		this.addKeyListener(new KeyboardInput());
 		panel.addKeyListener(new KeyboardInput());
+		canvas.addKeyListener(new KeyboardInput());
 		//this.setMinimumSize(new Dimension(300,300));
 		this.setMaximumSize(Toolkit.getDefaultToolkit().getScreenSize());
 		this.pack();
 		this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		this.setVisible(true);
 		this.requestFocus();
+		state.start();
+		generator.prefetch(m.getOptions());
 	}
 	
 	/**
@@ -94,13 +158,20 @@ public class MazeFrame extends JFrame {
 		restart.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_R, ActionEvent.CTRL_MASK));
 		restart.addActionListener(listener);
 		maze.add(restart);
+		maze.add(new JSeparator());
+		
+		collisions = new JCheckBoxMenuItem("Collisions");
+		collisions.addActionListener(listener);
+		maze.add(collisions);
 		
 		JMenu view = new JMenu("View");
 		JMenuItem zoomIn = new JMenuItem("Zoom in");
+		zoomIn.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_EQUALS, ActionEvent.CTRL_MASK));
 		zoomIn.addActionListener(listener);
 		view.add(zoomIn);
 		
 		JMenuItem zoomOut = new JMenuItem("Zoom out");
+		zoomOut.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_MINUS, ActionEvent.CTRL_MASK));
 		zoomOut.addActionListener(listener);
 		view.add(zoomOut);
 		view.add(new JSeparator());
@@ -118,9 +189,50 @@ public class MazeFrame extends JFrame {
 		decreaseView.addActionListener(listener);
 		decreaseView.setEnabled(false);
 		view.add(decreaseView);
+		view.add(new JSeparator());
+		
+		activeRendering = new JCheckBoxMenuItem("Active rendering");
+		activeRendering.addActionListener(listener);
+		view.add(activeRendering);
+		
+		JMenu replay = new JMenu("Replay");
+		JMenuItem saveReplay = new JMenuItem("Save replay...");
+		saveReplay.addActionListener(listener);
+		replay.add(saveReplay);
+		
+		JMenuItem openReplay = new JMenuItem("Open replay...");
+		openReplay.addActionListener(listener);
+		replay.add(openReplay);
+		replay.add(new JSeparator());
+		
+		playReplay = new JMenuItem("Play");
+		playReplay.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_P, ActionEvent.CTRL_MASK));
+		playReplay.addActionListener(listener);
+		replay.add(playReplay);
+		
+		stepReplay = new JMenuItem("Step");
+		stepReplay.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_PERIOD, ActionEvent.CTRL_MASK));
+		stepReplay.addActionListener(listener);
+		replay.add(stepReplay);
+		
+		fasterReplay = new JMenuItem("Faster");
+		fasterReplay.addActionListener(listener);
+		replay.add(fasterReplay);
+		
+		slowerReplay = new JMenuItem("Slower");
+		slowerReplay.addActionListener(listener);
+		replay.add(slowerReplay);
+		setReplayEnabled(false);
+		
+		replayTimer = new Timer(15, (ActionEvent ae) -> {
+			long now = System.nanoTime();
+			state.advanceReplay((long)((now - lastReplayTick)/1000*replaySpeed));
+			lastReplayTick = now;
+		});
 		
 		bar.add(maze);
 		bar.add(view);
+		bar.add(replay);
 		this.setJMenuBar(bar);
 	}
 	
@@ -129,13 +241,155 @@ public class MazeFrame extends JFrame {
 		this.pack();
 	}
 	
-	public void winMessage(Player player){
-		DateTimeFormatter formatter = DateTimeFormatter.ofPattern("mm:ss");
-		Duration time = player.getTime();
-		String minutes = (time.toMinutes() < 10 ? "0": "") + time.toMinutes();
-		String seconds = (time.getSeconds()%60 < 10 ? "0": "") + time.getSeconds()%60;
-		JOptionPane.showMessageDialog(null, "You won! Time: "
-				+ minutes + ":" + seconds);
+	/**
+	 * Switches between drawing the maze with Swing repaints and drawing it
+	 * from a GameLoop. In active rendering mode, the MazePanel is swapped for
+	 * a Canvas that the GameLoop draws the panel onto.
+	 * @param active true to start the GameLoop, false to go back to Swing
+	 */
+	public void setActiveRendering(boolean active){
+		if(active == loop.isRunning()) return;
+		if(active){
+			this.remove(panel);
+			this.add(canvas);
+			this.pack();
+			loop.start();
+			canvas.requestFocus();
+		}
+		else {
+			loop.stop();
+			this.remove(canvas);
+			this.add(panel);
+			this.pack();
+			panel.repaint();
+			this.requestFocus();
+		}
+	}
+	
+	/**
+	 * Gets the GameLoop used in active rendering mode. Tickables added to it
+	 * are only ticked while active rendering is on.
+	 * @return GameLoop of the frame
+	 */
+	public GameLoop getGameLoop(){
+		return loop;
+	}
+	
+	/**
+	 * Generates a new maze in the background and switches to it once it is
+	 * ready. A maze that is still being generated for an earlier request is
+	 * cancelled.
+	 * @param o MazeOptions of the new maze
+	 */
+	public void newMaze(MazeOptions o){
+		if(pending != null) pending.cancel(false);
+		this.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+		CompletableFuture<Maze> f = generator.generate(o);
+		pending = f;
+		f.whenComplete((Maze m, Throwable e) -> SwingUtilities.invokeLater(() -> {
+			if(pending != f) return;
+			pending = null;
+			this.setCursor(Cursor.getDefaultCursor());
+			if(m != null) setMaze(m);
+			else if(!f.isCancelled())
+				JOptionPane.showMessageDialog(this, "Could not generate the maze: " + e.getMessage());
+		}));
+	}
+	
+	/**
+	 * Switches to a new maze, moving the players into it.
+	 * @param m new Maze
+	 */
+	public void setMaze(Maze m){
+		maze = m;
+		pauseReplay();
+		setReplayEnabled(false);
+		panel.setMaze(maze);
+		state.setMaze(maze);
+		panel.resize();
+		panel.repaint();
+		this.pack();
+	}
+	
+	private void setReplayEnabled(boolean enabled){
+		playReplay.setEnabled(enabled);
+		stepReplay.setEnabled(enabled);
+		fasterReplay.setEnabled(enabled);
+		slowerReplay.setEnabled(enabled);
+	}
+	
+	/**
+	 * Stops playing the loaded replay.
+	 */
+	private void pauseReplay(){
+		replayTimer.stop();
+		playReplay.setText("Play");
+	}
+	
+	/**
+	 * Asks for a file and saves the race so far to it.
+	 */
+	public void saveReplay(){
+		Replay r = state.getReplay();
+		if(r == null) return;
+		JFileChooser chooser = new JFileChooser();
+		if(chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+		try(OutputStream out = new FileOutputStream(chooser.getSelectedFile())){
+			r.write(out);
+		} catch(IOException e){
+			JOptionPane.showMessageDialog(this, "Could not save replay: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Asks for a replay file and loads it, paused at the start.
+	 */
+	public void openReplay(){
+		JFileChooser chooser = new JFileChooser();
+		if(chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+		File file = chooser.getSelectedFile();
+		Replay r;
+		try(InputStream in = new FileInputStream(file)){
+			r = Replay.read(in);
+		} catch(IOException | IllegalArgumentException e){
+			JOptionPane.showMessageDialog(this, "Could not open replay: " + e.getMessage());
+			return;
+		}
+		pauseReplay();
+		maze = r.createMaze();
+		panel.setMaze(maze);
+		state.loadReplay(r, maze);
+		setReplayEnabled(true);
+		panel.resize();
+		this.pack();
+	}
+	
+	/**
+	 * Shows the Player's time, and how it compares to earlier races in mazes
+	 * of the same size and algorithm.
+	 * @param player Player that won
+	 * @param previous times of earlier races
+	 */
+	public void winMessage(Player player, Histogram previous){
+		long time = player.getTimeNanos();
+		String message = "You won! Time: " + RaceStats.format(time);
+		if(previous.getCount() > 0)
+			message += String.format("%nFaster than %.0f%% of %d races. Median: %s",
+					previous.getPercentAbove(time), previous.getCount(),
+					RaceStats.format(previous.getPercentile(50)));
+		JOptionPane.showMessageDialog(null, message);
+	}
+	
+	/**
+	 * Saves the race statistics, ignoring failures, since losing them is not
+	 * worth interrupting the game for.
+	 */
+	private void saveStats(){
+		try {
+			stats.save(RaceStats.defaultFile());
+		} catch(IOException e){
+			System.err.println("Could not save statistics: " + e.getMessage());
+		}
 	}
 	
 	public class MenuListener implements ActionListener {
@@ -144,27 +398,23 @@ public class MazeFrame extends JFrame {
 		public void actionPerformed(ActionEvent ae) {
 			switch(ae.getActionCommand()){
 				case "New...":
-					NewMazeDialog dialog = new NewMazeDialog(MazeFrame.this,maze.getOptions());
-					if(dialog.showDialog() != null){
-						maze = new Maze(dialog.getOptions());
-						System.out.println(dialog.getOptions().getAlgorithm());
-						panel.setMaze(maze);
-						PlayerList.setMaze(maze);
-						panel.resize();
-						panel.repaint();
-						MazeFrame.this.pack();
-					}
+					NewMazeDialog dialog = new NewMazeDialog(MazeFrame.this,maze.getOptions(),generator);
+					if(dialog.showDialog() != null) newMaze(dialog.getOptions());
+					else generator.prefetch(maze.getOptions());
 					break;
 				case "Restart":
 					panel.restart();
-					panel.repaint();
+					break;
+				case "Collisions":
+					OccupancyIndex o = PlayerList.getLocal().getOccupancy();
+					if(o != null) o.setCollisions(collisions.isSelected());
 					break;
 				case "Zoom in":
-					Maze.CELL_SIZE += 4;
+					panel.setZoom(panel.getZoom()*MazePanel.ZOOM_STEP);
 					resize();
 					break;
 				case "Zoom out":
-					Maze.CELL_SIZE -= 4;
+					panel.setZoom(panel.getZoom()/MazePanel.ZOOM_STEP);
 					resize();
 					break;
 				case "Block view":
@@ -179,11 +429,61 @@ public class MazeFrame extends JFrame {
 				case "Decrease view distance":
 					panel.decreaseViewSize();
 					break;
+				case "Active rendering":
+					setActiveRendering(activeRendering.isSelected());
+					break;
+				case "Save replay...":
+					saveReplay();
+					break;
+				case "Open replay...":
+					openReplay();
+					break;
+				case "Play":
+					lastReplayTick = System.nanoTime();
+					replayTimer.start();
+					playReplay.setText("Pause");
+					break;
+				case "Pause":
+					pauseReplay();
+					break;
+				case "Step":
+					pauseReplay();
+					state.stepReplay();
+					break;
+				case "Faster":
+					replaySpeed *= 2;
+					break;
+				case "Slower":
+					replaySpeed /= 2;
+					break;
 			}	
 			
 		}
 	}
 	
+	/**
+	 * Repaints the panel when the game changes and shows the win message.
+	 * These are called on the game thread, so the win message is passed on to
+	 * the Event Dispatch Thread instead of blocking the game.
+	 */
+	public class GameListener implements GameState.Listener {
+		@Override
+		public void stateChanged(GameSnapshot s){
+			if(!loop.isRunning()) panel.repaint();
+		}
+		
+		@Override
+		public void playerWon(Player p){
+			MazeOptions o = p.getMaze().getOptions();
+			Histogram previous = stats.get(o.getSizeX(), o.getSizeY(), o.getAlgorithm());
+			stats.record(o, p.getTimeNanos());
+			SwingUtilities.invokeLater(() -> {
+				saveStats();
+				winMessage(p, previous);
+			});
+		}
+	}
+	
 	public class KeyboardInput implements KeyListener {
 			@Override
 			public void keyTyped(KeyEvent ke) {
@@ -192,47 +492,35 @@ public class MazeFrame extends JFrame {
 
 			@Override
 			public void keyPressed(KeyEvent ke) {
+				int second = PlayerList.getLocal().get(1) != null ? 1 : 0;
 				switch(ke.getKeyCode()) {
 					case KeyEvent.VK_UP:
-						if(PlayerList.get(1)!=null){
-							PlayerList.get(1).move(Direction.NORTH);
-							break;
-						}
+						state.move(second, Direction.NORTH);
+						break;
 					case KeyEvent.VK_W:
-						PlayerList.get(0).move(Direction.NORTH);
+						state.move(0, Direction.NORTH);
 						break;
 					case KeyEvent.VK_DOWN:
-						if(PlayerList.get(1)!=null){
-							PlayerList.get(1).move(Direction.SOUTH);
-							break;
-						}
+						state.move(second, Direction.SOUTH);
+						break;
 					case KeyEvent.VK_S:
-						PlayerList.get(0).move(Direction.SOUTH);
+						state.move(0, Direction.SOUTH);
 						break;
 					case KeyEvent.VK_LEFT:
-						if(PlayerList.get(1)!=null){
-							PlayerList.get(1).move(Direction.WEST);
-							break;
-						}
+						state.move(second, Direction.WEST);
+						break;
 					case KeyEvent.VK_A:
-						PlayerList.get(0).move(Direction.WEST);
+						state.move(0, Direction.WEST);
 						break;
 					case KeyEvent.VK_RIGHT:
-						if(PlayerList.get(1)!=null){
-							PlayerList.get(1).move(Direction.EAST);
-							break;
-						}
+						state.move(second, Direction.EAST);
+						break;
 					case KeyEvent.VK_D:
-						PlayerList.get(0).move(Direction.EAST);
+						state.move(0, Direction.EAST);
 						break;
 					default:
 						break;
 				}
-				
-				panel.repaint();
-				for(Player p : PlayerList.getPlayers())
-					if(!p.hasFinished() && p.checkWin())
-						winMessage(p);
 			}
 			@Override
 			public void keyReleased(KeyEvent ke) {}
@@ -32,8 +32,8 @@ import java.awt.geom.Ellipse2D;
 import java.awt.geom.Rectangle2D;
 import javax.swing.JPanel;
 import mazegame.Maze;
-import mazegame.player.Player;
-import mazegame.player.PlayerList;
+import mazegame.player.GameSnapshot.PlayerSnapshot;
+import mazegame.player.GameState;
 
 /**
  *
@@ -42,30 +42,68 @@ import mazegame.player.PlayerList;
 public class MazePanel extends JPanel {
 	
 	Maze maze;
+	GameState state;
 	
 	boolean blockView = false;
 	private int viewSize = 3;
 	
-	public MazePanel(Maze m){
+	/**
+	 * Smallest and largest zoom, and how much one step of zooming changes it.
+	 */
+	public static final double MIN_ZOOM = 1.0/64, MAX_ZOOM = 8, ZOOM_STEP = Math.pow(2, 0.25);
+	
+	private double zoom = 1;
+	private MipPyramid pyramid;
+	
+	public MazePanel(Maze m, GameState s){
 		maze = m;
-		setPreferredSize(new Dimension(m.getOptions().getSizeX()*Maze.CELL_SIZE+1,
-				m.getOptions().getSizeY()*Maze.CELL_SIZE+1));
+		state = s;
+		pyramid = new MipPyramid(m, this::repaint);
+		resize();
 	}
 	
 	public void restart(){
-		for(Player p : PlayerList.getPlayers())
-			p.restart();
+		state.restart();
 	}
 	public void setMaze(Maze m){
 		maze = m;
+		pyramid.dispose();
+		pyramid = new MipPyramid(m, this::repaint);
+	}
+	
+	/**
+	 * Waits until every zoom level of the maze has been rendered. The levels
+	 * are rendered in the background, so until then the panel draws the
+	 * nearest level that is ready.
+	 */
+	public void awaitRendering(){
+		pyramid.awaitLevels();
 	}
 	
 	public void resize(){
-		setPreferredSize(new Dimension(maze.getOptions().getSizeX()*Maze.CELL_SIZE+1,
-				maze.getOptions().getSizeY()*Maze.CELL_SIZE+1));
+		setPreferredSize(new Dimension(
+				(int)Math.ceil((maze.getOptions().getSizeX()*Maze.CELL_SIZE+1)*zoom),
+				(int)Math.ceil((maze.getOptions().getSizeY()*Maze.CELL_SIZE+1)*zoom)));
 		repaint();
 	}
 	
+	/**
+	 * Gets the zoom of the view, where 1 shows the maze at Maze.CELL_SIZE.
+	 * @return zoom of the view
+	 */
+	public double getZoom(){
+		return zoom;
+	}
+	/**
+	 * Sets the zoom of the view. The zoom only changes how the maze is shown;
+	 * the maze itself and Maze.CELL_SIZE stay the same.
+	 * @param z zoom, clamped to MIN_ZOOM and MAX_ZOOM
+	 */
+	public void setZoom(double z){
+		zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, z));
+		resize();
+	}
+	
 	public void setBlockView(boolean block){
 		blockView = block;
 	}
@@ -81,14 +119,25 @@ public class MazePanel extends JPanel {
 	@Override
 	public void paintComponent(Graphics g){
 		super.paintComponent(g);
-		Graphics2D g2 = (Graphics2D)g;
-		maze.paint(g2);
+		render((Graphics2D)g);
+	}
+	
+	/**
+	 * Draws the maze, the players and the blocked view onto the Graphics2D
+	 * object g. This is what paintComponent() draws, and is also used by the
+	 * GameLoop to draw the panel onto a Canvas in active rendering mode.
+	 * @param g Graphics2D object to draw onto
+	 */
+	public void render(Graphics2D g){
+		Graphics2D g2 = (Graphics2D)g.create();
+		g2.scale(zoom, zoom);
+		pyramid.paint(g2, zoom);
 		
 		Area blackout = new Area(new Rectangle2D.Double(0,0,
 				Maze.CELL_SIZE*maze.getOptions().getSizeX(),
 				Maze.CELL_SIZE*maze.getOptions().getSizeY()));
 		boolean allFinished = true;
-		for(Player p : PlayerList.getPlayers()) {
+		for(PlayerSnapshot p : state.getSnapshot().getPlayers()) {
 			p.paint(g2);
 			Ellipse2D view = new Ellipse2D.Double(
 					(p.getPos().getX() - viewSize)*Maze.CELL_SIZE+Maze.CELL_SIZE/2, 
@@ -103,5 +152,6 @@ public class MazePanel extends JPanel {
 		g2.setColor(Color.black);
 		
 		if(!allFinished && blockView) g2.fill(blackout);
+		g2.dispose();
 	}
 }
@@ -0,0 +1,267 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeff Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.gui;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+import mazegame.Maze;
+
+/**
+ * A pyramid of pre-rendered images of a maze at power-of-two scales. Level 0
+ * is the maze drawn at Maze.CELL_SIZE, and each level after it is half the
+ * size of the one before. Zooming is then just a matter of picking the
+ * smallest level that still has enough detail for the zoom and drawing it
+ * scaled, so the maze never has to be drawn again when the zoom changes.
+ * 
+ * Levels with Cells of at least OverviewRenderer.THRESHOLD pixels are made
+ * by averaging each 2x2 block of pixels of the level above. Smaller levels
+ * are drawn by the OverviewRenderer instead, which keeps the walls sharp
+ * where averaging would blur them into gray.
+ * 
+ * The levels are rendered on a background thread, from the largest kept
+ * level down, so a new maze never holds up the event dispatch thread. Until
+ * the level a zoom needs is ready, the nearest level that is ready is drawn
+ * scaled in its place, and nothing is drawn before the first one is done.
+ * 
+ * Levels bigger than MAX_PIXELS are not kept, down to the level with one
+ * pixel per Cell, so a big enough maze may have no kept levels at all. If
+ * the zoom needs one of those levels, the visible part of the maze is
+ * painted directly instead.
+ * @author Jeff
+ */
+public class MipPyramid {
+	private static final long MAX_PIXELS = 1 << 25;
+	
+	private static final ExecutorService RENDERER = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "Mip pyramid renderer");
+		t.setDaemon(true);
+		t.setPriority(Thread.NORM_PRIORITY - 1);
+		return t;
+	});
+	
+	private final Maze maze;
+	private final int cellSize;
+	private final int baseWidth, baseHeight;
+	private final int levelCount;
+	private final int firstLevel;
+	private final AtomicReferenceArray<BufferedImage> levels;
+	private final Future<?> rendering;
+	private volatile boolean disposed;
+	
+	/**
+	 * Starts rendering the levels of the pyramid for the Maze m.
+	 * @param m Maze to render
+	 */
+	public MipPyramid(Maze m){
+		this(m, null);
+	}
+	
+	/**
+	 * Starts rendering the levels of the pyramid for the Maze m in the
+	 * background.
+	 * @param m Maze to render
+	 * @param onLevel run on the rendering thread each time a level is ready,
+	 * or null
+	 */
+	public MipPyramid(Maze m, Runnable onLevel){
+		maze = m;
+		cellSize = Maze.CELL_SIZE;
+		int sizeX = m.getOptions().getSizeX();
+		int sizeY = m.getOptions().getSizeY();
+		baseWidth = (int)Math.min((long)sizeX*cellSize+1, Integer.MAX_VALUE);
+		baseHeight = (int)Math.min((long)sizeY*cellSize+1, Integer.MAX_VALUE);
+		
+		int count = 0;
+		while((cellSize >> count) >= 1) count++;
+		levelCount = count;
+		
+		int level = 0;
+		while(level < levelCount && pixels(level) > MAX_PIXELS) level++;
+		firstLevel = level;
+		
+		levels = new AtomicReferenceArray(levelCount);
+		rendering = firstLevel < levelCount
+				? RENDERER.submit(() -> renderLevels(onLevel))
+				: CompletableFuture.completedFuture(null);
+	}
+	
+	/**
+	 * Gets the number of pixels in the image of a level, in long so a huge
+	 * maze cannot overflow it.
+	 */
+	private long pixels(int level){
+		long sizeX = maze.getOptions().getSizeX();
+		long sizeY = maze.getOptions().getSizeY();
+		int size = cellSize >> level;
+		if(OverviewRenderer.useFor(size))
+			return (sizeX*size+1)*(sizeY*size+1);
+		return ((sizeX*cellSize >> level)+1)*((sizeY*cellSize >> level)+1);
+	}
+	
+	private void renderLevels(Runnable onLevel){
+		BufferedImage prev = null;
+		for(int level = firstLevel; level < levelCount && !disposed; level++){
+			int size = cellSize >> level;
+			BufferedImage img;
+			if(OverviewRenderer.useFor(size)) img = OverviewRenderer.render(maze, size);
+			else if(prev == null) img = render(maze, cellSize, level);
+			else img = downsample(prev);
+			levels.set(level, img);
+			prev = img;
+			if(onLevel != null && !disposed) onLevel.run();
+		}
+	}
+	
+	/**
+	 * Gets the Maze this pyramid was rendered from.
+	 * @return Maze of the pyramid
+	 */
+	public Maze getMaze(){
+		return maze;
+	}
+	
+	/**
+	 * Gets the number of levels in the pyramid, including levels that were
+	 * too big to keep.
+	 * @return number of levels
+	 */
+	public int getLevels(){
+		return levelCount;
+	}
+	
+	/**
+	 * Waits until every kept level of the pyramid has been rendered.
+	 */
+	public void awaitLevels(){
+		try {
+			rendering.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException ex) {
+			throw new IllegalStateException("Rendering the pyramid failed", ex.getCause());
+		}
+	}
+	
+	/**
+	 * Stops rendering levels that are not done yet. Used when the maze is
+	 * replaced, so a big maze that is no longer shown is not finished.
+	 */
+	public void dispose(){
+		disposed = true;
+		rendering.cancel(false);
+	}
+	
+	/**
+	 * Paints the maze using the Graphics2D object g, which is expected to
+	 * already be scaled by zoom. The maze is drawn in the same coordinates as
+	 * Maze.paint(), using the level of the pyramid that best fits the zoom.
+	 * @param g Graphics2D object to draw onto
+	 * @param zoom scale of g, where 1 is the maze drawn at Maze.CELL_SIZE
+	 */
+	public void paint(Graphics2D g, double zoom){
+		int level = 0;
+		while(zoom <= 0.5 && level < levelCount-1){
+			zoom *= 2;
+			level++;
+		}
+		
+		if(level < firstLevel){
+			//too big to keep, so just draw the part that is visible
+			Rectangle clip = g.getClipBounds();
+			if(clip == null) maze.paint(g, cellSize, 0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
+			else maze.paint(g, cellSize, clip.x/cellSize-1, clip.y/cellSize-1,
+					(clip.x+clip.width)/cellSize+1, (clip.y+clip.height)/cellSize+1);
+			return;
+		}
+		
+		//until the level is rendered, stand in with the nearest one that is
+		BufferedImage img = levels.get(level);
+		int used = level;
+		for(int d = 1; img == null && d < levelCount; d++){
+			if(level-d >= 0 && (img = levels.get(level-d)) != null) used = level-d;
+			else if(level+d < levelCount && (img = levels.get(level+d)) != null) used = level+d;
+		}
+		if(img == null) return;
+		
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, zoom > 1 && used == 0
+				? RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR
+				: RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(img, 0, 0, baseWidth, baseHeight, null);
+	}
+	
+	/**
+	 * Draws the maze at the given level by scaling down the Graphics2D. This
+	 * is only used when the levels above it are too big to keep in memory.
+	 */
+	private static BufferedImage render(Maze m, int cellSize, int level){
+		int width = (int)(((long)m.getOptions().getSizeX()*cellSize >> level)+1);
+		int height = (int)(((long)m.getOptions().getSizeY()*cellSize >> level)+1);
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = img.createGraphics();
+		g.setColor(Color.white);
+		g.fillRect(0, 0, width, height);
+		g.scale(1.0/(1 << level), 1.0/(1 << level));
+		m.paint(g, cellSize, 0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
+		g.dispose();
+		return img;
+	}
+	
+	/**
+	 * Makes the next level of the pyramid by averaging each 2x2 block of
+	 * pixels, one row of the new image per task in parallel.
+	 */
+	private static BufferedImage downsample(BufferedImage src){
+		final int sw = src.getWidth(), sh = src.getHeight();
+		final int w = (sw+1)/2, h = (sh+1)/2;
+		BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+		final int[] in = ((DataBufferInt)src.getRaster().getDataBuffer()).getData();
+		final int[] out = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+		
+		IntStream.range(0, h).parallel().forEach(y -> {
+			int y0 = 2*y*sw;
+			int y1 = Math.min(2*y+1, sh-1)*sw;
+			for(int x = 0; x < w; x++){
+				int x0 = 2*x;
+				int x1 = Math.min(2*x+1, sw-1);
+				int a = in[y0+x0], b = in[y0+x1], c = in[y1+x0], d = in[y1+x1];
+				int r = ((a>>16&0xFF) + (b>>16&0xFF) + (c>>16&0xFF) + (d>>16&0xFF)) >> 2;
+				int gr = ((a>>8&0xFF) + (b>>8&0xFF) + (c>>8&0xFF) + (d>>8&0xFF)) >> 2;
+				int bl = ((a&0xFF) + (b&0xFF) + (c&0xFF) + (d&0xFF)) >> 2;
+				out[y*w+x] = r << 16 | gr << 8 | bl;
+			}
+		});
+		return img;
+	}
+}
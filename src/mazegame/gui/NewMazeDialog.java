@@ -39,15 +39,19 @@ import javax.swing.SpinnerNumberModel;
 import javax.swing.border.TitledBorder;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import mazegame.GenerationService;
 import mazegame.MazeOptions;
 import mazegame.MazeOptions.Algorithm;
+import mazegame.MazeOptions.Selection;
 import mazegame.Point;
 
 /**
  * A dialog box shown when a user wants to generate a new maze. This dialog
  * allows the user to select the maze size, starting positions of player(s),
  * the goal position, and the maze generation algorithm. The dialog returns
- * a MazeOptions for use in the main MazeFrame to create the new maze.
+ * a MazeOptions for use in the main MazeFrame to create the new maze. If the
+ * dialog is given a GenerationService, it prefetches a maze every time the
+ * options change, so the maze may already be made when the user clicks OK.
  * @author Jeffery Thompson
  */
 public class NewMazeDialog extends JDialog {
@@ -62,9 +66,12 @@ public class NewMazeDialog extends JDialog {
 	private final JSpinner goalX = new JSpinner();
 	private final JSpinner goalY = new JSpinner();
 	private final JComboBox algComboBox = new JComboBox(Algorithm.values());
+	private final JComboBox selComboBox = new JComboBox(Selection.values());
+	private final JSpinner newestRatio = new JSpinner();
 	
 	MazeOptions options;
 	boolean cancelled;
+	GenerationService generator;
 	
 	public NewMazeDialog(JFrame f){
 		super(f, "New Maze", true);
@@ -83,6 +90,11 @@ public class NewMazeDialog extends JDialog {
 		createUserInterface();
 	}
 	
+	public NewMazeDialog(JFrame f, MazeOptions o, GenerationService g){
+		this(f, o);
+		generator = g;
+	}
+	
 	private void createUserInterface(){
 		
 		DialogListener listener = new DialogListener();
@@ -107,7 +119,6 @@ public class NewMazeDialog extends JDialog {
 		JPanel startPanel = new JPanel();
 		startPanel.setBorder(new TitledBorder("Start Position"));
 		startPanel.add(new JLabel("X:"));
-		System.out.println(options.getStart().getX());
 		startX.setModel(new SpinnerNumberModel(options.getStart().getX(),0,options.getSizeX()-1,1));
 		startX.addChangeListener(listener);
 		startPanel.add(startX);
@@ -138,6 +149,16 @@ public class NewMazeDialog extends JDialog {
 		algPanel.add(algComboBox);
 		algComboBox.setActionCommand("Algorithm");
 		algComboBox.addActionListener(listener);
+		algPanel.add(new JLabel("Selection:"));
+		selComboBox.setSelectedItem(options.getSelection());
+		algPanel.add(selComboBox);
+		selComboBox.setActionCommand("Algorithm");
+		selComboBox.addActionListener(listener);
+		algPanel.add(new JLabel("Newest:"));
+		newestRatio.setModel(new SpinnerNumberModel(options.getNewestRatio(),0.0,1.0,0.05));
+		newestRatio.addChangeListener(listener);
+		algPanel.add(newestRatio);
+		updateSelection();
 		this.add(algPanel,c);
 		
 		c.gridy = 4;
@@ -156,10 +177,20 @@ public class NewMazeDialog extends JDialog {
 	private void createOptionsFromDialog(){
 		options = new MazeOptions((int)spinnerX.getValue(), (int)spinnerY.getValue());
 		options.setAlgorithm((Algorithm)algComboBox.getSelectedItem());
+		options.setSelection((Selection)selComboBox.getSelectedItem());
+		options.setNewestRatio((double)newestRatio.getValue());
 		options.setStart(new Point((int)startX.getValue(),(int)startY.getValue()));
 		options.setGoal(new Point((int)goalX.getValue(),(int)goalY.getValue()));
 		
 		updateSpinners();
+		updateSelection();
+		if(generator != null) generator.prefetch(options);
+	}
+	
+	private void updateSelection(){
+		boolean growingTree = options.getAlgorithm() == Algorithm.GROWING_TREE;
+		selComboBox.setEnabled(growingTree);
+		newestRatio.setEnabled(growingTree && options.getSelection() == Selection.MIXED);
 	}
 	
 	private void updateSpinners(){
@@ -0,0 +1,187 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.gui;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.stream.IntStream;
+import mazegame.Direction;
+import mazegame.Maze;
+import mazegame.Maze.Cell;
+import mazegame.Point;
+
+/**
+ * A level-of-detail renderer for zoomed out views of a maze. When the cells
+ * are only a few pixels wide, drawing each Cell through Java2D costs about
+ * nine fillRect/drawLine calls per Cell for very little visible detail. This
+ * renderer instead writes the pixels of the whole maze directly into the
+ * int[] of a BufferedImage, one row of Cells per task in parallel.
+ * 
+ * With a cell size of 2 or 3 pixels, each Cell is drawn with a one pixel
+ * wall on its north and west sides and the rest left open. With a cell size
+ * of 1 pixel, there is no room for walls, so each Cell is shaded by how many
+ * passages it has (dead ends are darkest), which still shows the shape of the
+ * maze.
+ * 
+ * The walls of a maze do not change once it has been generated, so the image
+ * is only rendered again when the maze or the cell size changes.
+ * @author Jeff
+ */
+public class OverviewRenderer {
+	/**
+	 * Cell sizes below this are drawn with the OverviewRenderer instead of
+	 * Maze.paint().
+	 */
+	public static final int THRESHOLD = 4;
+	
+	private static final int WHITE = 0xFFFFFFFF;
+	private static final int BLACK = 0xFF000000;
+	private static final int[] SHADES = {0xFF000000, 0xFF606060, 0xFFB0B0B0,
+		0xFFE0E0E0, 0xFFFFFFFF};
+	
+	private Maze maze;
+	private int cellSize;
+	private BufferedImage image;
+	
+	/**
+	 * Checks if a maze drawn with the given cell size should use the
+	 * OverviewRenderer.
+	 * @param cellSize size of a Cell in pixels
+	 * @return true if the cell size is below THRESHOLD
+	 */
+	public static boolean useFor(int cellSize){
+		return cellSize < THRESHOLD;
+	}
+	
+	/**
+	 * Paints the maze using the Graphics2D object g at the current
+	 * Maze.CELL_SIZE. The maze is only rendered again if it or the cell size
+	 * has changed since the last call.
+	 * @param g Graphics2D object to draw onto
+	 * @param m Maze to draw
+	 */
+	public void paint(Graphics2D g, Maze m){
+		g.drawImage(getImage(m, Maze.CELL_SIZE), 0, 0, null);
+	}
+	
+	/**
+	 * Gets the rendered image of the Maze m at the given cell size, rendering
+	 * it if needed.
+	 * @param m Maze to render
+	 * @param size size of a Cell in pixels, from 1 to THRESHOLD-1
+	 * @return image of the maze
+	 */
+	public BufferedImage getImage(Maze m, int size){
+		if(image == null || maze != m || cellSize != size){
+			maze = m;
+			cellSize = size;
+			image = render(m, size);
+		}
+		return image;
+	}
+	
+	/**
+	 * Renders the whole Maze m into a new image with the given cell size. The
+	 * image is one pixel larger than the maze in each direction, like the
+	 * MazePanel, to make room for the east and south walls.
+	 * @param m Maze to render
+	 * @param size size of a Cell in pixels, from 1 to THRESHOLD-1
+	 * @return image of the maze
+	 * @throws IllegalArgumentException if the image would have more pixels
+	 * than fit in an int[]
+	 */
+	public static BufferedImage render(Maze m, int size){
+		final int sizeX = m.getOptions().getSizeX();
+		final int sizeY = m.getOptions().getSizeY();
+		if(((long)sizeX*size+1)*((long)sizeY*size+1) > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("A " + sizeX + "x" + sizeY
+					+ " maze is too big to render with a cell size of " + size);
+		final int width = sizeX*size+1;
+		final int height = sizeY*size+1;
+		final BufferedImage img = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		final int[] pixels = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+		
+		renderRows(m, size, 0, sizeY, pixels);
+		//south edge of the maze
+		for(int x = 0; x < width; x++) pixels[(height-1)*width + x] = BLACK;
+		return img;
+	}
+	
+	/**
+	 * Renders the rows of Cells from y0 up to y1 into a strip of pixels. The
+	 * strip is sizeX*size+1 pixels wide and (y1-y0)*size pixels high, stored
+	 * row by row like a BufferedImage.TYPE_INT_RGB. The south edge of the
+	 * maze is not part of any row of Cells, so a strip ending at the last row
+	 * needs one more row of black pixels below it.
+	 * @param m Maze to render
+	 * @param size size of a Cell in pixels, from 1 to THRESHOLD-1
+	 * @param y0 first row of Cells to render
+	 * @param y1 row of Cells to stop at (exclusive)
+	 * @param pixels strip to render into
+	 */
+	public static void renderRows(Maze m, int size, int y0, int y1, int[] pixels){
+		final int sizeX = m.getOptions().getSizeX();
+		final int width = sizeX*size+1;
+		final Point goal = m.getOptions().getGoal();
+		
+		IntStream.range(y0, y1).parallel().forEach(y -> {
+			if(size == 1) shadeRow(m, y, sizeX, (y-y0)*width, pixels);
+			else drawRow(m, y, size, sizeX, width, (y-y0)*size*width, pixels, goal);
+		});
+		//east edge of the maze
+		for(int r = 0; r < (y1-y0)*size; r++) pixels[r*width + width-1] = BLACK;
+	}
+	
+	private static void drawRow(Maze m, int y, int size, int sizeX, int width,
+			int top, int[] pixels, Point goal){
+		for(int x = 0; x < sizeX; x++){
+			Cell c = m.getCell(x, y);
+			int left = top + x*size;
+			int inside = (x == goal.getX() && y == goal.getY()) ? BLACK : WHITE;
+			//north wall row, starting with the corner
+			pixels[left] = BLACK;
+			int north = c.hasWall(Direction.NORTH) ? BLACK : WHITE;
+			for(int i = 1; i < size; i++) pixels[left+i] = north;
+			//west wall column and the open inside of the cell
+			int west = c.hasWall(Direction.WEST) ? BLACK : WHITE;
+			for(int j = 1; j < size; j++){
+				int row = left + j*width;
+				pixels[row] = west;
+				for(int i = 1; i < size; i++) pixels[row+i] = inside;
+			}
+		}
+	}
+	
+	private static void shadeRow(Maze m, int y, int sizeX, int row, int[] pixels){
+		for(int x = 0; x < sizeX; x++){
+			Cell c = m.getCell(x, y);
+			int open = 0;
+			for(Direction dir : Direction.values())
+				if(!c.hasWall(dir)) open++;
+			pixels[row+x] = SHADES[open];
+		}
+	}
+}
@@ -0,0 +1,331 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import mazegame.Direction;
+import mazegame.GenerationListener;
+import mazegame.GenerationProgress;
+import mazegame.Maze;
+import mazegame.Maze.Cell;
+import mazegame.MazeOptions;
+import mazegame.MazeOptions.Algorithm;
+import mazegame.MazeOptions.Selection;
+import mazegame.MazeSolver;
+import mazegame.Point;
+import mazegame.net.MazeCodec;
+import mazegame.stats.Histogram;
+
+/**
+ * Generates many mazes at once without a display, and writes them to a
+ * single file. Mazes are generated on all the processors, but written in
+ * order, so a batch with the same seed always produces the same file. Only
+ * a few mazes per thread are kept in memory at a time, so the batch can be
+ * much larger than the heap.
+ * 
+ * The binary format starts with the magic number "MZBT", a version byte and
+ * the number of mazes. Each maze follows as its MazeOptions, laid out as in
+ * a Replay, and its walls encoded with MazeCodec. The text format draws each
+ * maze with +, - and | after a line starting with # describing it.
+ * @author Jeffery Thompson
+ */
+public class MazeBatch {
+	private static final int MAGIC = 0x4D5A4254;
+	private static final int VERSION = 2;
+	
+	/**
+	 * Output formats of a batch.
+	 */
+	public enum Format { BIN, TEXT }
+	
+	private final MazeOptions options;
+	private final int count;
+	private final Format format;
+	private final int threads;
+	
+	private final Histogram times = new Histogram();
+	private long cells = 0, bytes = 0, elapsed = 0;
+	
+	/**
+	 * Creates a batch of mazes like the MazeOptions o. Each maze gets its own
+	 * seed, chosen from a Random seeded with the seed of o.
+	 * @param o MazeOptions of the mazes
+	 * @param count number of mazes
+	 * @param f output Format
+	 * @param threads number of mazes generated at once
+	 */
+	public MazeBatch(MazeOptions o, int count, Format f, int threads){
+		options = o;
+		this.count = count;
+		format = f;
+		this.threads = threads;
+	}
+	
+	/**
+	 * Generates the mazes and writes them to the stream. A line of statistics
+	 * is printed for each maze as it is written.
+	 * @param os stream to write the mazes to
+	 * @param log stream to print statistics to, or null
+	 * @throws IOException if the mazes could not be written
+	 */
+	public void run(OutputStream os, PrintStream log) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		Deque<Future<Result>> queue = new ArrayDeque();
+		Random seeds = new Random(options.getSeed());
+		DataOutputStream out = new DataOutputStream(os);
+		long start = System.nanoTime();
+		try {
+			if(format == Format.BIN){
+				out.writeInt(MAGIC);
+				out.writeByte(VERSION);
+				out.writeInt(count);
+			}
+			int submitted = 0;
+			for(int i = 0; i < count; i++){
+				while(submitted < count && queue.size() < threads*2){
+					MazeOptions o = new MazeOptions(options);
+					o.setSeed(seeds.nextLong());
+					int index = submitted++;
+					queue.add(pool.submit(() -> generate(index, o)));
+				}
+				Result r = queue.poll().get();
+				out.write(r.data);
+				times.record(r.nanos);
+				cells += (long)r.options.getSizeX()*r.options.getSizeY();
+				bytes += r.data.length;
+				if(log != null) log.println(r);
+			}
+			out.flush();
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted", e);
+		} catch(ExecutionException e){
+			throw new IOException("Could not generate a maze", e.getCause());
+		} finally {
+			pool.shutdownNow();
+			elapsed = System.nanoTime() - start;
+		}
+	}
+	
+	private Result generate(int index, MazeOptions o) throws IOException {
+		Result r = new Result(index, o);
+		long start = System.nanoTime();
+		Maze m = new Maze(o, r);
+		r.nanos = System.nanoTime() - start;
+		r.deadEnds = countDeadEnds(m);
+		r.solution = new MazeSolver(m).getDistance(o.getStart().getX(), o.getStart().getY());
+		r.data = format == Format.BIN ? encode(m) : draw(m, index, count);
+		return r;
+	}
+	
+	/**
+	 * Describes how the batch went.
+	 * @return throughput and generation time percentiles
+	 */
+	public String report(){
+		double seconds = elapsed/1e9;
+		return String.format("%d mazes in %.2f s on %d threads: %.1f mazes/s, %.2f Mcells/s, %.1f MB written%n"
+				+ "Generation time: p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+				times.getCount(), seconds, threads, times.getCount()/seconds,
+				cells/seconds/1e6, bytes/1e6, times.getPercentile(50)/1e6,
+				times.getPercentile(99)/1e6, times.getMax()/1e6);
+	}
+	
+	/**
+	 * Counts the Cells with only one way in or out.
+	 * @param m Maze to count
+	 * @return number of dead ends
+	 */
+	static int countDeadEnds(Maze m){
+		int deadEnds = 0;
+		for(int x = 0; x < m.getOptions().getSizeX(); x++){
+			for(int y = 0; y < m.getOptions().getSizeY(); y++){
+				Cell c = m.getCell(x, y);
+				int open = 0;
+				for(Direction dir : Direction.values())
+					if(c.hasNeighbor(dir) && !c.hasWall(dir)) open++;
+				if(open == 1) deadEnds++;
+			}
+		}
+		return deadEnds;
+	}
+	
+	private static byte[] encode(Maze m) throws IOException {
+		byte[] walls = MazeCodec.encode(m);
+		ByteArrayOutputStream b = new ByteArrayOutputStream(walls.length + 64);
+		DataOutputStream out = new DataOutputStream(b);
+		MazeOptions o = m.getOptions();
+		out.writeInt(o.getSizeX());
+		out.writeInt(o.getSizeY());
+		out.writeUTF(o.getAlgorithm().name());
+		out.writeLong(o.getSeed());
+		out.writeInt(o.getStart().getX());
+		out.writeInt(o.getStart().getY());
+		out.writeInt(o.getGoal().getX());
+		out.writeInt(o.getGoal().getY());
+		out.writeUTF(o.getSelection().name());
+		out.writeDouble(o.getNewestRatio());
+		out.writeInt(walls.length);
+		out.write(walls);
+		return b.toByteArray();
+	}
+	
+	/**
+	 * Draws the Maze m as text, two characters per Cell.
+	 */
+	private static byte[] draw(Maze m, int index, int count){
+		MazeOptions o = m.getOptions();
+		int sizeX = o.getSizeX(), sizeY = o.getSizeY();
+		StringBuilder s = new StringBuilder((sizeX*3+2)*(sizeY*2+2) + 100);
+		s.append(String.format("# maze %d of %d: %dx%d %s seed %d start %d,%d goal %d,%d%n",
+				index+1, count, sizeX, sizeY, o.getAlgorithm().name(), o.getSeed(),
+				o.getStart().getX(), o.getStart().getY(), o.getGoal().getX(), o.getGoal().getY()));
+		for(int x = 0; x < sizeX; x++) s.append("+--");
+		s.append("+\n");
+		for(int y = 0; y < sizeY; y++){
+			s.append('|');
+			for(int x = 0; x < sizeX; x++){
+				Cell c = m.getCell(x, y);
+				s.append(x == o.getStart().getX() && y == o.getStart().getY() ? "S "
+						: x == o.getGoal().getX() && y == o.getGoal().getY() ? "G " : "  ");
+				s.append(c.hasWall(Direction.EAST) || x == sizeX-1 ? '|' : ' ');
+			}
+			s.append("\n+");
+			for(int x = 0; x < sizeX; x++)
+				s.append(m.getCell(x, y).hasWall(Direction.SOUTH) || y == sizeY-1 ? "--+" : "  +");
+			s.append('\n');
+		}
+		return s.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+	
+	/**
+	 * Reads the mazes of a batch written in the binary format.
+	 * @param is stream to read from
+	 * @param consumer called with each Maze in order
+	 * @return number of mazes read
+	 * @throws IOException if the stream is not a batch of mazes
+	 */
+	public static int read(InputStream is, Consumer<Maze> consumer) throws IOException {
+		DataInputStream in = new DataInputStream(is);
+		if(in.readInt() != MAGIC) throw new IOException("Not a maze batch");
+		int version = in.readByte();
+		if(version < 1 || version > VERSION) throw new IOException("Unsupported batch version " + version);
+		int n = in.readInt();
+		for(int i = 0; i < n; i++){
+			MazeOptions o = new MazeOptions(in.readInt(), in.readInt());
+			o.setAlgorithm(Algorithm.valueOf(in.readUTF()));
+			o.setSeed(in.readLong());
+			o.setStart(new Point(in.readInt(), in.readInt()));
+			o.setGoal(new Point(in.readInt(), in.readInt()));
+			if(version >= 2){
+				o.setSelection(Selection.valueOf(in.readUTF()));
+				o.setNewestRatio(in.readDouble());
+			}
+			byte[] walls = new byte[in.readInt()];
+			in.readFully(walls);
+			consumer.accept(MazeCodec.decode(o, walls));
+		}
+		return n;
+	}
+	
+	/**
+	 * A generated maze waiting to be written, with its statistics.
+	 */
+	private static class Result implements GenerationListener {
+		final int index;
+		final MazeOptions options;
+		long nanos;
+		int deadEnds, solution;
+		GenerationProgress progress;
+		byte[] data;
+		
+		Result(int i, MazeOptions o){
+			index = i;
+			options = o;
+		}
+		
+		@Override
+		public void started(Maze m){
+		}
+		@Override
+		public void progress(GenerationProgress p){
+		}
+		@Override
+		public void finished(GenerationProgress p){
+			progress = p;
+		}
+		
+		@Override
+		public String toString(){
+			String s = String.format("%d\tseed %d\t%.2f ms\t%d dead ends\tsolution %d",
+					index+1, options.getSeed(), nanos/1e6, deadEnds, solution);
+			if(progress.getWalks() > 0) s += String.format("\t%d walks, longest %d",
+					progress.getWalks(), progress.getLongestWalk());
+			return s;
+		}
+	}
+	
+	/**
+	 * Generates a batch of mazes without a display.
+	 * Usage: batch count sizeX sizeY file [algorithm] [bin|text] [threads] [seed]
+	 * @param args command line arguments
+	 * @throws IOException if the mazes could not be written
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 4){
+			System.err.println("Usage: batch count sizeX sizeY file [DFS|PRIM|WILSON|FAST_WILSON|GROWING_TREE[:selection[:ratio]]|SIDEWINDER|BINARY_TREE] [bin|text] [threads] [seed]");
+			System.exit(1);
+		}
+		System.setProperty("java.awt.headless", "true");
+		MazeOptions options = new MazeOptions(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+		if(args.length > 4) options.parseAlgorithm(args[4]);
+		Format format = args.length > 5 ? Format.valueOf(args[5].toUpperCase()) : Format.BIN;
+		int threads = args.length > 6 ? Integer.parseInt(args[6])
+				: Runtime.getRuntime().availableProcessors();
+		if(args.length > 7) options.setSeed(Long.parseLong(args[7]));
+		
+		MazeBatch batch = new MazeBatch(options, Integer.parseInt(args[0]), format, threads);
+		try(OutputStream os = new BufferedOutputStream(new FileOutputStream(args[3]), 1 << 16)){
+			batch.run(os, System.out);
+		}
+		System.out.println(batch.report());
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.io;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import mazegame.Maze;
+import mazegame.MazeGenerator;
+import mazegame.MazeOptions;
+import mazegame.MazeOptions.Algorithm;
+import mazegame.Point;
+import mazegame.gui.OverviewRenderer;
+
+/**
+ * Exports a maze as a PNG image without needing a display. The maze is
+ * rendered in horizontal strips a few rows of Cells high, and each strip is
+ * streamed into a PngWriter before the next one is rendered. Only one strip
+ * is ever held in memory, so the size of the maze is limited by the Maze
+ * itself rather than by the image. A Maze takes about 130 bytes per Cell, so
+ * a maze of 50000x50000 Cells would need over 300 GB.
+ * 
+ * SIDEWINDER and BINARY_TREE mazes are made a row at a time, so they can be
+ * exported from their MazeOptions without a Maze: each strip is generated
+ * on its own with MazeGenerator.generateRows() and dropped once written, and
+ * memory stays the same for any size of maze.
+ * 
+ * Cell sizes of OverviewRenderer.THRESHOLD and up are drawn the same way as
+ * the MazePanel draws them, using Maze.paint(). Smaller cell sizes use the
+ * OverviewRenderer.
+ * @author Jeffery Thompson
+ */
+public class MazeExporter {
+	/**
+	 * Roughly how many pixels a single strip may hold.
+	 */
+	private static final int STRIP_PIXELS = 1 << 22;
+	/**
+	 * Roughly how many Cells a strip generated on its own may hold.
+	 */
+	private static final int STRIP_CELLS = 1 << 18;
+	
+	/**
+	 * Writes the Maze m as a PNG image to the OutputStream.
+	 * @param m Maze to export
+	 * @param cellSize size of a Cell in pixels
+	 * @param os stream to write the image to
+	 * @throws IOException if the image could not be written
+	 */
+	public static void export(Maze m, int cellSize, OutputStream os) throws IOException {
+		export(m.getOptions(), m, cellSize, os);
+	}
+	
+	/**
+	 * Checks if a maze made with the MazeOptions o can be exported without
+	 * making the whole Maze.
+	 * @param o MazeOptions of the maze
+	 * @return true if the maze is made a row at a time
+	 */
+	public static boolean canStream(MazeOptions o){
+		return o.getAlgorithm() == Algorithm.SIDEWINDER || o.getAlgorithm() == Algorithm.BINARY_TREE;
+	}
+	
+	/**
+	 * Generates the maze for the MazeOptions o a strip at a time and writes
+	 * it as a PNG image to the OutputStream, without ever holding the whole
+	 * Maze. The image is the same as exporting new Maze(o).
+	 * @param o MazeOptions of the maze, for SIDEWINDER or BINARY_TREE
+	 * @param cellSize size of a Cell in pixels
+	 * @param os stream to write the image to
+	 * @throws IOException if the image could not be written
+	 * @throws IllegalArgumentException if the maze can't be streamed
+	 * @see #canStream(MazeOptions)
+	 */
+	public static void export(MazeOptions o, int cellSize, OutputStream os) throws IOException {
+		if(!canStream(o)) throw new IllegalArgumentException(o.getAlgorithm() + " can't be streamed");
+		export(o, null, cellSize, os);
+	}
+	
+	/**
+	 * Exports the Maze m, or if it is null, generates the strips one by one.
+	 */
+	private static void export(MazeOptions o, Maze m, int cellSize, OutputStream os) throws IOException {
+		int sizeX = o.getSizeX();
+		int sizeY = o.getSizeY();
+		int width = sizeX*cellSize+1;
+		int height = sizeY*cellSize+1;
+		int stripRows = (int)Math.max(1, Math.min(sizeY, STRIP_PIXELS/((long)width*cellSize)));
+		if(m == null) stripRows = Math.max(1, Math.min(stripRows, STRIP_CELLS/sizeX - 2));
+		
+		PngWriter png = new PngWriter(os, width, height, Deflater.DEFAULT_COMPRESSION);
+		if(OverviewRenderer.useFor(cellSize)){
+			int[] strip = new int[width*stripRows*cellSize];
+			for(int y = 0; y < sizeY; y += stripRows){
+				int rows = Math.min(stripRows, sizeY-y);
+				int first = m == null ? Math.max(0, y-1) : 0;
+				Maze band = m == null ? band(o, first, Math.min(sizeY, y+rows+1)) : m;
+				OverviewRenderer.renderRows(band, cellSize, y-first, y+rows-first, strip);
+				png.writeRows(strip, 0, width, rows*cellSize);
+			}
+			//south edge of the maze
+			Arrays.fill(strip, 0, width, 0);
+			png.writeRows(strip, 0, width, 1);
+		}
+		else {
+			BufferedImage strip = new BufferedImage(width, stripRows*cellSize+1,
+					BufferedImage.TYPE_INT_RGB);
+			int[] pixels = ((DataBufferInt)strip.getRaster().getDataBuffer()).getData();
+			for(int y = 0; y < sizeY; y += stripRows){
+				int rows = Math.min(stripRows, sizeY-y);
+				//the last strip includes the extra pixel row below the maze
+				int pixelRows = rows*cellSize + (y+rows == sizeY ? 1 : 0);
+				int first = m == null ? Math.max(0, y-1) : 0;
+				Maze band = m == null ? band(o, first, Math.min(sizeY, y+rows+1)) : m;
+				Graphics2D g = strip.createGraphics();
+				g.setColor(Color.white);
+				g.fillRect(0, 0, width, strip.getHeight());
+				g.translate(0, -y*cellSize);
+				g.clipRect(0, y*cellSize, width, pixelRows);
+				g.translate(0, first*cellSize);
+				band.paint(g, cellSize, 0, y-1-first, sizeX, y+rows-first);
+				g.dispose();
+				png.writeRows(pixels, 0, width, pixelRows);
+			}
+		}
+		png.close();
+	}
+	
+	/**
+	 * Generates the rows y0 to y1 of the maze for o as a Maze of their own.
+	 * Strips are made with a row of context on each side where there is one,
+	 * which is never drawn, so the Cells that are drawn have all their walls.
+	 * MazeOptions keeps the goal inside the band, so a goal in another strip
+	 * lands on one of those context rows.
+	 */
+	private static Maze band(MazeOptions o, int y0, int y1){
+		MazeOptions b = new MazeOptions(o.getSizeX(), y1-y0);
+		b.setAlgorithm(o.getAlgorithm());
+		b.setSeed(o.getSeed());
+		b.setGoal(new Point(o.getGoal().getX(), o.getGoal().getY() - y0));
+		Maze band = Maze.blank(b);
+		MazeGenerator.generateRows(band, o, y0);
+		return band;
+	}
+	
+	/**
+	 * Generates a maze and exports it as a PNG without opening a window.
+	 * Usage: export sizeX sizeY cellSize file.png [algorithm]
+	 * @param args command line arguments
+	 * @throws IOException if the image could not be written
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 4){
+			System.err.println("Usage: export sizeX sizeY cellSize file.png [DFS|PRIM|WILSON|FAST_WILSON|GROWING_TREE[:selection[:ratio]]|SIDEWINDER|BINARY_TREE]");
+			System.exit(1);
+		}
+		System.setProperty("java.awt.headless", "true");
+		MazeOptions options = new MazeOptions(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+		if(args.length > 4) options.parseAlgorithm(args[4]);
+		int cellSize = Integer.parseInt(args[2]);
+		
+		long start = System.nanoTime();
+		if(canStream(options)){
+			try(OutputStream os = new BufferedOutputStream(new FileOutputStream(args[3]), 1 << 16)){
+				export(options, cellSize, os);
+			}
+			System.err.printf("Generated and exported in %d ms%n", (System.nanoTime()-start)/1000000);
+			return;
+		}
+		Maze m = new Maze(options);
+		long generated = System.nanoTime();
+		try(OutputStream os = new BufferedOutputStream(new FileOutputStream(args[3]), 1 << 16)){
+			export(m, cellSize, os);
+		}
+		long exported = System.nanoTime();
+		System.err.printf("Generated in %d ms, exported in %d ms%n",
+				(generated-start)/1000000, (exported-generated)/1000000);
+	}
+}
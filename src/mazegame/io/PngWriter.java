@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.io;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A streaming PNG encoder. Rows of pixels are deflated and written as they
+ * are given to the writer, so an image of any size can be written while only
+ * holding a few rows of it in memory. The image is written as 8-bit RGB with
+ * no filtering, which compresses well for the flat colors of a maze.
+ * 
+ * Rows must be written top to bottom, and close() must be called after the
+ * last row to finish the image.
+ * @author Jeffery Thompson
+ */
+public class PngWriter implements Closeable {
+	private static final byte[] SIGNATURE = {(byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+	private static final int CHUNK_SIZE = 1 << 16;
+	
+	private final DataOutputStream out;
+	private final int width, height;
+	private final Deflater deflater;
+	private final DeflaterOutputStream idat;
+	private final byte[] row;
+	private int rowsWritten = 0;
+	
+	/**
+	 * Creates a PngWriter and writes the PNG header to the OutputStream.
+	 * @param os stream to write the image to
+	 * @param width width of the image in pixels
+	 * @param height height of the image in pixels
+	 * @param level compression level, from Deflater.BEST_SPEED to
+	 * Deflater.BEST_COMPRESSION
+	 * @throws IOException if the header could not be written
+	 */
+	public PngWriter(OutputStream os, int width, int height, int level) throws IOException {
+		this.out = new DataOutputStream(os);
+		this.width = width;
+		this.height = height;
+		
+		out.write(SIGNATURE);
+		DataOutputStream ihdr = new DataOutputStream(new ChunkStream("IHDR"));
+		ihdr.writeInt(width);
+		ihdr.writeInt(height);
+		ihdr.write(8); //bit depth
+		ihdr.write(2); //color type: RGB
+		ihdr.write(0); //compression: deflate
+		ihdr.write(0); //filter method
+		ihdr.write(0); //no interlace
+		ihdr.close();
+		
+		deflater = new Deflater(level);
+		idat = new DeflaterOutputStream(new ChunkStream("IDAT"), deflater, CHUNK_SIZE);
+		row = new byte[1 + width*3];
+	}
+	
+	/**
+	 * Writes rows of pixels. The pixels are given as 0xRRGGBB ints, like the
+	 * data of a BufferedImage.TYPE_INT_RGB, with each row being width pixels
+	 * long starting at offset.
+	 * @param pixels pixel data
+	 * @param offset index of the first pixel of the first row
+	 * @param scanline distance between the start of two rows in pixels
+	 * @param rows number of rows to write
+	 * @throws IOException if the rows could not be written
+	 */
+	public void writeRows(int[] pixels, int offset, int scanline, int rows) throws IOException {
+		if(rowsWritten + rows > height)
+			throw new IllegalStateException("Too many rows for a " + height + " pixel high image");
+		for(int r = 0; r < rows; r++){
+			int p = offset + r*scanline;
+			row[0] = 0; //filter type: none
+			for(int x = 0, i = 1; x < width; x++){
+				int rgb = pixels[p+x];
+				row[i++] = (byte)(rgb >> 16);
+				row[i++] = (byte)(rgb >> 8);
+				row[i++] = (byte)rgb;
+			}
+			idat.write(row);
+		}
+		rowsWritten += rows;
+	}
+	
+	/**
+	 * Finishes the compressed image data and writes the end of the PNG. This
+	 * does not close the underlying OutputStream.
+	 * @throws IOException if the image could not be finished
+	 */
+	@Override
+	public void close() throws IOException {
+		if(rowsWritten != height)
+			throw new IllegalStateException("Only " + rowsWritten + " of " + height + " rows were written");
+		idat.close();
+		deflater.end();
+		new ChunkStream("IEND").close();
+		out.flush();
+	}
+	
+	/**
+	 * An OutputStream that collects data into PNG chunks of the given type.
+	 * A chunk is written every time the buffer fills up, and the rest of the
+	 * data is written as a last chunk when the stream is closed.
+	 */
+	private class ChunkStream extends OutputStream {
+		private final byte[] type;
+		private final byte[] data = new byte[CHUNK_SIZE];
+		private int count = 0;
+		private boolean written = false;
+		
+		ChunkStream(String type){
+			this.type = type.getBytes(StandardCharsets.US_ASCII);
+		}
+		
+		@Override
+		public void write(int b) throws IOException {
+			if(count == data.length) writeChunk();
+			data[count++] = (byte)b;
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while(len > 0){
+				if(count == data.length) writeChunk();
+				int n = Math.min(len, data.length - count);
+				System.arraycopy(b, off, data, count, n);
+				count += n;
+				off += n;
+				len -= n;
+			}
+		}
+		
+		/**
+		 * Writes the rest of the data as a chunk. An empty chunk is only
+		 * written if no chunk of this type has been written yet, since IEND
+		 * has no data at all.
+		 */
+		@Override
+		public void close() throws IOException {
+			if(count > 0 || !written) writeChunk();
+		}
+		
+		private void writeChunk() throws IOException {
+			CRC32 crc = new CRC32();
+			crc.update(type);
+			crc.update(data, 0, count);
+			out.writeInt(count);
+			out.write(type);
+			out.write(data, 0, count);
+			out.writeInt((int)crc.getValue());
+			count = 0;
+			written = true;
+		}
+	}
+}
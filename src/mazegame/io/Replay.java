@@ -0,0 +1,192 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.io;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import mazegame.Maze;
+import mazegame.MazeOptions;
+import mazegame.MazeOptions.Algorithm;
+import mazegame.MazeOptions.Selection;
+import mazegame.Point;
+
+/**
+ * A recorded race. A Replay holds the MazeOptions of the maze (including its
+ * seed, so the same maze can be generated again), the start and color of
+ * each player, and a log of every move and restart with when it happened.
+ * 
+ * The log is delta-encoded to keep it small. Each event is two varints: the
+ * first holds the microseconds since the previous event shifted left by two,
+ * with the Direction in the low two bits; the second holds the player's
+ * index shifted left by one, with the low bit set for a restart instead of a
+ * move. Most moves take two or three bytes.
+ * 
+ * Replays are made with a ReplayRecorder and played with a ReplayPlayback.
+ * @author Jeffery Thompson
+ */
+public class Replay {
+	private static final int MAGIC = 0x4D5A5250; //"MZRP"
+	private static final int VERSION = 2;
+	
+	private final MazeOptions options;
+	private final Point[] starts;
+	private final int[] colors;
+	private final byte[] events;
+	private final int length;
+	private final int eventCount;
+	private final long duration;
+	
+	Replay(MazeOptions o, Point[] s, int[] c, byte[] e, int len, int count, long micros){
+		options = o;
+		starts = s;
+		colors = c;
+		events = e;
+		length = len;
+		eventCount = count;
+		duration = micros;
+	}
+	
+	public MazeOptions getOptions(){
+		return options;
+	}
+	
+	/**
+	 * Generates the maze the replay was recorded in.
+	 * @return new Maze made from the replay's MazeOptions
+	 */
+	public Maze createMaze(){
+		return new Maze(options);
+	}
+	
+	public int getPlayerCount(){
+		return starts.length;
+	}
+	public Point getStart(int player){
+		return starts[player];
+	}
+	public int getColor(int player){
+		return colors[player];
+	}
+	
+	/**
+	 * Gets the number of moves and restarts in the replay.
+	 * @return number of events
+	 */
+	public int getEventCount(){
+		return eventCount;
+	}
+	
+	/**
+	 * Gets the time from the start of the recording to the last event.
+	 * @return duration in microseconds
+	 */
+	public long getDuration(){
+		return duration;
+	}
+	
+	/**
+	 * Gets the size of the encoded event log.
+	 * @return size in bytes
+	 */
+	public int getLogSize(){
+		return length;
+	}
+	
+	byte[] getEvents(){
+		return events;
+	}
+	int getLength(){
+		return length;
+	}
+	
+	/**
+	 * Writes the replay to the OutputStream.
+	 * @param os stream to write to
+	 * @throws IOException if the replay could not be written
+	 */
+	public void write(OutputStream os) throws IOException {
+		DataOutputStream out = new DataOutputStream(os);
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeInt(options.getSizeX());
+		out.writeInt(options.getSizeY());
+		out.writeUTF(options.getAlgorithm().name());
+		out.writeLong(options.getSeed());
+		out.writeInt(options.getStart().getX());
+		out.writeInt(options.getStart().getY());
+		out.writeInt(options.getGoal().getX());
+		out.writeInt(options.getGoal().getY());
+		out.writeUTF(options.getSelection().name());
+		out.writeDouble(options.getNewestRatio());
+		out.writeInt(starts.length);
+		for(int i = 0; i < starts.length; i++){
+			out.writeInt(starts[i].getX());
+			out.writeInt(starts[i].getY());
+			out.writeInt(colors[i]);
+		}
+		out.writeInt(eventCount);
+		out.writeLong(duration);
+		out.writeInt(length);
+		out.write(events, 0, length);
+		out.flush();
+	}
+	
+	/**
+	 * Reads a replay written by write().
+	 * @param is stream to read from
+	 * @return the Replay
+	 * @throws IOException if the stream does not hold a replay
+	 */
+	public static Replay read(InputStream is) throws IOException {
+		DataInputStream in = new DataInputStream(is);
+		if(in.readInt() != MAGIC) throw new IOException("Not a maze replay");
+		int version = in.readByte();
+		if(version < 1 || version > VERSION) throw new IOException("Unsupported replay version " + version);
+		
+		MazeOptions o = new MazeOptions(in.readInt(), in.readInt());
+		o.setAlgorithm(Algorithm.valueOf(in.readUTF()));
+		o.setSeed(in.readLong());
+		o.setStart(new Point(in.readInt(), in.readInt()));
+		o.setGoal(new Point(in.readInt(), in.readInt()));
+		if(version >= 2){
+			o.setSelection(Selection.valueOf(in.readUTF()));
+			o.setNewestRatio(in.readDouble());
+		}
+		int players = in.readInt();
+		Point[] s = new Point[players];
+		int[] c = new int[players];
+		for(int i = 0; i < players; i++){
+			s[i] = new Point(in.readInt(), in.readInt());
+			c[i] = in.readInt();
+		}
+		int count = in.readInt();
+		long micros = in.readLong();
+		byte[] e = new byte[in.readInt()];
+		in.readFully(e);
+		return new Replay(o, s, c, e, e.length, count, micros);
+	}
+}
@@ -0,0 +1,244 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.io;
+
+import java.awt.Color;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import mazegame.Direction;
+import mazegame.Maze;
+import mazegame.player.Player;
+
+/**
+ * Plays a Replay back onto Players. The events can be applied one at a time
+ * to step through a race, by time to watch it at any speed, or all at once to
+ * analyze it. Decoding an event does not create any objects, so a replay can
+ * be played back as fast as Player.move() allows.
+ * @author Jeffery Thompson
+ */
+public class ReplayPlayback {
+	private static final Direction[] DIRECTIONS = Direction.values();
+	
+	private final Replay replay;
+	private final List<Player> players;
+	private final byte[] events;
+	private final int length;
+	private final long[] finishTimes;
+	
+	private int pos = 0;
+	private int eventIndex = 0;
+	private long time = 0;
+	private long nextTime = -1;
+	private long nextHeader;
+	
+	/**
+	 * Creates a playback of the Replay onto new Players in the Maze m, which
+	 * should have been made with replay.createMaze().
+	 * @param r Replay to play
+	 * @param m Maze to play in
+	 */
+	public ReplayPlayback(Replay r, Maze m){
+		replay = r;
+		players = new ArrayList();
+		for(int i = 0; i < r.getPlayerCount(); i++)
+			players.add(new Player(m, new Color(r.getColor(i)), r.getStart(i)));
+		events = r.getEvents();
+		length = r.getLength();
+		finishTimes = new long[players.size()];
+		Arrays.fill(finishTimes, -1);
+		peek();
+	}
+	
+	public Replay getReplay(){
+		return replay;
+	}
+	
+	/**
+	 * Gets the Players the replay is played onto, in the order they were
+	 * recorded.
+	 * @return Players of the replay
+	 */
+	public List<Player> getPlayers(){
+		return players;
+	}
+	
+	/**
+	 * Gets the time of the playback since the start of the replay.
+	 * @return time in microseconds
+	 */
+	public long getTime(){
+		return time;
+	}
+	
+	/**
+	 * Gets the number of events that have been applied.
+	 * @return number of events played
+	 */
+	public int getEventIndex(){
+		return eventIndex;
+	}
+	
+	public boolean isFinished(){
+		return nextTime < 0;
+	}
+	
+	/**
+	 * Gets when a Player reached the goal in the replay. This is the time of
+	 * the recording, not of the playback, so it does not depend on the speed
+	 * the replay is played at.
+	 * @param player index of the Player
+	 * @return time in microseconds, or -1 if the Player has not finished
+	 */
+	public long getFinishTime(int player){
+		return finishTimes[player];
+	}
+	
+	/**
+	 * Applies the next event, moving the playback time up to it.
+	 * @return true if an event was applied, false at the end of the replay
+	 */
+	public boolean step(){
+		if(nextTime < 0) return false;
+		time = nextTime;
+		apply();
+		return true;
+	}
+	
+	/**
+	 * Moves the playback time forward, applying every event up to the new
+	 * time.
+	 * @param micros microseconds to move forward
+	 * @return number of events applied
+	 */
+	public int advance(long micros){
+		long target = time + micros;
+		int applied = 0;
+		while(nextTime >= 0 && nextTime <= target){
+			apply();
+			applied++;
+		}
+		time = target;
+		return applied;
+	}
+	
+	/**
+	 * Applies every remaining event.
+	 * @return number of events applied
+	 */
+	public int playToEnd(){
+		int applied = 0;
+		while(nextTime >= 0){
+			time = nextTime;
+			apply();
+			applied++;
+		}
+		return applied;
+	}
+	
+	private void apply(){
+		int dir = (int)(nextHeader & 3);
+		int who = (int)readVarint();
+		if((who & 1) != 0){
+			for(Player p : players) p.restart();
+			Arrays.fill(finishTimes, -1);
+		}
+		else {
+			Player p = players.get(who >> 1);
+			if(p.move(DIRECTIONS[dir]) && !p.hasFinished() && p.checkWin())
+				finishTimes[who >> 1] = nextTime;
+		}
+		eventIndex++;
+		peek();
+	}
+	
+	/**
+	 * Reads the time and Direction of the next event.
+	 */
+	private void peek(){
+		if(pos >= length){
+			nextTime = -1;
+			return;
+		}
+		long base = nextTime < 0 ? 0 : nextTime;
+		nextHeader = readVarint();
+		nextTime = base + (nextHeader >>> 2);
+	}
+	
+	private long readVarint(){
+		long v = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = events[pos++];
+			v |= (long)(b & 0x7F) << shift;
+			shift += 7;
+		} while(b < 0);
+		return v;
+	}
+	
+	/**
+	 * Plays a replay file as fast as possible and prints how it went.
+	 * 
+	 * Usage: replay file [repeat]
+	 * @param args command line arguments
+	 * @throws IOException if the replay could not be read
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1){
+			System.err.println("Usage: replay file [repeat]");
+			System.exit(1);
+		}
+		System.setProperty("java.awt.headless", "true");
+		Replay r;
+		try(InputStream in = new FileInputStream(args[0])){
+			r = Replay.read(in);
+		}
+		int repeat = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+		
+		Maze m = r.createMaze();
+		ReplayPlayback playback = null;
+		long start = System.nanoTime();
+		for(int i = 0; i < repeat; i++){
+			playback = new ReplayPlayback(r, m);
+			playback.playToEnd();
+		}
+		double seconds = (System.nanoTime() - start)/1e9;
+		
+		System.out.println(m.getOptions().getSizeX() + "x" + m.getOptions().getSizeY()
+				+ " " + m.getOptions().getAlgorithm() + ", seed " + m.getOptions().getSeed());
+		System.out.println(r.getEventCount() + " events in " + r.getLogSize() + " bytes, "
+				+ r.getDuration()/1000 + " ms recorded");
+		for(int i = 0; i < r.getPlayerCount(); i++){
+			long t = playback.getFinishTime(i);
+			System.out.println("Player " + (i+1) + ": "
+					+ (t < 0 ? "did not finish" : String.format("%.3f s", t/1e6)));
+		}
+		System.out.println(String.format("Played %d times in %.3f s, %.0f events/s",
+				repeat, seconds, (double)r.getEventCount()*repeat/seconds));
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.io;
+
+import java.util.Arrays;
+import java.util.List;
+import mazegame.Direction;
+import mazegame.Maze;
+import mazegame.Point;
+import mazegame.player.Player;
+
+/**
+ * Records a race into a Replay. Recording a move only appends a few bytes to
+ * an array, so it can be done right where the move is applied without
+ * slowing it down. The recorder is meant to be used from the one thread that
+ * applies moves, but toReplay() may be called from any thread.
+ * @author Jeffery Thompson
+ */
+public class ReplayRecorder {
+	private final Maze maze;
+	private final Point[] starts;
+	private final int[] colors;
+	
+	private byte[] events = new byte[4096];
+	private int length = 0;
+	private int eventCount = 0;
+	private final long startTime;
+	private long lastTime;
+	
+	/**
+	 * Starts recording a race between the given Players. Players are
+	 * referred to by their index in the List.
+	 * @param m Maze of the race
+	 * @param players Players in the race
+	 */
+	public ReplayRecorder(Maze m, List<Player> players){
+		maze = m;
+		starts = new Point[players.size()];
+		colors = new int[players.size()];
+		for(int i = 0; i < starts.length; i++){
+			starts[i] = players.get(i).getStart();
+			colors[i] = players.get(i).getColor().getRGB();
+		}
+		startTime = lastTime = System.nanoTime();
+	}
+	
+	public Maze getMaze(){
+		return maze;
+	}
+	
+	/**
+	 * Records a successful move.
+	 * @param player index of the Player
+	 * @param dir Direction moved
+	 */
+	public synchronized void recordMove(int player, Direction dir){
+		record(player << 1, dir.ordinal());
+	}
+	
+	/**
+	 * Records all the Players being returned to their starts.
+	 */
+	public synchronized void recordRestart(){
+		record(1, 0);
+	}
+	
+	private void record(int who, int dir){
+		long now = System.nanoTime();
+		long delta = (now - lastTime)/1000;
+		//keep the rounding error from adding up over many events
+		lastTime += delta*1000;
+		if(length + 15 > events.length) events = Arrays.copyOf(events, events.length*2);
+		length = writeVarint(events, length, delta << 2 | dir);
+		length = writeVarint(events, length, who);
+		eventCount++;
+	}
+	
+	/**
+	 * Gets everything recorded so far as a Replay. Recording may continue
+	 * afterwards.
+	 * @return the Replay
+	 */
+	public synchronized Replay toReplay(){
+		return new Replay(maze.getOptions(), starts.clone(), colors.clone(),
+				Arrays.copyOf(events, length), length, eventCount, (lastTime - startTime)/1000);
+	}
+	
+	static int writeVarint(byte[] b, int pos, long v){
+		while((v & ~0x7FL) != 0){
+			b[pos++] = (byte)((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		b[pos++] = (byte)v;
+		return pos;
+	}
+}
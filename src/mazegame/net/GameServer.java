@@ -0,0 +1,400 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.net;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import mazegame.Direction;
+import mazegame.Maze;
+import mazegame.MazeOptions;
+import mazegame.Point;
+import mazegame.player.Player;
+import mazegame.player.PlayerList;
+
+/**
+ * A headless server that hosts a Maze and the Players in it. The server is
+ * authoritative: clients only send the moves they want to make, and the
+ * server applies them with Player.move(), so a client cannot move through a
+ * wall. Every tick the server sends each client a delta from the last state
+ * it acknowledged, made by a SnapshotEncoder.
+ * 
+ * All clients are handled by one thread on a non-blocking Selector, which
+ * also owns the Players, so nothing is shared between threads and a slow
+ * client never holds up the others. The Players are kept in a PlayerList of
+ * the server's own, so a server run in the same process as a game or
+ * another server shares no Players with it. A client whose unsent output grows past
+ * MAX_PENDING is skipped for state updates until it catches up.
+ * @author Jeffery Thompson
+ */
+public class GameServer implements Runnable {
+	public static final int DEFAULT_TICK_RATE = 20;
+	/**
+	 * Most unsent bytes kept for one client before state updates are dropped.
+	 */
+	public static final int MAX_PENDING = 1 << 20;
+	
+	/**
+	 * Longest frame a client may send: the type and the largest payload, an
+	 * ACK's sequence number.
+	 */
+	private static final int MAX_CLIENT_FRAME = 1 + 4;
+	
+	private static final Direction[] DIRECTIONS = Direction.values();
+	private static final Color[] COLORS = {Color.red, Color.blue, Color.green,
+		Color.magenta, Color.orange, Color.cyan, Color.pink, Color.gray};
+	
+	private final Maze maze;
+	private final Selector selector;
+	private final ServerSocketChannel server;
+	private final long tickNanos;
+	private volatile boolean running = false;
+	
+	private final byte[] walls;
+	private final PlayerList players = new PlayerList();
+	private final SnapshotEncoder encoder = new SnapshotEncoder(players);
+	private boolean changed = true;
+	
+	private volatile long moves = 0, rejected = 0, bytesOut = 0;
+	private volatile int clients = 0;
+	
+	/**
+	 * Creates a server for the Maze m, listening on the given port. The
+	 * server does not accept clients until it is run.
+	 * @param m Maze to host
+	 * @param port TCP port, or 0 for any free port
+	 * @param tickRate state updates per second
+	 * @throws IOException if the port could not be opened
+	 */
+	public GameServer(Maze m, int port, int tickRate) throws IOException {
+		maze = m;
+		walls = MazeCodec.encode(m);
+		tickNanos = 1000000000L/tickRate;
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(port));
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+	}
+	
+	public int getPort(){
+		return server.socket().getLocalPort();
+	}
+	public Maze getMaze(){
+		return maze;
+	}
+	
+	public long getMoves(){
+		return moves;
+	}
+	public long getRejectedMoves(){
+		return rejected;
+	}
+	public long getBytesSent(){
+		return bytesOut;
+	}
+	public int getClientCount(){
+		return clients;
+	}
+	
+	/**
+	 * Runs the server on a new daemon thread.
+	 * @return the thread
+	 */
+	public Thread start(){
+		Thread t = new Thread(this, "Game server");
+		t.setDaemon(true);
+		t.start();
+		return t;
+	}
+	
+	/**
+	 * Stops the server and closes every connection.
+	 */
+	public void stop(){
+		running = false;
+		selector.wakeup();
+	}
+	
+	@Override
+	public void run(){
+		running = true;
+		long nextTick = System.nanoTime() + tickNanos;
+		try {
+			while(running){
+				long wait = (nextTick - System.nanoTime())/1000000;
+				if(wait > 0) selector.select(wait);
+				else selector.selectNow();
+				
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while(keys.hasNext()){
+					SelectionKey key = keys.next();
+					keys.remove();
+					try {
+						if(!key.isValid()) continue;
+						if(key.isAcceptable()) accept();
+						else {
+							if(key.isReadable()) read(key);
+							if(key.isValid() && key.isWritable()) write(key);
+						}
+					} catch(IOException | RuntimeException e){
+						close(key);
+					}
+				}
+				
+				long now = System.nanoTime();
+				if(now - nextTick >= 0){
+					if(changed) broadcastState();
+					nextTick += tickNanos;
+					//don't try to catch up on ticks missed while overloaded
+					if(now - nextTick >= 0) nextTick = now + tickNanos;
+				}
+			}
+		} catch(IOException e){
+			e.printStackTrace();
+		} finally {
+			for(SelectionKey key : selector.keys()) close(key);
+			try {
+				selector.close();
+				server.close();
+			} catch(IOException e){}
+		}
+	}
+	
+	private void accept() throws IOException {
+		SocketChannel ch;
+		while((ch = server.accept()) != null){
+			ch.configureBlocking(false);
+			ch.socket().setTcpNoDelay(true);
+			ch.register(selector, SelectionKey.OP_READ, new Connection(ch));
+			clients++;
+		}
+	}
+	
+	private void close(SelectionKey key){
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch(IOException e){}
+		Object a = key.attachment();
+		if(a instanceof Connection){
+			clients--;
+			Connection c = (Connection)a;
+			if(c.player >= 0 && players.remove(c.player) != null){
+				encoder.removePlayer(c.player);
+				changed = true;
+			}
+		}
+	}
+	
+	private void read(SelectionKey key) throws IOException {
+		Connection c = (Connection)key.attachment();
+		if(c.channel.read(c.in) < 0){
+			close(key);
+			return;
+		}
+		c.in.flip();
+		int length;
+		while((length = Protocol.frameLength(c.in)) >= 0){
+			int end = c.in.position() + 4 + length;
+			c.in.position(c.in.position() + 4);
+			handle(c, c.in.get(), length);
+			c.in.position(end);
+		}
+		//a frame longer than any client message, or one that can never fit
+		//in the buffer, would leave the socket readable forever with nothing
+		//to read into, so the connection is closed as soon as it is seen
+		if(c.in.remaining() >= 4 && c.in.getInt(c.in.position()) > MAX_CLIENT_FRAME)
+			throw new IllegalStateException("Bad length " + c.in.getInt(c.in.position()));
+		if(c.in.remaining() == c.in.capacity())
+			throw new IllegalStateException("Frame does not fit in the buffer");
+		c.in.compact();
+		if(c.out.position() > 0) write(key);
+	}
+	
+	private void handle(Connection c, byte type, int length){
+		//frames must hold exactly their payload, so a short one can't read
+		//into the next frame and a long one can't hide bytes
+		if(length != 1 + payloadLength(type))
+			throw new IllegalStateException("Bad length " + length + " for message " + type);
+		switch(type){
+			case Protocol.JOIN:
+				if(c.player >= 0) break;
+				Player p = new Player(maze, COLORS[clients % COLORS.length]);
+				c.player = players.add(p);
+				c.out = Protocol.ensure(c.out, 64 + walls.length);
+				int start = Protocol.beginFrame(c.out, Protocol.WELCOME);
+				c.out.putInt(c.player);
+				Protocol.putOptions(c.out, maze.getOptions());
+				c.out.putInt(walls.length);
+				c.out.put(walls);
+				Protocol.endFrame(c.out, start);
+				changed = true;
+				break;
+			case Protocol.MOVE:
+				int dir = c.in.get() & 3;
+				Player player = c.player >= 0 ? players.get(c.player) : null;
+				if(player != null && player.move(DIRECTIONS[dir])){
+					encoder.recordMove(c.player, DIRECTIONS[dir]);
+					moves++;
+					changed = true;
+					if(player.checkWin()) broadcastWin(c.player);
+				}
+				else rejected++;
+				break;
+			case Protocol.ACK:
+				c.acked = Math.max(c.acked, c.in.getInt());
+				break;
+			default:
+				throw new IllegalStateException("Unknown message " + type);
+		}
+	}
+	
+	private static int payloadLength(byte type){
+		switch(type){
+			case Protocol.JOIN:
+				return 0;
+			case Protocol.MOVE:
+				return 1;
+			case Protocol.ACK:
+				return 4;
+			default:
+				throw new IllegalStateException("Unknown message " + type);
+		}
+	}
+	
+	private void write(SelectionKey key) throws IOException {
+		Connection c = (Connection)key.attachment();
+		c.out.flip();
+		bytesOut += c.channel.write(c.out);
+		c.out.compact();
+		key.interestOps(c.out.position() > 0
+				? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+	}
+	
+	/**
+	 * Takes a snapshot and sends every client a delta from the last snapshot
+	 * it acknowledged.
+	 */
+	private void broadcastState(){
+		changed = false;
+		int seq = encoder.takeSnapshot();
+		for(SelectionKey key : selector.keys()){
+			if(!(key.attachment() instanceof Connection) || !key.isValid()) continue;
+			Connection c = (Connection)key.attachment();
+			if(c.player < 0 || c.acked == seq) continue;
+			send(key, encoder.encode(c.acked), true);
+		}
+	}
+	
+	private void broadcastWin(int player){
+		ByteBuffer b = ByteBuffer.allocate(9);
+		int start = Protocol.beginFrame(b, Protocol.WON);
+		b.putInt(player);
+		Protocol.endFrame(b, start);
+		b.flip();
+		send(b, false);
+	}
+	
+	/**
+	 * Queues a frame for every client.
+	 * @param b frame in read mode
+	 * @param droppable true if slow clients may skip it
+	 */
+	private void send(ByteBuffer b, boolean droppable){
+		for(SelectionKey key : selector.keys()){
+			if(!(key.attachment() instanceof Connection) || !key.isValid()) continue;
+			if(((Connection)key.attachment()).player < 0) continue;
+			send(key, b.duplicate(), droppable);
+		}
+	}
+	
+	/**
+	 * Queues a frame for one client and writes as much as its socket will
+	 * take right away.
+	 */
+	private void send(SelectionKey key, ByteBuffer b, boolean droppable){
+		Connection c = (Connection)key.attachment();
+		if(droppable && c.out.position() + b.remaining() > MAX_PENDING) return;
+		c.out = Protocol.ensure(c.out, b.remaining());
+		c.out.put(b);
+		try {
+			write(key);
+		} catch(IOException e){
+			close(key);
+		}
+	}
+	
+	private static class Connection {
+		final SocketChannel channel;
+		final ByteBuffer in = ByteBuffer.allocate(1024);
+		ByteBuffer out = ByteBuffer.allocate(1024);
+		int player = -1;
+		int acked = -1;
+		
+		Connection(SocketChannel ch){
+			channel = ch;
+		}
+	}
+	
+	/**
+	 * Hosts a maze until the process is killed, printing statistics every few
+	 * seconds.
+	 * 
+	 * Usage: server [port] [sizeX sizeY] [algorithm]
+	 * @param args command line arguments
+	 * @throws Exception if the server could not be started
+	 */
+	public static void main(String[] args) throws Exception {
+		System.setProperty("java.awt.headless", "true");
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : Protocol.DEFAULT_PORT;
+		int sizeX = args.length > 2 ? Integer.parseInt(args[1]) : 21;
+		int sizeY = args.length > 2 ? Integer.parseInt(args[2]) : 21;
+		MazeOptions o = new MazeOptions(sizeX, sizeY);
+		if(args.length > 3) o.parseAlgorithm(args[3]);
+		o.setGoal(new Point(sizeX/2, sizeY/2));
+		Maze m = new Maze(o);
+		
+		GameServer s = new GameServer(m, port, DEFAULT_TICK_RATE);
+		System.out.println("Hosting " + sizeX + "x" + sizeY + " " + o.getAlgorithm()
+				+ " maze on port " + s.getPort());
+		s.start();
+		long lastMoves = 0;
+		while(true){
+			Thread.sleep(5000);
+			long moves = s.getMoves();
+			System.out.println(s.getClientCount() + " clients, "
+					+ (moves - lastMoves)/5 + " moves/s, "
+					+ s.getRejectedMoves() + " rejected, "
+					+ s.getBytesSent()/1024 + " KB sent");
+			lastMoves = moves;
+		}
+	}
+}
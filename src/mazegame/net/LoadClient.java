@@ -0,0 +1,273 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import mazegame.Maze;
+import mazegame.MazeOptions;
+import mazegame.Point;
+
+/**
+ * Connects many clients to a GameServer and makes random moves with all of
+ * them, to find out how many players a server can take. Every client is a
+ * real TCP connection, but they all share one thread and one Selector, so
+ * thousands of them can be run from one process. The clients acknowledge
+ * every STATE without applying it, except the first, which keeps a
+ * RemoteGame to check that the deltas add up.
+ * @author Jeffery Thompson
+ */
+public class LoadClient {
+	private final InetSocketAddress address;
+	private final int clientCount;
+	private final double movesPerSecond;
+	private final Random random;
+	
+	private long movesSent = 0, framesReceived = 0, statesReceived = 0,
+			winsReceived = 0, bytesReceived = 0;
+	private long welcomeNanos = 0;
+	private int welcomed = 0;
+	private double seconds = 0;
+	
+	private Client first;
+	private RemoteGame game;
+	
+	/**
+	 * Creates a load test against the server at the given address.
+	 * @param a address of the server
+	 * @param clients number of clients to connect
+	 * @param rate moves per second made by each client
+	 * @param seed seed for the random moves
+	 */
+	public LoadClient(InetSocketAddress a, int clients, double rate, long seed){
+		address = a;
+		clientCount = clients;
+		movesPerSecond = rate;
+		random = new Random(seed);
+	}
+	
+	/**
+	 * Connects the clients, makes moves for the given time, then disconnects.
+	 * Only the time after every client has connected is counted.
+	 * @param millis how long to make moves for
+	 * @throws IOException if a client could not connect
+	 */
+	public void run(long millis) throws IOException {
+		Selector selector = Selector.open();
+		List<Client> clients = new ArrayList();
+		try {
+			for(int i = 0; i < clientCount; i++){
+				SocketChannel ch = SocketChannel.open(address);
+				ch.configureBlocking(false);
+				ch.socket().setTcpNoDelay(true);
+				Client c = new Client(ch);
+				c.key = ch.register(selector, SelectionKey.OP_READ, c);
+				if(first == null) first = c;
+				clients.add(c);
+			}
+			
+			long start = System.nanoTime(), last = start;
+			for(Client c : clients){
+				int f = Protocol.beginFrame(c.out, Protocol.JOIN);
+				Protocol.endFrame(c.out, f);
+				c.joinTime = System.nanoTime();
+				flush(c);
+			}
+			long end = start + millis*1000000;
+			while(System.nanoTime() - end < 0){
+				selector.select(5);
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while(keys.hasNext()){
+					SelectionKey key = keys.next();
+					keys.remove();
+					Client c = (Client)key.attachment();
+					if(key.isValid() && key.isReadable()) read(c);
+					if(key.isValid() && key.isWritable()) flush(c);
+				}
+				
+				long now = System.nanoTime();
+				double credit = movesPerSecond*(now - last)/1e9;
+				last = now;
+				for(Client c : clients){
+					if(!c.joined) continue;
+					c.credit += credit;
+					while(c.credit >= 1 && c.out.remaining() >= 6){
+						int f = Protocol.beginFrame(c.out, Protocol.MOVE);
+						c.out.put((byte)random.nextInt(4));
+						Protocol.endFrame(c.out, f);
+						c.credit--;
+						movesSent++;
+					}
+					flush(c);
+				}
+			}
+			seconds = (System.nanoTime() - start)/1e9;
+		} finally {
+			for(Client c : clients) c.channel.close();
+			selector.close();
+		}
+	}
+	
+	private void read(Client c) throws IOException {
+		int n = c.channel.read(c.in);
+		if(n < 0){
+			c.key.cancel();
+			return;
+		}
+		bytesReceived += n;
+		c.in.flip();
+		int length;
+		while((length = Protocol.frameLength(c.in)) >= 0){
+			int end = c.in.position() + 4 + length;
+			c.in.position(c.in.position() + 4);
+			byte type = c.in.get();
+			framesReceived++;
+			switch(type){
+				case Protocol.WELCOME:
+					welcomeNanos += System.nanoTime() - c.joinTime;
+					welcomed++;
+					if(c == first) game = new RemoteGame(c.in);
+					c.joined = true;
+					break;
+				case Protocol.STATE:
+					statesReceived++;
+					int seq = c == first && game != null ? game.apply(c.in) : c.in.getInt();
+					c.out = Protocol.ensure(c.out, 9);
+					int f = Protocol.beginFrame(c.out, Protocol.ACK);
+					c.out.putInt(seq);
+					Protocol.endFrame(c.out, f);
+					break;
+				case Protocol.WON:
+					winsReceived++;
+					break;
+			}
+			c.in.position(end);
+		}
+		c.in.compact();
+		if(!c.in.hasRemaining()){
+			//grow to fit a large frame
+			ByteBuffer bigger = ByteBuffer.allocate(c.in.capacity()*2);
+			c.in.flip();
+			bigger.put(c.in);
+			c.in = bigger;
+		}
+	}
+	
+	private void flush(Client c) throws IOException {
+		if(c.out.position() == 0 || !c.key.isValid()) return;
+		c.out.flip();
+		c.channel.write(c.out);
+		c.out.compact();
+		c.key.interestOps(c.out.position() > 0
+				? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+	}
+	
+	/**
+	 * Gets the first client's copy of the game.
+	 * @return the RemoteGame, or null if the first client was not welcomed
+	 */
+	public RemoteGame getGame(){
+		return game;
+	}
+	
+	/**
+	 * Prints what happened in the test.
+	 */
+	public void report(){
+		System.out.println(welcomed + " of " + clientCount + " clients joined, "
+				+ String.format("%.2f", welcomed == 0 ? 0 : welcomeNanos/1e6/welcomed)
+				+ " ms average join time");
+		System.out.println(movesSent + " moves sent, "
+				+ String.format("%.0f", movesSent/seconds) + " moves/s");
+		System.out.println(framesReceived + " frames received (" + statesReceived
+				+ " state, " + winsReceived + " won), "
+				+ String.format("%.2f", bytesReceived/seconds/(1 << 20)) + " MB/s");
+	}
+	
+	private static class Client {
+		final SocketChannel channel;
+		SelectionKey key;
+		ByteBuffer in = ByteBuffer.allocate(8192);
+		ByteBuffer out = ByteBuffer.allocate(1024);
+		boolean joined = false;
+		long joinTime;
+		double credit = 0;
+		
+		Client(SocketChannel ch){
+			channel = ch;
+		}
+	}
+	
+	/**
+	 * Runs a load test. If no host is given, a server is started in this
+	 * process and the test runs over loopback.
+	 * 
+	 * Usage: netload clients seconds [movesPerSecond] [host:port]
+	 * @param args command line arguments
+	 * @throws Exception if the test could not be run
+	 */
+	public static void main(String[] args) throws Exception {
+		if(args.length < 2){
+			System.err.println("Usage: netload clients seconds [movesPerSecond] [host:port]");
+			System.exit(1);
+		}
+		System.setProperty("java.awt.headless", "true");
+		int clients = Integer.parseInt(args[0]);
+		double seconds = Double.parseDouble(args[1]);
+		double rate = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+		
+		GameServer server = null;
+		InetSocketAddress address;
+		if(args.length > 3){
+			String[] hostPort = args[3].split(":");
+			address = new InetSocketAddress(hostPort[0], hostPort.length > 1
+					? Integer.parseInt(hostPort[1]) : Protocol.DEFAULT_PORT);
+		}
+		else {
+			MazeOptions o = new MazeOptions(101, 101);
+			o.setGoal(new Point(50, 50));
+			server = new GameServer(new Maze(o), 0, GameServer.DEFAULT_TICK_RATE);
+			server.start();
+			address = new InetSocketAddress("localhost", server.getPort());
+		}
+		
+		LoadClient load = new LoadClient(address, clients, rate, 0);
+		load.run((long)(seconds*1000));
+		load.report();
+		if(server != null){
+			System.out.println("Server applied " + server.getMoves() + " moves, rejected "
+					+ server.getRejectedMoves() + ", sent "
+					+ server.getBytesSent()/1024 + " KB");
+			server.stop();
+		}
+	}
+}
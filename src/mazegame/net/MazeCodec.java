@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.net;
+
+import mazegame.Direction;
+import mazegame.Maze;
+import mazegame.Maze.Cell;
+import mazegame.MazeOptions;
+
+/**
+ * Encodes the walls of a Maze in two bits per Cell. Every wall is shared by
+ * two Cells, so only the east and south walls of each Cell are stored; the
+ * north and west walls come from the Cells above and to the left, and the
+ * outside walls are always there. Cells are stored column by column, the
+ * same order as Maze.paint().
+ * @author Jeffery Thompson
+ */
+public final class MazeCodec {
+	private static final int EAST = 1, SOUTH = 2;
+	
+	private MazeCodec(){}
+	
+	/**
+	 * Gets the size of an encoded maze.
+	 * @param o MazeOptions of the maze
+	 * @return size in bytes
+	 */
+	public static int encodedSize(MazeOptions o){
+		return (int)(((long)o.getSizeX()*o.getSizeY()*2 + 7)/8);
+	}
+	
+	/**
+	 * Encodes the walls of the Maze m.
+	 * @param m Maze to encode
+	 * @return wall bits
+	 */
+	public static byte[] encode(Maze m){
+		int sizeX = m.getOptions().getSizeX(), sizeY = m.getOptions().getSizeY();
+		byte[] b = new byte[encodedSize(m.getOptions())];
+		int bit = 0;
+		for(int x = 0; x < sizeX; x++){
+			for(int y = 0; y < sizeY; y++){
+				Cell c = m.getCell(x, y);
+				int walls = (c.hasWall(Direction.EAST) ? EAST : 0)
+						| (c.hasWall(Direction.SOUTH) ? SOUTH : 0);
+				b[bit >> 3] |= walls << (bit & 7);
+				bit += 2;
+			}
+		}
+		return b;
+	}
+	
+	/**
+	 * Rebuilds a Maze from its MazeOptions and encoded walls.
+	 * @param o MazeOptions of the maze
+	 * @param b wall bits from encode()
+	 * @return the Maze
+	 */
+	public static Maze decode(MazeOptions o, byte[] b){
+		if(b.length < encodedSize(o))
+			throw new IllegalArgumentException("Encoded maze is too short");
+		Maze m = Maze.blank(o);
+		int sizeX = o.getSizeX(), sizeY = o.getSizeY();
+		int bit = 0;
+		for(int x = 0; x < sizeX; x++){
+			for(int y = 0; y < sizeY; y++){
+				int walls = b[bit >> 3] >> (bit & 7);
+				Cell c = m.getCell(x, y);
+				if((walls & EAST) == 0 && x < sizeX-1) c.breakWall(Direction.EAST);
+				if((walls & SOUTH) == 0 && y < sizeY-1) c.breakWall(Direction.SOUTH);
+				bit += 2;
+			}
+		}
+		return m;
+	}
+}
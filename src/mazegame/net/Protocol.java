@@ -0,0 +1,159 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.net;
+
+import java.nio.ByteBuffer;
+import mazegame.MazeOptions;
+import mazegame.MazeOptions.Algorithm;
+import mazegame.MazeOptions.Selection;
+import mazegame.Point;
+
+/**
+ * The messages sent between a GameServer and its clients. Every message is
+ * a frame made of a four byte length followed by that many bytes, the first
+ * of which is the type of the message.
+ * 
+ * Clients send JOIN once, then MOVE with a Direction ordinal for every move
+ * and ACK with the sequence number of every STATE they have applied. The
+ * server answers JOIN with WELCOME, which holds the client's player number,
+ * the MazeOptions of the maze and its walls encoded by MazeCodec. The server
+ * then sends STATE every tick that something changed, and WON when a player
+ * reaches the goal.
+ * 
+ * A STATE is a delta from the last STATE the client acknowledged, made by a
+ * SnapshotEncoder: it only holds the players that joined, left or moved
+ * since then, and the moves they made, so its size depends on how much is
+ * happening rather than on how many players there are. A RemoteGame applies
+ * them on the client.
+ * @author Jeffery Thompson
+ */
+public final class Protocol {
+	public static final int DEFAULT_PORT = 4815;
+	
+	/**
+	 * Largest frame either side will accept.
+	 */
+	public static final int MAX_FRAME = 1 << 24;
+	
+	public static final byte JOIN = 1, MOVE = 2, ACK = 3;
+	public static final byte WELCOME = 10, STATE = 11, WON = 12;
+	
+	private Protocol(){}
+	
+	/**
+	 * Writes the length and type of a frame. The length is filled in by
+	 * endFrame() once the frame is written.
+	 * @param b buffer to write to
+	 * @param type message type
+	 * @return position of the frame, to pass to endFrame()
+	 */
+	public static int beginFrame(ByteBuffer b, byte type){
+		int start = b.position();
+		b.putInt(0);
+		b.put(type);
+		return start;
+	}
+	
+	public static void endFrame(ByteBuffer b, int start){
+		b.putInt(start, b.position() - start - 4);
+	}
+	
+	/**
+	 * Gets the length of the next whole frame in the buffer.
+	 * @param b buffer in read mode
+	 * @return length of the frame after its length field, or -1 if the whole
+	 * frame has not arrived yet
+	 * @throws IllegalStateException if the frame is too large
+	 */
+	public static int frameLength(ByteBuffer b){
+		if(b.remaining() < 4) return -1;
+		int length = b.getInt(b.position());
+		if(length < 1 || length > MAX_FRAME)
+			throw new IllegalStateException("Bad frame length " + length);
+		return b.remaining() - 4 >= length ? length : -1;
+	}
+	
+	public static void putOptions(ByteBuffer b, MazeOptions o){
+		b.putInt(o.getSizeX());
+		b.putInt(o.getSizeY());
+		b.put((byte)o.getAlgorithm().ordinal());
+		b.putLong(o.getSeed());
+		b.putInt(o.getStart().getX());
+		b.putInt(o.getStart().getY());
+		b.putInt(o.getGoal().getX());
+		b.putInt(o.getGoal().getY());
+		b.put((byte)o.getSelection().ordinal());
+		b.putDouble(o.getNewestRatio());
+	}
+	
+	public static MazeOptions getOptions(ByteBuffer b){
+		MazeOptions o = new MazeOptions(b.getInt(), b.getInt());
+		o.setAlgorithm(Algorithm.values()[b.get()]);
+		o.setSeed(b.getLong());
+		o.setStart(new Point(b.getInt(), b.getInt()));
+		o.setGoal(new Point(b.getInt(), b.getInt()));
+		o.setSelection(Selection.values()[b.get()]);
+		o.setNewestRatio(b.getDouble());
+		return o;
+	}
+	
+	/**
+	 * Writes an unsigned variable-length int, seven bits per byte.
+	 * @param b buffer to write to
+	 * @param v value, treated as unsigned
+	 */
+	public static void putVarint(ByteBuffer b, int v){
+		while((v & ~0x7F) != 0){
+			b.put((byte)((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		b.put((byte)v);
+	}
+	
+	public static int getVarint(ByteBuffer b){
+		int v = 0;
+		int shift = 0;
+		byte x;
+		do {
+			x = b.get();
+			v |= (x & 0x7F) << shift;
+			shift += 7;
+		} while(x < 0);
+		return v;
+	}
+	
+	/**
+	 * Makes room for n more bytes, growing the buffer if needed.
+	 * @param b buffer in write mode
+	 * @param n number of bytes needed
+	 * @return b, or a larger copy of it
+	 */
+	public static ByteBuffer ensure(ByteBuffer b, int n){
+		if(b.remaining() >= n) return b;
+		ByteBuffer bigger = ByteBuffer.allocate(Math.max(b.capacity()*2, b.position() + n));
+		b.flip();
+		bigger.put(b);
+		return bigger;
+	}
+}
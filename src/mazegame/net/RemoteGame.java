@@ -0,0 +1,258 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.net;
+
+import java.awt.Color;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import mazegame.Direction;
+import mazegame.Maze;
+import mazegame.Maze.Cell;
+import mazegame.MazeOptions;
+import mazegame.Point;
+import mazegame.player.Player;
+
+/**
+ * A client's copy of a game hosted by a GameServer. The maze is rebuilt from
+ * the WELCOME message, and every STATE is applied to local copies of the
+ * players by replaying their moves, so the copies have the same positions as
+ * the Players on the server.
+ * 
+ * A copy is only a position, a finished flag and a color, so a client can
+ * follow thousands of players in a large maze. Players that are drawn are
+ * passed to show(), which gives them a Player that follows their moves from
+ * then on, with a Path, and can be drawn the same way as on the server.
+ * 
+ * A RemoteGame is not thread-safe; it should be updated and read by one
+ * thread, or handed to others through something like a GameSnapshot.
+ * @author Jeffery Thompson
+ */
+public class RemoteGame {
+	private static final Direction[] DIRECTIONS = Direction.values();
+	private static final int[] DX = {0, 1, 0, -1};
+	private static final int[] DY = {-1, 0, 1, 0};
+	
+	private final Maze maze;
+	private final int playerId;
+	private final Map<Integer, Replica> players = new TreeMap();
+	private int sequence = -1;
+	
+	/**
+	 * Creates a RemoteGame from the body of a WELCOME frame.
+	 * @param b buffer positioned just after the message type
+	 */
+	public RemoteGame(ByteBuffer b){
+		playerId = b.getInt();
+		MazeOptions o = Protocol.getOptions(b);
+		byte[] walls = new byte[b.getInt()];
+		b.get(walls);
+		maze = MazeCodec.decode(o, walls);
+	}
+	
+	public Maze getMaze(){
+		return maze;
+	}
+	
+	/**
+	 * Gets the player number the server gave this client.
+	 * @return player number
+	 */
+	public int getPlayerId(){
+		return playerId;
+	}
+	
+	/**
+	 * Gets the sequence number of the last STATE applied, which is what the
+	 * client should acknowledge.
+	 * @return sequence number, or -1 if no STATE has been applied
+	 */
+	public int getSequence(){
+		return sequence;
+	}
+	
+	/**
+	 * Gets the position of a player.
+	 * @param id player number
+	 * @return Point of the Cell the player is in, or null if there is no
+	 * such player
+	 */
+	public Point getPosition(int id){
+		Replica r = players.get(id);
+		return r == null ? null : maze.getCell(r.x, r.y).getPos();
+	}
+	
+	public boolean hasFinished(int id){
+		Replica r = players.get(id);
+		return r != null && r.finished;
+	}
+	
+	/**
+	 * Gets the Player that follows a player, if it is drawn.
+	 * @param id player number
+	 * @return the Player, or null if the player has none or does not exist
+	 * @see #show(int)
+	 */
+	public Player getPlayer(int id){
+		Replica r = players.get(id);
+		return r == null ? null : r.player;
+	}
+	
+	/**
+	 * Gives a player a Player, so it can be drawn. The Player starts where
+	 * the player is now, and its Path follows the moves applied after this.
+	 * @param id player number
+	 * @return the Player, or null if there is no such player
+	 */
+	public Player show(int id){
+		Replica r = players.get(id);
+		if(r == null) return null;
+		if(r.player == null)
+			r.player = new Player(maze, r.color, maze.getCell(r.x, r.y).getPos());
+		return r.player;
+	}
+	
+	/**
+	 * Gets the numbers of every Player in the game, in order.
+	 * @return player numbers
+	 */
+	public Collection<Integer> getPlayerNumbers(){
+		return players.keySet();
+	}
+	
+	/**
+	 * Applies the body of a STATE frame.
+	 * @param b buffer positioned just after the message type
+	 * @return sequence number of the STATE
+	 * @throws IllegalStateException if the STATE is older than what has
+	 * already been applied or does not fit it
+	 */
+	public int apply(ByteBuffer b){
+		int seq = b.getInt();
+		int baseline = b.getInt();
+		if(seq <= sequence) throw new IllegalStateException("Old state " + seq);
+		if(baseline > sequence) throw new IllegalStateException("Missing state " + baseline);
+		
+		int id = 0;
+		for(int n = b.getInt(); n > 0; n--){
+			id += Protocol.getVarint(b);
+			players.remove(id);
+		}
+		
+		boolean full = baseline < 0;
+		if(full) for(Replica r : players.values()) r.seen = false;
+		id = 0;
+		for(int n = b.getInt(); n > 0; n--){
+			id += Protocol.getVarint(b);
+			int flags = b.get();
+			Replica r = players.get(id);
+			if((flags & SnapshotEncoder.NEW) != 0){
+				int x = Protocol.getVarint(b), y = Protocol.getVarint(b);
+				Color color = new Color(b.getInt());
+				int count = Protocol.getVarint(b);
+				int length = Protocol.getVarint(b);
+				byte[] path = new byte[(length + 3) >> 2];
+				b.get(path);
+				if(r == null){
+					r = new Replica(color);
+					players.put(id, r);
+				}
+				r.reset(x, y, count, path, length);
+			}
+			else {
+				if(r == null) throw new IllegalStateException("Unknown player " + id);
+				int baseMoves = Protocol.getVarint(b);
+				int moves = Protocol.getVarint(b);
+				int skip = r.moves - baseMoves;
+				if(skip < 0) throw new IllegalStateException("Missing moves of player " + id);
+				int packed = 0;
+				for(int i = 0; i < moves; i++){
+					if((i & 3) == 0) packed = b.get();
+					if(i >= skip){
+						r.move((packed >> ((i & 3)*2)) & 3);
+						r.moves++;
+					}
+				}
+			}
+			r.seen = true;
+			if((flags & SnapshotEncoder.FINISHED) != 0 && !r.finished){
+				r.finished = true;
+				if(r.player != null) r.player.checkWin();
+			}
+		}
+		if(full) players.values().removeIf(r -> !r.seen);
+		sequence = seq;
+		return seq;
+	}
+	
+	private class Replica {
+		final Color color;
+		int x, y;
+		boolean finished = false;
+		Player player;
+		int moves = 0;
+		boolean seen;
+		
+		Replica(Color c){
+			color = c;
+		}
+		
+		/**
+		 * Sets the copy to a player's state from a full state. If the copy has
+		 * a Player, it is made again by walking the player's Path from where
+		 * it starts, so its Path matches the one on the server.
+		 * @param path Directions of the Path packed four to a byte
+		 * @param length number of steps in the Path
+		 */
+		void reset(int px, int py, int count, byte[] path, int length){
+			x = px;
+			y = py;
+			moves = count;
+			finished = false;
+			if(player == null) return;
+			int sx = px, sy = py;
+			for(int i = 0; i < length; i++){
+				int d = (path[i >> 2] >> ((i & 3)*2)) & 3;
+				sx -= DX[d];
+				sy -= DY[d];
+			}
+			player = new Player(maze, color, maze.getCell(sx, sy).getPos());
+			for(int i = 0; i < length; i++)
+				player.move(DIRECTIONS[(path[i >> 2] >> ((i & 3)*2)) & 3]);
+		}
+		
+		/**
+		 * Moves the copy in direction d, following the same rules as
+		 * Player.move().
+		 */
+		void move(int d){
+			Cell c = maze.getCell(x, y);
+			if(finished || !c.hasNeighbor(DIRECTIONS[d]) || c.hasWall(DIRECTIONS[d])) return;
+			x += DX[d];
+			y += DY[d];
+			if(player != null) player.move(DIRECTIONS[d]);
+		}
+	}
+}
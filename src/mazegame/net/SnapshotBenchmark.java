@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.net;
+
+import java.awt.Color;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import mazegame.Direction;
+import mazegame.Maze;
+import mazegame.MazeOptions;
+import mazegame.MazeOptions.Algorithm;
+import mazegame.Point;
+import mazegame.player.Player;
+import mazegame.player.PlayerList;
+
+/**
+ * Measures how fast mazes and snapshots are encoded and decoded, and how
+ * large the deltas are compared to full states.
+ * @author Jeffery Thompson
+ */
+public class SnapshotBenchmark {
+	
+	/**
+	 * Runs the benchmark.
+	 * 
+	 * Usage: netbench [players] [movesPerTick] [ticks] [mazeSize]
+	 * @param args command line arguments
+	 */
+	public static void main(String[] args){
+		System.setProperty("java.awt.headless", "true");
+		int players = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int movesPerTick = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int ticks = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+		int size = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+		
+		MazeOptions o = new MazeOptions(size, size);
+		o.setAlgorithm(Algorithm.PRIM);
+		Maze m = new Maze(o);
+		
+		byte[] walls = null;
+		long start = System.nanoTime();
+		for(int i = 0; i < 10; i++) walls = MazeCodec.encode(m);
+		double encodeMs = (System.nanoTime() - start)/1e7;
+		start = System.nanoTime();
+		for(int i = 0; i < 10; i++) MazeCodec.decode(o, walls);
+		double decodeMs = (System.nanoTime() - start)/1e7;
+		System.out.println(String.format("Maze %dx%d: %d bytes, encode %.1f ms, decode %.1f ms",
+				size, size, walls.length, encodeMs, decodeMs));
+		
+		ByteBuffer welcome = ByteBuffer.allocate(64 + walls.length);
+		welcome.putInt(0);
+		Protocol.putOptions(welcome, o);
+		welcome.putInt(walls.length);
+		welcome.put(walls);
+		welcome.flip();
+		RemoteGame game = new RemoteGame(welcome);
+		
+		Random r = new Random(0);
+		PlayerList list = new PlayerList();
+		for(int i = 0; i < players; i++)
+			list.add(new Player(m, Color.red, new Point(r.nextInt(size), r.nextInt(size))));
+		List<Integer> ids = list.getPlayerNumbers();
+		Direction[] dirs = Direction.values();
+		
+		SnapshotEncoder encoder = new SnapshotEncoder(list);
+		long encodeNanos = 0, decodeNanos = 0, deltaBytes = 0, fullBytes = 0;
+		int acked = -1;
+		for(int t = 0; t < ticks; t++){
+			for(int i = 0; i < movesPerTick; i++){
+				int id = ids.get(r.nextInt(ids.size()));
+				Direction d = dirs[r.nextInt(4)];
+				if(list.get(id).move(d)) encoder.recordMove(id, d);
+			}
+			start = System.nanoTime();
+			encoder.takeSnapshot();
+			ByteBuffer frame = encoder.encode(acked);
+			encodeNanos += System.nanoTime() - start;
+			deltaBytes += frame.remaining();
+			
+			start = System.nanoTime();
+			frame.position(frame.position() + 5);
+			acked = game.apply(frame);
+			decodeNanos += System.nanoTime() - start;
+			
+			if(t % 100 == 0) fullBytes += encoder.encode(-1).remaining();
+		}
+		System.out.println(String.format("%d players, %d moves per tick, %d ticks", players, movesPerTick, ticks));
+		System.out.println(String.format("Delta: %.0f bytes/tick, encode %.1f us, decode %.1f us",
+				(double)deltaBytes/ticks, encodeNanos/1e3/ticks, decodeNanos/1e3/ticks));
+		System.out.println(String.format("Full state: %.0f bytes", fullBytes/Math.ceil(ticks/100.0)));
+	}
+}
@@ -0,0 +1,349 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.net;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import mazegame.Direction;
+import mazegame.Point;
+import mazegame.player.Path;
+import mazegame.player.Player;
+import mazegame.player.PlayerList;
+
+/**
+ * Encodes the state of the Players in a PlayerList as deltas between
+ * numbered snapshots.
+ * 
+ * Instead of positions, the encoder keeps every Player's moves, two bits
+ * each. A snapshot only records how many moves each Player has made, and a
+ * delta from an older snapshot holds, for each Player that changed, how many
+ * moves the client should already have and the moves made since then. The
+ * client replays them with Player.move(), which rebuilds the Player's Path
+ * exactly. A client that is ahead of the snapshot the delta was made from,
+ * because its acknowledgement had not arrived yet, skips the moves it
+ * already has, so deltas can be made from any snapshot it has seen.
+ * 
+ * The last HISTORY snapshots are kept; a client that is further behind, or
+ * new, gets a full state, which is a delta from nothing. Each log only keeps
+ * the moves made since the oldest snapshot in the history, so the logs stay
+ * as small as the deltas that can still be made from them.
+ * 
+ * Players that are new to the client, which is every player in a full
+ * state, are sent as their position, the number of moves made so far and
+ * their Path, which leaves out the steps they backtracked. A full state
+ * grows with the players' paths rather than with how long they have played.
+ * 
+ * A STATE frame holds: the sequence number and the baseline it was made
+ * from (-1 for a full state); the number of players removed and their
+ * numbers; then the number of players changed and, for each, its number
+ * and flags (NEW, FINISHED). A NEW player is followed by its position,
+ * color, number of moves, and the length of its Path and its Directions
+ * packed four to a byte; any other player by the number of moves the
+ * baseline had and the new moves, packed the same way. Player numbers are
+ * sent as differences from the previous one, and all counts and positions
+ * as varints.
+ * @author Jeffery Thompson
+ */
+public class SnapshotEncoder {
+	/**
+	 * Number of old snapshots that deltas can be made from.
+	 */
+	public static final int HISTORY = 64;
+	
+	static final int NEW = 1, FINISHED = 2;
+	
+	private final PlayerList players;
+	private final Snapshot[] history = new Snapshot[HISTORY];
+	private final Map<Integer, MoveLog> logs = new HashMap();
+	private final List<Integer> removed = new ArrayList();
+	private Snapshot current = new Snapshot(-1, 0);
+	private int sequence = 0;
+	
+	/**
+	 * Frames made for the current snapshot, by baseline. Most clients
+	 * acknowledge the same snapshots, so they can share a frame.
+	 */
+	private final Map<Integer, ByteBuffer> frames = new HashMap();
+	
+	/**
+	 * Creates an encoder for the Players in the given list.
+	 * @param l list of the Players to encode
+	 */
+	public SnapshotEncoder(PlayerList l){
+		players = l;
+	}
+	
+	/**
+	 * Records a successful move of a Player.
+	 * @param id player number
+	 * @param dir Direction moved
+	 */
+	public void recordMove(int id, Direction dir){
+		MoveLog log = logs.get(id);
+		if(log == null){
+			log = new MoveLog();
+			logs.put(id, log);
+		}
+		log.add(dir.ordinal());
+	}
+	
+	/**
+	 * Forgets the moves of a Player that has left. The moves are kept until
+	 * the next snapshot, since the current one may still be encoded.
+	 * @param id player number
+	 */
+	public void removePlayer(int id){
+		removed.add(id);
+	}
+	
+	/**
+	 * Gets the sequence number of the latest snapshot.
+	 * @return sequence number, or -1 if no snapshot has been taken
+	 */
+	public int getSequence(){
+		return current.seq;
+	}
+	
+	/**
+	 * Takes a snapshot of the Players in the list.
+	 * @return sequence number of the new snapshot
+	 */
+	public int takeSnapshot(){
+		for(Integer id : removed)
+			if(players.get(id) == null) logs.remove(id);
+		removed.clear();
+		List<Integer> ids = players.getPlayerNumbers();
+		Snapshot s = new Snapshot(sequence++, ids.size());
+		for(Integer id : ids){
+			Player p = players.get(id);
+			if(p == null) continue;
+			MoveLog log = logs.get(id);
+			s.ids[s.size] = id;
+			s.moves[s.size] = log == null ? 0 : log.count;
+			s.finished[s.size] = p.hasFinished();
+			s.size++;
+		}
+		history[s.seq % HISTORY] = s;
+		current = s;
+		frames.clear();
+		
+		//moves before the oldest snapshot can no longer be sent
+		Snapshot oldest = history[(s.seq + 1) % HISTORY];
+		if(oldest != null)
+			for(int i = 0; i < oldest.size; i++){
+				MoveLog log = logs.get(oldest.ids[i]);
+				if(log != null) log.trim(oldest.moves[i]);
+			}
+		return s.seq;
+	}
+	
+	/**
+	 * Gets a STATE frame for the latest snapshot, made from the given
+	 * baseline. A client that already has the latest snapshot does not need
+	 * a frame.
+	 * @param baseline sequence number of the last snapshot the client has
+	 * applied, or -1 if it has none
+	 * @return frame in read mode; the caller should not change it
+	 */
+	public ByteBuffer encode(int baseline){
+		Snapshot base = null;
+		if(baseline >= 0 && baseline < current.seq && current.seq - baseline < HISTORY){
+			base = history[baseline % HISTORY];
+			if(base == null || base.seq != baseline) base = null;
+		}
+		int key = base == null ? -1 : baseline;
+		ByteBuffer frame = frames.get(key);
+		if(frame == null){
+			frame = encode(base, ByteBuffer.allocate(64 + current.size*8));
+			frames.put(key, frame);
+		}
+		return frame.duplicate();
+	}
+	
+	private ByteBuffer encode(Snapshot base, ByteBuffer b){
+		int start = Protocol.beginFrame(b, Protocol.STATE);
+		b.putInt(current.seq);
+		b.putInt(base == null ? -1 : base.seq);
+		
+		//players that have left
+		int countPos = b.position();
+		b.putInt(0);
+		int removed = 0, last = 0;
+		if(base != null){
+			int j = 0;
+			for(int i = 0; i < base.size; i++){
+				int id = base.ids[i];
+				while(j < current.size && current.ids[j] < id) j++;
+				if(j < current.size && current.ids[j] == id) continue;
+				b = Protocol.ensure(b, 5);
+				Protocol.putVarint(b, id - last);
+				last = id;
+				removed++;
+			}
+		}
+		b.putInt(countPos, removed);
+		
+		//players that have joined or changed
+		b = Protocol.ensure(b, 4);
+		countPos = b.position();
+		b.putInt(0);
+		int changed = 0, j = 0;
+		last = 0;
+		for(int i = 0; i < current.size; i++){
+			int id = current.ids[i];
+			int baseMoves = 0;
+			boolean isNew = true;
+			if(base != null){
+				while(j < base.size && base.ids[j] < id) j++;
+				if(j < base.size && base.ids[j] == id){
+					if(base.moves[j] == current.moves[i]
+							&& base.finished[j] == current.finished[i]) continue;
+					baseMoves = base.moves[j];
+					isNew = false;
+				}
+			}
+			Player p = players.get(id);
+			if(isNew && p == null) continue;
+			MoveLog log = logs.get(id);
+			if(isNew){
+				Path path = p.getPath();
+				Point pos;
+				int length, count;
+				byte[] dirs;
+				synchronized(path){
+					pos = p.getPos();
+					length = path.getLength();
+					dirs = path.getPackedDirections();
+					count = log == null ? 0 : log.count;
+				}
+				b = Protocol.ensure(b, 40 + dirs.length);
+				Protocol.putVarint(b, id - last);
+				b.put((byte)(NEW | (current.finished[i] ? FINISHED : 0)));
+				Protocol.putVarint(b, pos.getX());
+				Protocol.putVarint(b, pos.getY());
+				b.putInt(p.getColor().getRGB());
+				Protocol.putVarint(b, count);
+				Protocol.putVarint(b, length);
+				b.put(dirs);
+			}
+			else {
+				int moves = current.moves[i] - baseMoves;
+				b = Protocol.ensure(b, 32 + (moves + 3)/4);
+				Protocol.putVarint(b, id - last);
+				b.put((byte)(current.finished[i] ? FINISHED : 0));
+				Protocol.putVarint(b, baseMoves);
+				Protocol.putVarint(b, moves);
+				if(moves > 0) log.copy(baseMoves, moves, b);
+			}
+			last = id;
+			changed++;
+		}
+		b.putInt(countPos, changed);
+		Protocol.endFrame(b, start);
+		b.flip();
+		return b;
+	}
+	
+	private static class Snapshot {
+		final int seq;
+		final int[] ids;
+		final int[] moves;
+		final boolean[] finished;
+		int size = 0;
+		
+		Snapshot(int s, int capacity){
+			seq = s;
+			ids = new int[capacity];
+			moves = new int[capacity];
+			finished = new boolean[capacity];
+		}
+	}
+	
+	/**
+	 * The moves of one Player, packed four to a byte. count is every move the
+	 * Player has made, but the moves before first have been trimmed off, and
+	 * dirs[0] holds move first. first is always a multiple of four.
+	 */
+	private static class MoveLog {
+		byte[] dirs = new byte[16];
+		int first = 0;
+		int count = 0;
+		
+		void add(int dir){
+			int n = count - first;
+			if(n >> 2 == dirs.length) dirs = Arrays.copyOf(dirs, dirs.length*2);
+			dirs[n >> 2] |= dir << ((n & 3)*2);
+			count++;
+		}
+		
+		int get(int i){
+			i -= first;
+			return (dirs[i >> 2] >> ((i & 3)*2)) & 3;
+		}
+		
+		/**
+		 * Drops the moves before move i, which no delta needs any more. The
+		 * array is only shrunk once at least half of it can go, so trimming
+		 * costs O(1) per move.
+		 */
+		void trim(int i){
+			int drop = ((i - first) >> 2) << 2;
+			if(drop <= 0 || drop >> 2 < dirs.length >> 1) return;
+			int keep = (count - first - drop + 3) >> 2;
+			byte[] d = new byte[Math.max(16, Integer.highestOneBit(Math.max(1, keep))*2)];
+			System.arraycopy(dirs, drop >> 2, d, 0, keep);
+			dirs = d;
+			first += drop;
+		}
+		
+		/**
+		 * Packs n moves starting from move i into the buffer. Move i must not
+		 * have been trimmed.
+		 */
+		void copy(int i, int n, ByteBuffer b){
+			if(i < first) throw new IllegalStateException("Moves " + i + " to " + first + " were trimmed");
+			if(((i - first) & 3) == 0){
+				int bytes = (n + 3) >> 2, at = (i - first) >> 2;
+				b.put(dirs, at, bytes - 1);
+				//the last byte may hold moves past n
+				int rest = n - (bytes - 1)*4;
+				b.put((byte)(dirs[at + bytes - 1] & ((1 << rest*2) - 1)));
+				return;
+			}
+			int packed = 0;
+			for(int k = 0; k < n; k++){
+				packed |= get(i + k) << ((k & 3)*2);
+				if((k & 3) == 3){
+					b.put((byte)packed);
+					packed = 0;
+				}
+			}
+			if((n & 3) != 0) b.put((byte)packed);
+		}
+	}
+}
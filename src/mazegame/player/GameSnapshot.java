@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.player;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import mazegame.Maze;
+import mazegame.Point;
+
+/**
+ * An immutable picture of the game at one moment, published by the GameState
+ * thread after each batch of input. The renderer draws players from the
+ * latest snapshot instead of reading Player objects while they are being
+ * moved, so it always sees every player at the same moment.
+ * @author Jeffery Thompson
+ */
+public class GameSnapshot {
+	private final long sequence;
+	private final Maze maze;
+	private final List<PlayerSnapshot> players;
+	
+	GameSnapshot(long seq, Maze m, List<PlayerSnapshot> p){
+		sequence = seq;
+		maze = m;
+		players = Collections.unmodifiableList(p);
+	}
+	
+	/**
+	 * Takes a snapshot of every Player in the PlayerList.
+	 */
+	static GameSnapshot of(long seq, Maze m){
+		List<PlayerSnapshot> p = new ArrayList();
+		for(Player player : PlayerList.getLocal().getPlayers())
+			p.add(new PlayerSnapshot(player));
+		return new GameSnapshot(seq, m, p);
+	}
+	
+	/**
+	 * Gets the number of this snapshot. Each snapshot published by a GameState
+	 * has a higher number than the one before it.
+	 * @return sequence number
+	 */
+	public long getSequence(){
+		return sequence;
+	}
+	
+	public Maze getMaze(){
+		return maze;
+	}
+	
+	public List<PlayerSnapshot> getPlayers(){
+		return players;
+	}
+	
+	/**
+	 * The state of a single Player in a GameSnapshot.
+	 */
+	public static class PlayerSnapshot {
+		private final Player player;
+		private final Point start;
+		private final Point pos;
+		private final boolean finished;
+		
+		PlayerSnapshot(Player p){
+			player = p;
+			start = p.getStart();
+			pos = p.getPos();
+			finished = p.hasFinished();
+		}
+		
+		/**
+		 * Gets the Player this snapshot was taken of.
+		 * @return Player of the snapshot
+		 */
+		public Player getPlayer(){
+			return player;
+		}
+		public Point getPos(){
+			return pos;
+		}
+		public boolean hasFinished(){
+			return finished;
+		}
+		public Color getColor(){
+			return player.getColor();
+		}
+		
+		/**
+		 * Paints the Player at its position in the snapshot. The Player's
+		 * path is painted as it is now, which may already include moves made
+		 * after the snapshot.
+		 * @param g Graphics2D object to draw onto
+		 */
+		public void paint(Graphics2D g){
+			player.paint(g, start, pos);
+		}
+	}
+}
@@ -0,0 +1,356 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.player;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import mazegame.Direction;
+import mazegame.Maze;
+import mazegame.Point;
+import mazegame.io.Replay;
+import mazegame.io.ReplayPlayback;
+import mazegame.io.ReplayRecorder;
+
+/**
+ * Runs the game on its own thread. Input such as key presses is put into a
+ * lock-free queue by whatever thread receives it, and the game thread takes
+ * everything in the queue as one batch: it moves the players, checks if
+ * anyone has won, and then publishes a GameSnapshot for the renderer. The
+ * thread that receives the input never touches a Player, so it never waits
+ * for the game or the renderer.
+ * 
+ * Listeners are called on the game thread. Anything that needs to run on the
+ * Event Dispatch Thread, like showing a dialog, should be passed on with
+ * SwingUtilities.invokeLater().
+ * 
+ * Every move and restart is recorded, so the race so far can be saved with
+ * getReplay(). A Replay can also be loaded, in which case the PlayerList is
+ * replaced with the recorded Players and input is ignored until a new Maze
+ * is set.
+ * @author Jeffery Thompson
+ */
+public class GameState implements Runnable {
+	/**
+	 * Most commands applied in one batch before a snapshot is published.
+	 */
+	private static final int MAX_BATCH = 1024;
+	
+	private final PlayerList list = PlayerList.getLocal();
+	private final Queue<Command> input = new ConcurrentLinkedQueue();
+	private final List<Listener> listeners = new CopyOnWriteArrayList();
+	private volatile GameSnapshot snapshot;
+	private volatile Thread thread;
+	private volatile boolean running = false;
+	
+	private Maze maze;
+	private long sequence = 0;
+	
+	/**
+	 * Number of commands applied so far, and how long the last check for
+	 * winners took. They are written once per batch, before the listeners
+	 * are called.
+	 */
+	private volatile long applied = 0;
+	private volatile long winCheckNanos = 0;
+	
+	private volatile ReplayRecorder recorder;
+	private final Map<Integer, Integer> recordIndex = new HashMap();
+	private volatile ReplayPlayback playback;
+	
+	/**
+	 * Creates a GameState for the Players in the PlayerList, playing in the
+	 * Maze m.
+	 * @param m Maze being played
+	 */
+	public GameState(Maze m){
+		maze = m;
+		snapshot = GameSnapshot.of(sequence++, m);
+	}
+	
+	/**
+	 * Gets a Replay of everything since the current Maze was set. This can be
+	 * called from any thread.
+	 * @return Replay of the current race, or null while playing a replay
+	 */
+	public Replay getReplay(){
+		ReplayRecorder r = recorder;
+		return r == null ? null : r.toReplay();
+	}
+	
+	/**
+	 * Gets the replay being played.
+	 * @return the ReplayPlayback, or null if no replay is loaded
+	 */
+	public ReplayPlayback getPlayback(){
+		return playback;
+	}
+	
+	public void addListener(Listener l){
+		listeners.add(l);
+	}
+	
+	/**
+	 * Gets the number of commands applied since the GameState was created.
+	 * Commands are applied in the order they were queued, so a Listener can
+	 * use this to tell which of its commands are in the latest snapshot.
+	 * @return number of commands applied
+	 */
+	public long getAppliedCount(){
+		return applied;
+	}
+	
+	/**
+	 * Gets how long the check for winners took after the latest batch.
+	 * @return time in nanoseconds
+	 */
+	public long getWinCheckNanos(){
+		return winCheckNanos;
+	}
+	
+	/**
+	 * Starts the game thread.
+	 */
+	public synchronized void start(){
+		if(running) return;
+		running = true;
+		if(playback == null) startRecording();
+		thread = new Thread(this, "Game state");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Stops the game thread once it has finished its current batch.
+	 */
+	public synchronized void stop(){
+		running = false;
+		if(thread != null) LockSupport.unpark(thread);
+	}
+	
+	/**
+	 * Queues a move of the given Player. Does nothing if there is no such
+	 * Player when the move is applied.
+	 * @param player number of the Player in the PlayerList
+	 * @param dir Direction to move
+	 */
+	public void move(int player, Direction dir){
+		submit(new Command(Command.MOVE, player, dir, null));
+	}
+	/**
+	 * Queues returning all the Players to their starting Cells.
+	 */
+	public void restart(){
+		submit(new Command(Command.RESTART, 0, null, null));
+	}
+	/**
+	 * Queues moving all the Players into a new Maze.
+	 * @param m new Maze
+	 */
+	public void setMaze(Maze m){
+		submit(new Command(Command.SET_MAZE, 0, null, m));
+	}
+	/**
+	 * Queues loading a replay. The PlayerList is replaced with the Players of
+	 * the replay and the Maze with m.
+	 * @param r Replay to load
+	 * @param m Maze made with r.createMaze()
+	 */
+	public void loadReplay(Replay r, Maze m){
+		submit(new Command(Command.LOAD_REPLAY, 0, null, m, r, 0));
+	}
+	/**
+	 * Queues applying the next event of the loaded replay.
+	 */
+	public void stepReplay(){
+		submit(new Command(Command.STEP_REPLAY, 0, null, null, null, 0));
+	}
+	/**
+	 * Queues moving the loaded replay forward in time.
+	 * @param micros microseconds of the replay to play
+	 */
+	public void advanceReplay(long micros){
+		submit(new Command(Command.ADVANCE_REPLAY, 0, null, null, null, micros));
+	}
+	
+	/**
+	 * Gets the latest GameSnapshot. This can be called from any thread.
+	 * @return latest snapshot
+	 */
+	public GameSnapshot getSnapshot(){
+		return snapshot;
+	}
+	
+	private void submit(Command c){
+		input.add(c);
+		Thread t = thread;
+		if(t != null) LockSupport.unpark(t);
+	}
+	
+	@Override
+	public void run(){
+		while(running){
+			Command c = input.poll();
+			if(c == null){
+				LockSupport.park(this);
+				continue;
+			}
+			int applied = 0;
+			do {
+				apply(c);
+				applied++;
+			} while(applied < MAX_BATCH && (c = input.poll()) != null);
+			this.applied += applied;
+			
+			long start = System.nanoTime();
+			checkWins();
+			winCheckNanos = System.nanoTime() - start;
+			
+			snapshot = GameSnapshot.of(sequence++, maze);
+			for(Listener l : listeners) l.stateChanged(snapshot);
+		}
+	}
+	
+	private void apply(Command c){
+		switch(c.type){
+			case Command.MOVE:
+				if(playback != null) break;
+				Player p = list.get(c.player);
+				if(p != null && p.move(c.dir)){
+					Integer index = recordIndex.get(c.player);
+					if(index != null) recorder.recordMove(index, c.dir);
+				}
+				break;
+			case Command.RESTART:
+				if(playback != null) break;
+				for(Player player : list.getPlayers())
+					player.restart();
+				recorder.recordRestart();
+				break;
+			case Command.SET_MAZE:
+				maze = c.maze;
+				list.setMaze(c.maze);
+				playback = null;
+				startRecording();
+				break;
+			case Command.LOAD_REPLAY:
+				maze = c.maze;
+				playback = new ReplayPlayback(c.replay, maze);
+				recorder = null;
+				recordIndex.clear();
+				list.clear();
+				for(Player player : playback.getPlayers())
+					list.add(player);
+				break;
+			case Command.STEP_REPLAY:
+				if(playback != null) playback.step();
+				break;
+			case Command.ADVANCE_REPLAY:
+				if(playback != null) playback.advance(c.micros);
+				break;
+		}
+	}
+	
+	/**
+	 * Checks for Players that have reached the goal. Only the Players in the
+	 * goal Cell are looked at, so this does not depend on how many Players
+	 * there are.
+	 */
+	private void checkWins(){
+		OccupancyIndex o = list.getOccupancy();
+		if(o == null || o.getMaze() != maze){
+			for(Player p : list.getPlayers())
+				if(!p.hasFinished() && p.checkWin())
+					for(Listener l : listeners) l.playerWon(p);
+			return;
+		}
+		Point goal = maze.getOptions().getGoal();
+		o.forEachAt(goal.getX(), goal.getY(), (int id) -> {
+			Player p = o.getPlayer(id);
+			if(!p.hasFinished() && p.checkWin())
+				for(Listener l : listeners) l.playerWon(p);
+		});
+	}
+	
+	/**
+	 * Starts a new recording of the Players in the PlayerList.
+	 */
+	private void startRecording(){
+		List<Player> players = new ArrayList();
+		recordIndex.clear();
+		for(Integer i : list.getPlayerNumbers()){
+			Player p = list.get(i);
+			if(p == null) continue;
+			recordIndex.put(i, players.size());
+			players.add(p);
+		}
+		recorder = new ReplayRecorder(maze, players);
+	}
+	
+	/**
+	 * A listener for changes to the game. Its methods are called on the game
+	 * thread.
+	 */
+	public interface Listener {
+		/**
+		 * Called after each batch of input with the new GameSnapshot.
+		 * @param s new snapshot
+		 */
+		void stateChanged(GameSnapshot s);
+		/**
+		 * Called when a Player reaches the goal.
+		 * @param p Player that won
+		 */
+		void playerWon(Player p);
+	}
+	
+	private static class Command {
+		static final int MOVE = 0, RESTART = 1, SET_MAZE = 2,
+				LOAD_REPLAY = 3, STEP_REPLAY = 4, ADVANCE_REPLAY = 5;
+		
+		final int type;
+		final int player;
+		final Direction dir;
+		final Maze maze;
+		final Replay replay;
+		final long micros;
+		
+		Command(int t, int p, Direction d, Maze m){
+			this(t, p, d, m, null, 0);
+		}
+		Command(int t, int p, Direction d, Maze m, Replay r, long us){
+			type = t;
+			player = p;
+			dir = d;
+			maze = m;
+			replay = r;
+			micros = us;
+		}
+	}
+}
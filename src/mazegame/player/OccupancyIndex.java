@@ -0,0 +1,388 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.player;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import mazegame.Maze;
+import mazegame.MemoryFootprint;
+import mazegame.Point;
+
+/**
+ * A spatial index of where Players are in a Maze. The index keeps a count of
+ * Players in every Cell, and a grid of buckets, each covering a square of
+ * cells, that hold the numbers of the Players inside it. Players update the
+ * index themselves when they move, so asking whether a Cell is occupied or
+ * which Players are near a Cell only looks at the Cells involved, no matter
+ * how many Players there are.
+ * 
+ * The index can also stop Players from moving into occupied Cells. The goal
+ * is never blocked, so every Player can still finish. tryMove() checks the
+ * Cell and moves the Player into it in one step, so two Players moving at
+ * once can never both get in.
+ * 
+ * Changes and queries may be made from any thread. Rather than one lock for
+ * the whole index, the buckets are split between STRIPES locks, and a move
+ * only takes the locks of the buckets it leaves and enters, so Players in
+ * different parts of the maze move without waiting on each other. Callbacks
+ * are run while holding the lock of the bucket being looked at, and should
+ * be quick and not move Players.
+ * @author Jeffery Thompson
+ */
+public class OccupancyIndex {
+	/**
+	 * Log2 of the width of a bucket in cells. Buckets cover 8x8 cells.
+	 */
+	public static final int BUCKET_SHIFT = 3;
+	/**
+	 * Number of locks the buckets are split between. Bucket b is guarded by
+	 * lock b % STRIPES.
+	 */
+	public static final int STRIPES = 64;
+	
+	private final Maze maze;
+	private final int sizeX, sizeY;
+	private final int bucketsY;
+	private final int goal;
+	
+	private final int[] counts;
+	private final int[][] buckets;
+	private final int[] bucketSize;
+	private final Object[] locks = new Object[STRIPES];
+	
+	//an entry of each is guarded by the lock of the Player's bucket
+	private volatile Player[] players = new Player[16];
+	private volatile int[] cells = new int[16];
+	
+	private volatile boolean collisions = false;
+	
+	/**
+	 * Estimates the heap used by the index, not counting the Players.
+	 * @return size in bytes
+	 * @see MemoryFootprint
+	 */
+	public long getFootprint(){
+		long size = MemoryFootprint.shallow(OccupancyIndex.class)
+				+ MemoryFootprint.array(int.class, counts.length)
+				+ MemoryFootprint.array(int[].class, buckets.length)
+				+ MemoryFootprint.array(int.class, bucketSize.length)
+				+ MemoryFootprint.array(Player.class, players.length)
+				+ MemoryFootprint.array(int.class, cells.length)
+				+ MemoryFootprint.array(Object.class, STRIPES)
+				+ STRIPES*MemoryFootprint.shallow(Object.class);
+		for(int[] b : buckets)
+			if(b != null) size += MemoryFootprint.array(int.class, b.length);
+		return size;
+	}
+	
+	/**
+	 * Creates an empty index for the Maze m.
+	 * @param m Maze the Players are in
+	 */
+	public OccupancyIndex(Maze m){
+		maze = m;
+		sizeX = m.getOptions().getSizeX();
+		sizeY = m.getOptions().getSizeY();
+		int bucketsX = (sizeX + (1 << BUCKET_SHIFT) - 1) >> BUCKET_SHIFT;
+		bucketsY = (sizeY + (1 << BUCKET_SHIFT) - 1) >> BUCKET_SHIFT;
+		goal = cell(m.getOptions().getGoal().getX(), m.getOptions().getGoal().getY());
+		counts = new int[sizeX*sizeY];
+		buckets = new int[bucketsX*bucketsY][];
+		bucketSize = new int[bucketsX*bucketsY];
+		for(int i = 0; i < STRIPES; i++) locks[i] = new Object();
+		Arrays.fill(cells, -1);
+	}
+	
+	public Maze getMaze(){
+		return maze;
+	}
+	
+	/**
+	 * Turns collisions on or off. With collisions on, a Player cannot move
+	 * into a Cell that another Player is in, except the goal.
+	 * @param c true to turn collisions on
+	 */
+	public void setCollisions(boolean c){
+		collisions = c;
+	}
+	public boolean hasCollisions(){
+		return collisions;
+	}
+	
+	/**
+	 * Adds a Player to the index at its current position.
+	 * @param id player number
+	 * @param p the Player
+	 */
+	public void add(int id, Player p){
+		Point pos = p.getPos();
+		add(id, cell(pos.getX(), pos.getY()), p);
+	}
+	
+	/**
+	 * Adds a player that has no Player object, such as one in a
+	 * PlayerRegistry, at the given Cell. getPlayer() returns null for it.
+	 * @param id player number
+	 * @param x x coordinate of the Cell
+	 * @param y y coordinate of the Cell
+	 */
+	public void add(int id, int x, int y){
+		add(id, cell(x, y), null);
+	}
+	
+	private synchronized void add(int id, int c, Player p){
+		if(id >= players.length) grow(0, Math.max(players.length*2, id+1));
+		remove(id);
+		synchronized(lock(c)){
+			players[id] = p;
+			insert(id, c);
+		}
+	}
+	
+	/**
+	 * Makes room for player numbers up to n. The entries of the Players are
+	 * guarded by the bucket locks, so every lock is taken, in order, before
+	 * the arrays are replaced.
+	 */
+	private void grow(int stripe, int n){
+		if(stripe < STRIPES){
+			synchronized(locks[stripe]){
+				grow(stripe+1, n);
+			}
+			return;
+		}
+		int old = players.length;
+		players = Arrays.copyOf(players, n);
+		int[] c = Arrays.copyOf(cells, n);
+		Arrays.fill(c, old, n, -1);
+		cells = c;
+	}
+	
+	/**
+	 * Removes a Player from the index.
+	 * @param id player number
+	 */
+	public synchronized void remove(int id){
+		if(id >= players.length) return;
+		for(;;){
+			int from = cells[id];
+			if(from < 0) return;
+			synchronized(lock(from)){
+				if(cells[id] != from) continue;
+				delete(id, from);
+				players[id] = null;
+				cells[id] = -1;
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Moves a Player to a new Cell, whether or not it is occupied. Used to
+	 * put a Player back at the start.
+	 * @param id player number
+	 * @param x x coordinate of the new Cell
+	 * @param y y coordinate of the new Cell
+	 */
+	public void move(int id, int x, int y){
+		relocate(id, cell(x, y), false);
+	}
+	
+	/**
+	 * Moves a Player to a new Cell unless it is blocked under the collision
+	 * rule. The check and the move are made holding the same locks, so no
+	 * other Player can get into the Cell in between. Called by Player and
+	 * PlayerRegistry whenever they move.
+	 * @param id player number
+	 * @param x x coordinate of the new Cell
+	 * @param y y coordinate of the new Cell
+	 * @return false if the Cell is blocked, true if the Player moved into it
+	 * or is not in the index
+	 */
+	public boolean tryMove(int id, int x, int y){
+		return relocate(id, cell(x, y), true);
+	}
+	
+	private boolean relocate(int id, int to, boolean check){
+		if(id >= cells.length) return true;
+		for(;;){
+			int from = cells[id];
+			if(from < 0 || from == to) return true;
+			Object a = lock(from), b = lock(to);
+			//take the two locks in stripe order, so moves cannot deadlock
+			if(stripe(to) < stripe(from)){
+				a = b;
+				b = lock(from);
+			}
+			synchronized(a){
+				synchronized(b){
+					//moved or removed by another thread since it was read
+					if(cells[id] != from) continue;
+					if(check && collisions && to != goal && counts[to] > 0) return false;
+					delete(id, from);
+					insert(id, to);
+					return true;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Gets the number of Players in a Cell. This takes no lock, so from a
+	 * thread other than the one moving the Players it may be slightly out of
+	 * date.
+	 * @param x x coordinate of the Cell
+	 * @param y y coordinate of the Cell
+	 * @return number of Players in the Cell
+	 */
+	public int getCount(int x, int y){
+		return counts[cell(x, y)];
+	}
+	
+	public boolean isOccupied(int x, int y){
+		return counts[cell(x, y)] > 0;
+	}
+	
+	/**
+	 * Checks if a Player may move into a Cell under the collision rule. Like
+	 * getCount(), this takes no lock, so another Player may get into the Cell
+	 * right after; use tryMove() to check and move in one step.
+	 * @param x x coordinate of the Cell
+	 * @param y y coordinate of the Cell
+	 * @return true if collisions are on and another Player is in the Cell
+	 */
+	public boolean isBlocked(int x, int y){
+		int c = cell(x, y);
+		return collisions && c != goal && counts[c] > 0;
+	}
+	
+	/**
+	 * Gets the Player with the given number. This takes no lock; from a
+	 * forEachAt() or forEachWithin() action it always sees the Player, but
+	 * from elsewhere a Player just added by another thread may be missed.
+	 * @param id player number
+	 * @return the Player, or null if it is not in the index or has no Player
+	 */
+	public Player getPlayer(int id){
+		Player[] ps = players;
+		return id < ps.length ? ps[id] : null;
+	}
+	
+	/**
+	 * Calls action with the number of every Player in a Cell.
+	 * @param x x coordinate of the Cell
+	 * @param y y coordinate of the Cell
+	 * @param action called with each player number
+	 */
+	public void forEachAt(int x, int y, IntConsumer action){
+		int c = cell(x, y);
+		int b = bucket(x, y);
+		synchronized(locks[b % STRIPES]){
+			if(counts[c] == 0) return;
+			int[] ids = buckets[b];
+			int[] cs = cells;
+			for(int i = bucketSize[b]-1; i >= 0; i--)
+				if(cs[ids[i]] == c) action.accept(ids[i]);
+		}
+	}
+	
+	/**
+	 * Calls action with the number of every Player within r cells of a Cell,
+	 * measured from cell center to cell center.
+	 * @param x x coordinate of the Cell
+	 * @param y y coordinate of the Cell
+	 * @param r radius in cells
+	 * @param action called with each player number
+	 */
+	public void forEachWithin(int x, int y, int r, IntConsumer action){
+		int x0 = Math.max(0, x - r) >> BUCKET_SHIFT, x1 = Math.min(sizeX-1, x + r) >> BUCKET_SHIFT;
+		int y0 = Math.max(0, y - r) >> BUCKET_SHIFT, y1 = Math.min(sizeY-1, y + r) >> BUCKET_SHIFT;
+		long r2 = (long)r*r;
+		for(int bx = x0; bx <= x1; bx++){
+			for(int by = y0; by <= y1; by++){
+				int b = bx*bucketsY + by;
+				synchronized(locks[b % STRIPES]){
+					int[] ids = buckets[b];
+					int[] cs = cells;
+					for(int i = bucketSize[b]-1; i >= 0; i--){
+						int id = ids[i];
+						int dx = cs[id]/sizeY - x, dy = cs[id]%sizeY - y;
+						if((long)dx*dx + (long)dy*dy <= r2) action.accept(id);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Counts the Players within r cells of a Cell.
+	 * @param x x coordinate of the Cell
+	 * @param y y coordinate of the Cell
+	 * @param r radius in cells
+	 * @return number of Players within the radius
+	 */
+	public int countWithin(int x, int y, int r){
+		int[] n = new int[1];
+		forEachWithin(x, y, r, (int id) -> n[0]++);
+		return n[0];
+	}
+	
+	private void insert(int id, int c){
+		cells[id] = c;
+		counts[c]++;
+		int b = bucket(c/sizeY, c%sizeY);
+		if(buckets[b] == null) buckets[b] = new int[4];
+		else if(bucketSize[b] == buckets[b].length)
+			buckets[b] = Arrays.copyOf(buckets[b], bucketSize[b]*2);
+		buckets[b][bucketSize[b]++] = id;
+	}
+	
+	private void delete(int id, int c){
+		counts[c]--;
+		int b = bucket(c/sizeY, c%sizeY);
+		int[] ids = buckets[b];
+		for(int i = 0; i < bucketSize[b]; i++){
+			if(ids[i] == id){
+				ids[i] = ids[--bucketSize[b]];
+				return;
+			}
+		}
+	}
+	
+	private int cell(int x, int y){
+		return x*sizeY + y;
+	}
+	
+	private int stripe(int c){
+		return bucket(c/sizeY, c%sizeY) % STRIPES;
+	}
+	
+	private Object lock(int c){
+		return locks[stripe(c)];
+	}
+	
+	private int bucket(int x, int y){
+		return (x >> BUCKET_SHIFT)*bucketsY + (y >> BUCKET_SHIFT);
+	}
+}
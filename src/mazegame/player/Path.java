@@ -25,11 +25,12 @@ package mazegame.player;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
-import java.util.HashSet;
-import java.util.Stack;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.EmptyStackException;
 import mazegame.Direction;
 import mazegame.Maze;
-import mazegame.Maze.Cell;
+import mazegame.MemoryFootprint;
 import mazegame.Point;
 
 /**
@@ -38,28 +39,57 @@ import mazegame.Point;
  * an arbitrary path, use the push() method. If tracking a player's path, use
  * the add() method, which checks if the player backtracks and adds it to the
  * backtrack set.
+ * 
+ * The path is stored as the Point it starts at followed by a log of the
+ * Directions taken, two bits per step, so a path of a million steps takes
+ * about 250 KB. Each step must start where the last one ended. Backtracks are
+ * stored as four bits per Cell of the maze: one bit for whether the Cell has
+ * been backtracked from and two for the Direction. Adding a step does not
+ * create any objects. Paths made without a Maze don't know how many Cells
+ * there are, so they don't track backtracks.
+ * 
+ * A Path may be added to by the game thread while it is being painted, so
+ * its methods are synchronized on the Path.
  * @author Jeffery Thompson
  */
 public class Path {
-	private Stack<PathPoint> curPath;
-	private HashSet<PathPoint> backtrack;
+	private static final Direction[] DIRECTIONS = Direction.values();
+	private static final int[] DX = {0, 1, 0, -1};
+	private static final int[] DY = {-1, 0, 1, 0};
+	private static final int BACKTRACKED = 4;
+	
+	private long[] log = new long[4];
+	private int length = 0;
+	private int startX, startY;
+	private int headX, headY;
+	
+	private final int sizeX, sizeY;
+	private final long[] backtrack;
+	private int backtrackCount = 0;
 	
 	private Color pathColor;
 	private Color backtrackColor;
 	
-	private int pathWidth = (Maze.CELL_SIZE-1)/4;
+	private PathLayer layer;
 	
 	public Path(){
-		curPath = new Stack();
-		backtrack = new HashSet();
+		sizeX = sizeY = 0;
+		backtrack = null;
 		
 		pathColor = Color.black;
 		backtrackColor = Color.black;
 	}
 	
-	public Path(Color pc, Color btc){
-		curPath = new Stack();
-		backtrack = new HashSet();
+	/**
+	 * Creates a Path for a Player in the Maze m.
+	 * @param m Maze the path is in
+	 * @param pc color of the path
+	 * @param btc color of backtracked paths
+	 */
+	public Path(Maze m, Color pc, Color btc){
+		sizeX = m.getOptions().getSizeX();
+		sizeY = m.getOptions().getSizeY();
+		backtrack = new long[(int)(((long)sizeX*sizeY + 15)/16)];
 		
 		pathColor = pc;
 		backtrackColor = btc;
@@ -73,41 +103,247 @@ public class Path {
 	 * @param p
 	 * @param dir 
 	 */
-	public void add(Point p, Direction dir){
-		if(!curPath.isEmpty() && p.getNeighbor(dir).equals(curPath.peek().getPoint())){
-			curPath.pop();
-			backtrack.add(new PathPoint(p, dir));
+	public synchronized void add(Point p, Direction dir){
+		int d = dir.ordinal();
+		if(length > 0 && d == (dirAt(length-1)^2)){
+			//going back the way we came
+			length--;
+			headX = p.getX() + DX[d];
+			headY = p.getY() + DY[d];
+			if(layer != null) layer.clearPath(headX, headY);
+			if(backtrack != null && getBacktrack(p.getX(), p.getY()) < 0){
+				setBacktrack(p.getX(), p.getY(), d);
+				if(layer != null) layer.setBacktrack(p.getX(), p.getY(), d);
+			}
 		}
 		else {
-			PathPoint point = new PathPoint(p.getNeighbor(dir), dir);
-			if(backtrack.contains(point)) backtrack.remove(point);
-			curPath.push(new PathPoint(p, dir));
+			append(p, d);
+			if(backtrack != null && getBacktrack(headX, headY) >= 0){
+				clearBacktrack(headX, headY);
+				if(layer != null) layer.clearBacktrack(headX, headY);
+			}
+			if(layer != null) layer.setPath(p.getX(), p.getY(), d);
 		}
 	}
 	
-	public void push(Point p, Direction dir){
-		curPath.push(new PathPoint(p,dir));
+	public synchronized void push(Point p, Direction dir){
+		append(p, dir.ordinal());
+		if(layer != null) layer.setPath(p.getX(), p.getY(), dir.ordinal());
 	}
 	
-	public PathPoint pop(){
-		return curPath.pop();
+	public synchronized PathPoint pop(){
+		if(length == 0) throw new EmptyStackException();
+		int d = dirAt(--length);
+		headX -= DX[d];
+		headY -= DY[d];
+		if(layer != null) layer.clearPath(headX, headY);
+		return new PathPoint(new Point(headX, headY), DIRECTIONS[d]);
 	}
 	
-	public boolean isEmpty(){
-		return curPath.isEmpty();
+	public synchronized boolean isEmpty(){
+		return length == 0;
 	}
 	
-	public void paint(Graphics2D g){
+	/**
+	 * Gets the number of steps in the path, not counting backtracks.
+	 * @return length of the path
+	 */
+	public synchronized int getLength(){
+		return length;
+	}
+	
+	/**
+	 * Packs the Directions of the path into bytes, four to a byte with the
+	 * first step in the lowest bits. Steps that were backtracked are not
+	 * included. Call this and getLength() while holding the Path's lock to
+	 * get a matching length.
+	 * @return getLength() steps, packed into (getLength()+3)/4 bytes
+	 */
+	public synchronized byte[] getPackedDirections(){
+		byte[] packed = new byte[(length + 3) >> 2];
+		for(int k = 0; k < packed.length; k++)
+			packed[k] = (byte)(log[k >> 3] >>> ((k & 7) << 3));
+		if((length & 3) != 0)
+			packed[packed.length-1] &= (1 << ((length & 3) << 1)) - 1;
+		return packed;
+	}
+	
+	/**
+	 * Gets the number of Cells that have been backtracked from.
+	 * @return number of backtracked Cells
+	 */
+	public synchronized int getBacktrackCount(){
+		return backtrackCount;
+	}
+	
+	/**
+	 * Estimates the memory used by the path's direction log and backtrack
+	 * bits, not counting the PathLayer.
+	 * @return size in bytes
+	 */
+	public synchronized long getDataSize(){
+		return 8L*log.length + (backtrack == null ? 0 : 8L*backtrack.length);
+	}
+	
+	/**
+	 * Paints the path directly, step by step. Only the Cells inside the clip
+	 * of g, and their neighbors, are drawn.
+	 * @param g Graphics2D object to draw onto
+	 */
+	public synchronized void paint(Graphics2D g){
+		int cellSize = Maze.CELL_SIZE, pathWidth = (Maze.CELL_SIZE-1)/4;
+		int x0 = 0, y0 = 0, x1 = Integer.MAX_VALUE, y1 = Integer.MAX_VALUE;
+		Rectangle clip = g.getClipBounds();
+		if(clip != null){
+			x0 = Math.floorDiv(clip.x, cellSize) - 1;
+			y0 = Math.floorDiv(clip.y, cellSize) - 1;
+			x1 = Math.floorDiv(clip.x + clip.width, cellSize) + 1;
+			y1 = Math.floorDiv(clip.y + clip.height, cellSize) + 1;
+		}
 		g.setColor(pathColor);
-		for(PathPoint pp : curPath){
-			pp.paint(g);
+		int x = startX, y = startY;
+		for(int i = 0; i < length; i++){
+			int d = dirAt(i);
+			if(x >= x0 && x <= x1 && y >= y0 && y <= y1)
+				paintPoint(g, x, y, DIRECTIONS[d], cellSize, pathWidth);
+			x += DX[d];
+			y += DY[d];
 		}
 		g.setColor(backtrackColor);
-		for(PathPoint pp : backtrack){
-			pp.paint(g);
+		for(int i = Math.max(x0, 0); backtrack != null && i < sizeX && i <= x1; i++)
+			for(int j = Math.max(y0, 0); j < sizeY && j <= y1; j++){
+				int d = getBacktrack(i, j);
+				if(d >= 0) paintPoint(g, i, j, DIRECTIONS[d], cellSize, pathWidth);
+			}
+	}
+	
+	/**
+	 * Paints the path for the Maze m using a persistent PathLayer. The first
+	 * call loads the whole path into the layer; after that, add(), push() and
+	 * pop() only redraw the cells they change, so painting does not get
+	 * slower as the path grows. The layer is rebuilt if the maze changes.
+	 * @param g Graphics2D object to draw onto
+	 * @param m Maze the path is in
+	 */
+	public synchronized void paint(Graphics2D g, Maze m){
+		int sx = m.getOptions().getSizeX();
+		int sy = m.getOptions().getSizeY();
+		if(layer == null || !layer.matches(sx, sy)){
+			layer = new PathLayer(sx, sy, pathColor, backtrackColor);
+			int x = startX, y = startY;
+			for(int i = 0; i < length; i++){
+				int d = dirAt(i);
+				layer.setPath(x, y, d);
+				x += DX[d];
+				y += DY[d];
+			}
+			for(int w = 0; backtrack != null && w < backtrack.length; w++){
+				//sixteen Cells to a word, so skip the words with no backtracks
+				if(backtrack[w] == 0) continue;
+				for(int i = w << 4; i < (w+1) << 4 && i < sizeX*sizeY; i++){
+					int d = getBacktrack(i/sizeY, i%sizeY);
+					if(d >= 0) layer.setBacktrack(i/sizeY, i%sizeY, d);
+				}
+			}
+		}
+		layer.paint(g);
+	}
+	
+	/**
+	 * Draws a single step of a path: the center of the Cell at (x,y) and the
+	 * section connecting it to the next Cell in Direction dir.
+	 */
+	static void paintPoint(Graphics2D g, int x, int y, Direction dir,
+			int cellSize, int pathWidth){
+		//center of path point
+		g.fillRect(x*cellSize + (cellSize-pathWidth)/2,
+			   y*cellSize + (cellSize-pathWidth)/2,
+			   pathWidth, pathWidth);
+		//connecting section to next cell
+		switch(dir){
+			case NORTH:
+				g.fillRect(x*cellSize + (cellSize-pathWidth)/2,
+						y*cellSize - (cellSize-pathWidth)/2-1,
+						pathWidth, cellSize-pathWidth);
+				break;
+			case SOUTH:
+				g.fillRect(x*cellSize + (cellSize-pathWidth)/2,
+						(y+1)*cellSize - (cellSize-pathWidth)/2-1,
+						pathWidth, cellSize-pathWidth);
+				break;
+			case EAST:
+				g.fillRect((x+1)*cellSize - (cellSize-pathWidth)/2-1,
+						y*cellSize + (cellSize-pathWidth)/2,
+						cellSize-pathWidth, pathWidth);
+				break;
+			case WEST:
+				g.fillRect(x*cellSize - (cellSize-pathWidth)/2-1,
+						y*cellSize + (cellSize-pathWidth)/2,
+						cellSize-pathWidth, pathWidth);
+				break;
 		}
 	}
 	
+	/**
+	 * Adds a step from Point p in direction d to the log. The first step
+	 * sets where the path starts.
+	 */
+	private void append(Point p, int d){
+		if(length == 0){
+			startX = p.getX();
+			startY = p.getY();
+		}
+		if(length == log.length*32) log = Arrays.copyOf(log, log.length*2);
+		int shift = (length & 31) << 1;
+		log[length >> 5] = (log[length >> 5] & ~(3L << shift)) | ((long)d << shift);
+		length++;
+		headX = p.getX() + DX[d];
+		headY = p.getY() + DY[d];
+	}
+	
+	private int dirAt(int i){
+		return (int)(log[i >> 5] >>> ((i & 31) << 1)) & 3;
+	}
+	
+	/**
+	 * Gets the Direction a Cell was backtracked from in, or -1 if it hasn't
+	 * been backtracked from.
+	 */
+	private int getBacktrack(int x, int y){
+		if(x < 0 || y < 0 || x >= sizeX || y >= sizeY) return -1;
+		int i = x*sizeY + y;
+		int bits = (int)(backtrack[i >> 4] >>> ((i & 15) << 2)) & 0xF;
+		return (bits & BACKTRACKED) != 0 ? bits & 3 : -1;
+	}
+	
+	private void setBacktrack(int x, int y, int d){
+		if(x < 0 || y < 0 || x >= sizeX || y >= sizeY) return;
+		int i = x*sizeY + y;
+		int shift = (i & 15) << 2;
+		backtrack[i >> 4] = (backtrack[i >> 4] & ~(0xFL << shift)) | ((long)(BACKTRACKED | d) << shift);
+		backtrackCount++;
+	}
+	
+	private void clearBacktrack(int x, int y){
+		int i = x*sizeY + y;
+		backtrack[i >> 4] &= ~(0xFL << ((i & 15) << 2));
+		backtrackCount--;
+	}
+	
+	/**
+	 * Estimates the heap used by the Path, including its PathLayer if it has
+	 * been drawn.
+	 * @return size in bytes
+	 * @see MemoryFootprint
+	 */
+	public long getFootprint(){
+		long size = MemoryFootprint.shallow(Path.class)
+				+ MemoryFootprint.array(long.class, log.length);
+		if(backtrack != null) size += MemoryFootprint.array(long.class, backtrack.length);
+		if(layer != null) size += layer.getFootprint();
+		return size;
+	}
+	
 	/**
 	 * Stores a single cell and the direction the Player moved out of that cell.
 	 */
@@ -139,33 +375,7 @@ public class Path {
 		}
 		
 		public void paint(Graphics2D g){
-			//center of path point
-			g.fillRect(point.getX()*Maze.CELL_SIZE + (Maze.CELL_SIZE-pathWidth)/2,
-				   point.getY()*Maze.CELL_SIZE + (Maze.CELL_SIZE-pathWidth)/2,
-				   pathWidth, pathWidth);
-			//connecting section to next cell
-			switch(dir){
-				case NORTH:
-					g.fillRect(point.getX()*Maze.CELL_SIZE + (Maze.CELL_SIZE-pathWidth)/2,
-							point.getY()*Maze.CELL_SIZE - (Maze.CELL_SIZE-pathWidth)/2-1,
-							pathWidth, Maze.CELL_SIZE-pathWidth);
-					break;
-				case SOUTH:
-					g.fillRect(point.getX()*Maze.CELL_SIZE + (Maze.CELL_SIZE-pathWidth)/2,
-							(point.getY()+1)*Maze.CELL_SIZE - (Maze.CELL_SIZE-pathWidth)/2-1,
-							pathWidth, Maze.CELL_SIZE-pathWidth);
-					break;
-				case EAST:
-					g.fillRect((point.getX()+1)*Maze.CELL_SIZE - (Maze.CELL_SIZE-pathWidth)/2-1,
-							point.getY()*Maze.CELL_SIZE + (Maze.CELL_SIZE-pathWidth)/2,
-							Maze.CELL_SIZE-pathWidth, pathWidth);
-					break;
-				case WEST:
-					g.fillRect(point.getX()*Maze.CELL_SIZE - (Maze.CELL_SIZE-pathWidth)/2-1,
-							point.getY()*Maze.CELL_SIZE + (Maze.CELL_SIZE-pathWidth)/2,
-							Maze.CELL_SIZE-pathWidth, pathWidth);
-					break;
-			}
+			paintPoint(g, point.getX(), point.getY(), dir, Maze.CELL_SIZE, (Maze.CELL_SIZE-1)/4);
 		}
 	}
 }
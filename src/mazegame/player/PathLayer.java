@@ -0,0 +1,326 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.player;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import mazegame.Direction;
+import mazegame.Maze;
+import mazegame.MemoryFootprint;
+
+/**
+ * A persistent image of a Path. Instead of drawing every PathPoint on each
+ * repaint, the layer keeps the path drawn into images and only redraws the
+ * few cells around a PathPoint when it is added or removed. Painting a Path
+ * with a layer then costs the same no matter how long the path is.
+ * 
+ * The maze is split into tiles of TILE by TILE Cells. A tile is only made
+ * once the path reaches it, and stores the direction of the path and
+ * backtrack entries for its Cells, so the neighborhood of a change can be
+ * redrawn in the same order that Path.paint() would draw it: path first,
+ * backtracks on top. A tile's image is only made when the tile is painted,
+ * and images are kept up to MAX_PIXELS, dropping the least recently painted
+ * first. If the visible tiles need more than that, the ones without an
+ * image are drawn from their entries instead, which costs the number of
+ * visible Cells rather than the length of the path.
+ * @author Jeffery Thompson
+ */
+class PathLayer {
+	static final int TILE = 16;
+	private static final long MAX_PIXELS = 1 << 22;
+	private static final byte NONE = -1;
+	private static final Direction[] DIRECTIONS = Direction.values();
+	private static final int[] DX = {0, 1, 0, -1};
+	private static final int[] DY = {-1, 0, 1, 0};
+	
+	private final int sizeX, sizeY;
+	private final int tilesX, tilesY;
+	private final Tile[] tiles;
+	private final Color pathColor, backtrackColor;
+	
+	private int cellSize = -1, pathWidth;
+	//tiles with an image, least recently painted first
+	private final LinkedHashMap<Integer, Tile> images = new LinkedHashMap(16, 0.75f, true);
+	private long pixels = 0;
+	
+	/**
+	 * Creates an empty layer for a maze of the given size.
+	 * @param sizeX horizontal size of the maze
+	 * @param sizeY vertical size of the maze
+	 * @param pc color of the path
+	 * @param btc color of the backtracked path
+	 */
+	PathLayer(int sizeX, int sizeY, Color pc, Color btc){
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		tilesX = (sizeX + TILE-1)/TILE;
+		tilesY = (sizeY + TILE-1)/TILE;
+		tiles = new Tile[tilesX*tilesY];
+		pathColor = pc;
+		backtrackColor = btc;
+	}
+	
+	/**
+	 * Estimates the heap used by the layer: the tiles the path has reached
+	 * and the images kept for them.
+	 * @return size in bytes
+	 */
+	long getFootprint(){
+		long size = MemoryFootprint.shallow(PathLayer.class)
+				+ MemoryFootprint.array(Tile[].class, tiles.length);
+		for(Tile t : tiles)
+			if(t != null) size += MemoryFootprint.shallow(Tile.class)
+					+ 2*MemoryFootprint.array(byte.class, TILE*TILE);
+		for(Tile t : images.values())
+			size += MemoryFootprint.array(int.class, (long)t.image.getWidth()*t.image.getHeight());
+		return size;
+	}
+	
+	/**
+	 * Checks if this layer can still be used for a maze of the given size.
+	 * @param x horizontal size of the maze
+	 * @param y vertical size of the maze
+	 * @return true if the layer matches the maze
+	 */
+	boolean matches(int x, int y){
+		return sizeX == x && sizeY == y;
+	}
+	
+	void setPath(int x, int y, int dir){
+		if(!inside(x, y)) return;
+		store(false, x, y, dir);
+		refresh(x, y, dir);
+	}
+	
+	void clearPath(int x, int y){
+		int dir = get(false, x, y);
+		if(dir == NONE) return;
+		store(false, x, y, NONE);
+		refresh(x, y, dir);
+	}
+	
+	void setBacktrack(int x, int y, int dir){
+		if(!inside(x, y)) return;
+		store(true, x, y, dir);
+		refresh(x, y, dir);
+	}
+	
+	void clearBacktrack(int x, int y){
+		int dir = get(true, x, y);
+		if(dir == NONE) return;
+		store(true, x, y, NONE);
+		refresh(x, y, dir);
+	}
+	
+	/**
+	 * Draws the layer onto the Graphics2D object g, at the current
+	 * Maze.CELL_SIZE. Only the tiles inside the clip of g are drawn.
+	 * @param g Graphics2D object to draw onto
+	 */
+	void paint(Graphics2D g){
+		if(cellSize != Maze.CELL_SIZE){
+			dropImages();
+			cellSize = Maze.CELL_SIZE;
+			pathWidth = (cellSize-1)/4;
+		}
+		int span = TILE*cellSize;
+		int tx0 = 0, ty0 = 0, tx1 = tilesX-1, ty1 = tilesY-1;
+		Rectangle clip = g.getClipBounds();
+		if(clip != null){
+			tx0 = Math.max(tx0, Math.floorDiv(clip.x, span));
+			ty0 = Math.max(ty0, Math.floorDiv(clip.y, span));
+			tx1 = Math.min(tx1, Math.floorDiv(clip.x + clip.width - 1, span));
+			ty1 = Math.min(ty1, Math.floorDiv(clip.y + clip.height - 1, span));
+		}
+		
+		//mark the visible images as recently used, so that making the rest
+		//only drops images that are not visible
+		long visible = 0;
+		for(int tx = tx0; tx <= tx1; tx++)
+			for(int ty = ty0; ty <= ty1; ty++){
+				Tile t = tiles[tx*tilesY + ty];
+				if(t == null || t.touches == 0) continue;
+				visible += (long)span*span;
+				if(t.image != null) images.get(tx*tilesY + ty);
+			}
+		boolean cache = visible <= MAX_PIXELS;
+		
+		for(int tx = tx0; tx <= tx1; tx++)
+			for(int ty = ty0; ty <= ty1; ty++){
+				Tile t = tiles[tx*tilesY + ty];
+				if(t == null || t.touches == 0) continue;
+				if(t.image == null && cache) render(tx, ty, t);
+				if(t.image != null) g.drawImage(t.image, tx*span, ty*span, null);
+				else {
+					Graphics2D tg = (Graphics2D)g.create();
+					tg.clipRect(tx*span, ty*span, span, span);
+					draw(tg, tx*TILE-1, ty*TILE-1, (tx+1)*TILE, (ty+1)*TILE);
+					tg.dispose();
+				}
+			}
+	}
+	
+	/**
+	 * Makes the image of a tile, dropping the least recently painted images
+	 * until it fits in MAX_PIXELS.
+	 */
+	private void render(int tx, int ty, Tile t){
+		int span = TILE*cellSize;
+		Iterator<Tile> it = images.values().iterator();
+		while(pixels + (long)span*span > MAX_PIXELS && it.hasNext()){
+			Tile old = it.next();
+			it.remove();
+			drop(old);
+		}
+		t.image = new BufferedImage(span, span, BufferedImage.TYPE_INT_ARGB);
+		t.g = t.image.createGraphics();
+		t.g.translate(-tx*span, -ty*span);
+		draw(t.g, tx*TILE-1, ty*TILE-1, (tx+1)*TILE, (ty+1)*TILE);
+		images.put(tx*tilesY + ty, t);
+		pixels += (long)span*span;
+	}
+	
+	private void drop(Tile t){
+		pixels -= (long)t.image.getWidth()*t.image.getHeight();
+		t.g.dispose();
+		t.g = null;
+		t.image = null;
+	}
+	
+	private void dropImages(){
+		for(Tile t : images.values()) drop(t);
+		images.clear();
+	}
+	
+	/**
+	 * Redraws the area covered by a PathPoint at (x,y) going in Direction dir
+	 * in the images that cover it. A PathPoint only ever covers its own Cell
+	 * and the neighbor it connects to, so the area is cleared and every entry
+	 * that could reach into it (the entries of those two Cells and of their
+	 * neighbors) is drawn again, clipped to the area.
+	 */
+	private void refresh(int x, int y, int dir){
+		if(images.isEmpty()) return;
+		int nx = x + DX[dir], ny = y + DY[dir];
+		int minX = Math.min(x, nx), maxX = Math.max(x, nx);
+		int minY = Math.min(y, ny), maxY = Math.max(y, ny);
+		
+		for(int tx = Math.max(minX, 0)/TILE; tx <= Math.min(maxX, sizeX-1)/TILE; tx++)
+			for(int ty = Math.max(minY, 0)/TILE; ty <= Math.min(maxY, sizeY-1)/TILE; ty++){
+				Tile t = tiles[tx*tilesY + ty];
+				if(t == null || t.image == null) continue;
+				Graphics2D g = t.g;
+				g.setClip(minX*cellSize, minY*cellSize,
+						(maxX-minX+1)*cellSize, (maxY-minY+1)*cellSize);
+				g.setComposite(AlphaComposite.Clear);
+				g.fillRect(minX*cellSize, minY*cellSize,
+						(maxX-minX+1)*cellSize, (maxY-minY+1)*cellSize);
+				g.setComposite(AlphaComposite.SrcOver);
+				draw(g, minX-1, minY-1, maxX+1, maxY+1);
+				g.setClip(null);
+			}
+	}
+	
+	/**
+	 * Draws the entries of the Cells from (x0,y0) to (x1,y1), inclusive,
+	 * path first and backtracks on top.
+	 */
+	private void draw(Graphics2D g, int x0, int y0, int x1, int y1){
+		g.setColor(pathColor);
+		draw(g, false, x0, y0, x1, y1);
+		g.setColor(backtrackColor);
+		draw(g, true, x0, y0, x1, y1);
+	}
+	
+	private void draw(Graphics2D g, boolean backtrack, int x0, int y0, int x1, int y1){
+		for(int i = Math.max(x0, 0); i <= x1 && i < sizeX; i++)
+			for(int j = Math.max(y0, 0); j <= y1 && j < sizeY; j++){
+				int d = get(backtrack, i, j);
+				if(d != NONE)
+					Path.paintPoint(g, i, j, DIRECTIONS[d], cellSize, pathWidth);
+			}
+	}
+	
+	private int get(boolean backtrack, int x, int y){
+		if(!inside(x, y)) return NONE;
+		Tile t = tiles[x/TILE*tilesY + y/TILE];
+		if(t == null) return NONE;
+		int i = x%TILE*TILE + y%TILE;
+		return backtrack ? t.backtrackDir[i] : t.pathDir[i];
+	}
+	
+	/**
+	 * Stores an entry, or clears it if dir is NONE. An entry draws into its
+	 * own Cell and the neighbor it connects to, so both their tiles count it
+	 * as touching them.
+	 */
+	private void store(boolean backtrack, int x, int y, int dir){
+		Tile t = tile(x, y);
+		int i = x%TILE*TILE + y%TILE;
+		byte[] dirs = backtrack ? t.backtrackDir : t.pathDir;
+		if(dirs[i] != NONE) touch(x, y, dirs[i], -1);
+		dirs[i] = (byte)dir;
+		if(dir != NONE) touch(x, y, dir, 1);
+	}
+	
+	private void touch(int x, int y, int dir, int n){
+		tile(x, y).touches += n;
+		int nx = x + DX[dir], ny = y + DY[dir];
+		if(inside(nx, ny) && (nx/TILE != x/TILE || ny/TILE != y/TILE))
+			tile(nx, ny).touches += n;
+	}
+	
+	private Tile tile(int x, int y){
+		int k = x/TILE*tilesY + y/TILE;
+		if(tiles[k] == null) tiles[k] = new Tile();
+		return tiles[k];
+	}
+	
+	private boolean inside(int x, int y){
+		return x >= 0 && y >= 0 && x < sizeX && y < sizeY;
+	}
+	
+	/**
+	 * The entries of TILE by TILE Cells, and their image once painted.
+	 */
+	private static class Tile {
+		final byte[] pathDir = new byte[TILE*TILE];
+		final byte[] backtrackDir = new byte[TILE*TILE];
+		//entries drawing into this tile, including from neighboring tiles
+		int touches = 0;
+		BufferedImage image;
+		Graphics2D g;
+		
+		Tile(){
+			Arrays.fill(pathDir, NONE);
+			Arrays.fill(backtrackDir, NONE);
+		}
+	}
+}
@@ -26,9 +26,9 @@ package mazegame.player;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.time.Duration;
-import java.time.Instant;
 import mazegame.Direction;
 import mazegame.Maze;
+import mazegame.MemoryFootprint;
 import mazegame.Point;
 
 /**
@@ -41,16 +41,22 @@ import mazegame.Point;
  * @author Jeffery Thompson
  */
 public class Player {
-	private Maze maze;
-	private Point start;
-	private Point pos;
-	private Path path;
+	private volatile Maze maze;
+	private volatile Point start;
+	private volatile Point pos;
+	private volatile Path path;
 	
-	private Instant startTime, finishTime;
+	/**
+	 * System.nanoTime() when the Player started and finished the maze.
+	 */
+	private volatile long startTime, finishTime;
 	
 	private Color playerColor;
 	
-	private boolean finished = false;
+	private volatile boolean finished = false;
+	
+	private volatile OccupancyIndex occupancy;
+	private volatile int occupancyId = -1;
 	/**
 	 * Creates a Player in the Maze m 
 	 * @param m Maze the Player is in
@@ -60,8 +66,8 @@ public class Player {
 		start = m.getOptions().getStart();
 		pos = start;
 		playerColor = Color.blue;
-		path = new Path(playerColor, Color.yellow);
-		startTime = Instant.now();
+		path = new Path(maze, playerColor, Color.yellow);
+		startTime = System.nanoTime();
 	}
 	
 	public Player(Maze m, Color c){
@@ -69,8 +75,8 @@ public class Player {
 		start = m.getOptions().getStart();
 		pos = start;
 		playerColor = c;
-		path = new Path(playerColor, Color.yellow);
-		startTime = Instant.now();
+		path = new Path(maze, playerColor, Color.yellow);
+		startTime = System.nanoTime();
 	}
 	
 	public Player(Maze m, Color c, Point s){
@@ -78,8 +84,8 @@ public class Player {
 		start = s;
 		pos = start;
 		playerColor = c;
-		path = new Path(playerColor, Color.yellow);
-		startTime = Instant.now();
+		path = new Path(maze, playerColor, Color.yellow);
+		startTime = System.nanoTime();
 	}
 	
 	/**
@@ -97,6 +103,43 @@ public class Player {
 		return pos;
 	}
 	
+	public Maze getMaze(){
+		return maze;
+	}
+	
+	/**
+	 * Gets the Path the Player has taken since they last started. It is
+	 * replaced when the Player restarts.
+	 * @return the Player's Path
+	 */
+	public Path getPath(){
+		return path;
+	}
+	
+	/**
+	 * Sets the OccupancyIndex the Player keeps up to date as it moves.
+	 * @param o index, or null to stop updating it
+	 * @param id the Player's number in the index
+	 */
+	void setOccupancy(OccupancyIndex o, int id){
+		occupancy = o;
+		occupancyId = id;
+	}
+	
+	/**
+	 * Estimates the heap used by the Player and its Path. The Player's
+	 * positions are the Points of the Maze's Cells, so they are not counted.
+	 * @return size in bytes
+	 * @see MemoryFootprint
+	 */
+	public long getFootprint(){
+		return MemoryFootprint.shallow(Player.class) + path.getFootprint();
+	}
+	
+	public Point getStart(){
+		return start;
+	}
+	
 	public void setStart(Point s){
 		if(maze.getCell(s) != null)
 			start = s;
@@ -109,8 +152,18 @@ public class Player {
 	 * @return Duration of time in the maze
 	 */
 	public Duration getTime(){
-		if(finished) return Duration.between(startTime, finishTime);
-		else return Duration.between(startTime, Instant.now());
+		return Duration.ofNanos(getTimeNanos());
+	}
+	
+	/**
+	 * Gets the Player's time in the maze in nanoseconds, measured with
+	 * System.nanoTime(), so it is not affected by changes to the clock.
+	 * @return time in the maze in nanoseconds
+	 * @see #getTime()
+	 */
+	public long getTimeNanos(){
+		if(finished) return finishTime - startTime;
+		else return System.nanoTime() - startTime;
 	}
 	
 	public void setMaze(Maze m){
@@ -129,7 +182,9 @@ public class Player {
 	 * successful,the player's position should now be in the Cell adjacent to 
 	 * the current Cell in the given Direction, and the method returns true.
 	 * Otherwise, if the neighboring cell has a wall or does not exist, the 
-	 * position will remain the same, and the method returns false.
+	 * position will remain the same, and the method returns false. The move
+	 * also fails if the Player's OccupancyIndex has collisions on and the
+	 * neighboring cell is occupied.
 	 * 
 	 * @param dir Direction to move
 	 * @return true if the player moved successfully, false otherwise
@@ -137,8 +192,11 @@ public class Player {
 	public boolean move(Direction dir){
 		if(maze.getCell(pos).hasNeighbor(dir) && !maze.getCell(pos).getWalls().get(dir) && !finished)
 		{
+			Point next = maze.getCell(pos).getNeighbor(dir).getPos();
+			OccupancyIndex o = occupancy;
+			if(o != null && !o.tryMove(occupancyId, next.getX(), next.getY())) return false;
 			path.add(pos,dir);
-			pos = maze.getCell(pos).getNeighbor(dir).getPos();
+			pos = next;
 			return true;
 		}
 		return false;
@@ -153,7 +211,7 @@ public class Player {
 	public boolean checkWin(){
 		if(pos.equals(maze.getOptions().getGoal()))
 		{
-			finishTime = Instant.now();
+			finishTime = System.nanoTime();
 			finished = true;
 			return true;
 		}
@@ -170,20 +228,31 @@ public class Player {
 	public void restart(){
 		finished = false;
 		pos = start;
-		path = new Path(playerColor, Color.yellow);
-		startTime = Instant.now();
+		path = new Path(maze, playerColor, Color.yellow);
+		startTime = System.nanoTime();
+		OccupancyIndex o = occupancy;
+		if(o != null) o.move(occupancyId, start.getX(), start.getY());
 	}
 	
 	public void paint(Graphics2D g){
-		path.paint(g);
+		paint(g, start, pos);
+	}
+	
+	/**
+	 * Paints the Player's path, with the start and the Player drawn at the
+	 * given Points. This lets a GameSnapshot draw the Player where it was
+	 * when the snapshot was taken.
+	 */
+	void paint(Graphics2D g, Point s, Point p){
+		path.paint(g, maze);
 		
 		g.setColor(playerColor);
-		g.fillRect(start.getX()*Maze.CELL_SIZE+1, start.getY()*Maze.CELL_SIZE+1, 
+		g.fillRect(s.getX()*Maze.CELL_SIZE+1, s.getY()*Maze.CELL_SIZE+1, 
 				Maze.CELL_SIZE-2, Maze.CELL_SIZE-2);
 		
 		g.setColor(playerColor);
-		g.fillRect(pos.getX()*Maze.CELL_SIZE + 3,
-				pos.getY()*Maze.CELL_SIZE + 3,
+		g.fillRect(p.getX()*Maze.CELL_SIZE + 3,
+				p.getY()*Maze.CELL_SIZE + 3,
 				Maze.CELL_SIZE -6, Maze.CELL_SIZE-6);
 	}
 }
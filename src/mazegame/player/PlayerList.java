@@ -23,20 +23,82 @@
  */
 package mazegame.player;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import mazegame.Maze;
+import mazegame.MemoryFootprint;
 
 /**
- * A class to maintain a list of all Players in the current maze.
+ * A class to maintain a list of all Players in the current maze. Players may
+ * be added and removed from any thread.
+ * 
+ * The game played on this machine uses the list from getLocal(). Anything
+ * that hosts players of its own, such as a GameServer, makes a new list, so
+ * the two never see each other's Players.
+ * 
+ * The list keeps an OccupancyIndex of where its Players are, for finding
+ * the Players in or near a Cell without going through every Player.
+ * 
+ * For simulations with thousands of players, use a PlayerRegistry, which
+ * keeps player state in primitive arrays instead of Player objects.
  * @author Jeffery Thompson
  */
 public class PlayerList {
-	private static final Map<Integer, Player> player = new HashMap();
-	private static int numPlayers = 0;
-	public static void add(Player p){
-		player.put(numPlayers++,p);
+	private static final PlayerList local = new PlayerList();
+	
+	private final Map<Integer, Player> player = new ConcurrentHashMap();
+	private final AtomicInteger numPlayers = new AtomicInteger();
+	private volatile OccupancyIndex occupancy;
+	
+	/**
+	 * Gets the list of the Players in the game played on this machine.
+	 * @return the local PlayerList
+	 */
+	public static PlayerList getLocal(){
+		return local;
+	}
+	
+	/**
+	 * Adds a Player to the list. Every Player in the list must be in the same
+	 * Maze; use setMaze() to move them all to another one.
+	 * @param p Player to add
+	 * @return player number of the new Player
+	 * @throws IllegalArgumentException if the Player is in a different Maze
+	 * than the Players already in the list
+	 */
+	public synchronized int add(Player p){
+		if(occupancy == null || occupancy.getMaze() != p.getMaze()){
+			if(!player.isEmpty())
+				throw new IllegalArgumentException("Player is in a different maze");
+			OccupancyIndex o = new OccupancyIndex(p.getMaze());
+			if(occupancy != null) o.setCollisions(occupancy.hasCollisions());
+			occupancy = o;
+		}
+		int i = numPlayers.getAndIncrement();
+		player.put(i,p);
+		occupancy.add(i, p);
+		p.setOccupancy(occupancy, i);
+		return i;
+	}
+	
+	/**
+	 * Removes the Player with the given player number. Player numbers are not
+	 * reused.
+	 * @param i player number
+	 * @return the removed Player, or null if that player does not exist
+	 */
+	public synchronized Player remove(int i){
+		Player p = player.remove(i);
+		if(p != null){
+			p.setOccupancy(null, -1);
+			occupancy.remove(i);
+		}
+		return p;
 	}
 	
 	/**
@@ -44,17 +106,64 @@ public class PlayerList {
 	 * @param i player number
 	 * @return player number i, or null if that player does not exist
 	 */
-	public static Player get(int i){
-		if(!player.containsKey(i)) return null;
+	public Player get(int i){
 		return player.get(i);
 	}
 	
-	public static Collection<Player> getPlayers(){
+	public Collection<Player> getPlayers(){
 		return player.values();
 	}
-	public static void setMaze(Maze m){
-		for(Integer k : player.keySet()){
-			player.get(k).setMaze(m);
+	/**
+	 * Gets the player numbers of every Player in the list, in the order the
+	 * Players were added.
+	 * @return sorted player numbers
+	 */
+	public List<Integer> getPlayerNumbers(){
+		List<Integer> numbers = new ArrayList(player.keySet());
+		Collections.sort(numbers);
+		return numbers;
+	}
+	/**
+	 * Removes every Player. Player numbers start again from 0.
+	 */
+	public synchronized void clear(){
+		for(Player p : player.values()) p.setOccupancy(null, -1);
+		player.clear();
+		numPlayers.set(0);
+		occupancy = null;
+	}
+	
+	/**
+	 * Gets the OccupancyIndex of the Players in the list.
+	 * @return the index, or null if no Player has been added yet
+	 */
+	public OccupancyIndex getOccupancy(){
+		return occupancy;
+	}
+	/**
+	 * Estimates the heap used by the list, its Players and their Paths, and
+	 * the OccupancyIndex.
+	 * @return size in bytes
+	 * @see MemoryFootprint
+	 */
+	public synchronized long getFootprint(){
+		long size = MemoryFootprint.concurrentHashMap(player.size());
+		for(Map.Entry<Integer, Player> e : player.entrySet())
+			size += MemoryFootprint.integer(e.getKey()) + e.getValue().getFootprint();
+		if(occupancy != null) size += occupancy.getFootprint();
+		return size;
+	}
+	
+	public synchronized void setMaze(Maze m){
+		OccupancyIndex o = new OccupancyIndex(m);
+		if(occupancy != null) o.setCollisions(occupancy.hasCollisions());
+		for(Map.Entry<Integer, Player> e : player.entrySet()){
+			Player p = e.getValue();
+			p.setOccupancy(null, -1);
+			p.setMaze(m);
+			o.add(e.getKey(), p);
+			p.setOccupancy(o, e.getKey());
 		}
+		occupancy = o;
 	}
 }
@@ -0,0 +1,233 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.player;
+
+import java.awt.Color;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import mazegame.Direction;
+import mazegame.Maze;
+import mazegame.MazeOptions;
+import mazegame.MazeSolver;
+import mazegame.Point;
+import mazegame.stats.Histogram;
+
+/**
+ * Drives many Players in the PlayerList through a GameState without a
+ * display, to find how many players the game core can take. One thread
+ * queues moves at a steady rate, and the GameState applies them on its own
+ * thread as it does in the game.
+ * 
+ * The latency of a move is the time from when it was due to be queued to
+ * when the first snapshot with the move in it is published. Measuring from
+ * when the move was due, rather than when it was actually queued, means a
+ * stalled game thread shows up in the latency instead of just slowing down
+ * the test. The cost of checking for winners is measured for every batch,
+ * and the bytes allocated by the game thread and the driving thread are
+ * read from the ThreadMXBean.
+ * 
+ * Players either move at random or follow the MazeSolver to the goal. When
+ * every Player following the solver has won, the driving thread restarts
+ * them all, so the goal Cell is always busy. A restart counts as a move.
+ * @author Jeffery Thompson
+ */
+public class PlayerLoadTest implements GameState.Listener {
+	/**
+	 * How the Players choose their moves.
+	 */
+	public enum Mode { RANDOM, SOLVER }
+	
+	private static final int RING = 1 << 20;
+	private static final Direction[] DIRECTIONS = Direction.values();
+	
+	private final Maze maze;
+	private final int players;
+	private final Mode mode;
+	private final GameState state;
+	private final MazeSolver solver;
+	
+	/**
+	 * When each move was due, indexed by the number of the move. Written by
+	 * the driving thread and read by the game thread.
+	 */
+	private final long[] due = new long[RING];
+	private volatile long queued = 0;
+	private long measured = 0;
+	
+	private final Histogram latency = new Histogram();
+	private final Histogram winChecks = new Histogram();
+	private final Histogram batches = new Histogram();
+	private final AtomicInteger wins = new AtomicInteger();
+	private volatile long totalWins = 0;
+	private volatile Thread gameThread;
+	private long gameBytes, driverBytes, elapsed;
+	
+	/**
+	 * Creates a test with the given number of Players at the start of the
+	 * Maze m. The PlayerList is cleared first.
+	 * @param m Maze to play in
+	 * @param players number of Players
+	 * @param mode how the Players move
+	 */
+	public PlayerLoadTest(Maze m, int players, Mode mode){
+		maze = m;
+		this.players = players;
+		this.mode = mode;
+		solver = mode == Mode.SOLVER ? new MazeSolver(m) : null;
+		PlayerList.getLocal().clear();
+		Random rand = new Random(players);
+		for(int i = 0; i < players; i++)
+			PlayerList.getLocal().add(new Player(m, Color.getHSBColor(rand.nextFloat(), 1, 1)));
+		state = new GameState(m);
+		state.addListener(this);
+	}
+	
+	/**
+	 * Queues moves at the given rate for the given time, then waits for the
+	 * game thread to apply them.
+	 * @param movesPerSecond target rate of moves
+	 * @param millis how long to queue moves for
+	 */
+	public void run(double movesPerSecond, long millis){
+		com.sun.management.ThreadMXBean threads = 
+				(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		Random rand = new Random(42);
+		long interval = (long)(1e9/movesPerSecond);
+		state.start();
+		long driverStart = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		long start = System.nanoTime();
+		long end = start + millis*1000000;
+		long next = start;
+		while(next < end){
+			long now = System.nanoTime();
+			if(now < next){
+				if(next - now > 50000) LockSupport.parkNanos(next - now - 50000);
+				continue;
+			}
+			if(queued - measured >= RING){
+				Thread.yield();
+				continue;
+			}
+			if(mode == Mode.SOLVER && wins.get() >= players){
+				wins.set(0);
+				due[(int)(queued & (RING-1))] = now;
+				queued++;
+				state.restart();
+			}
+			int player = rand.nextInt(players);
+			due[(int)(queued & (RING-1))] = next;
+			queued++;
+			state.move(player, chooseMove(player, rand));
+			next += interval;
+		}
+		while(state.getAppliedCount() < queued) Thread.yield();
+		elapsed = System.nanoTime() - start;
+		driverBytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - driverStart;
+		Thread t = gameThread;
+		if(t != null) gameBytes = threads.getThreadAllocatedBytes(t.getId()) - gameBytes;
+		state.stop();
+	}
+	
+	private Direction chooseMove(int player, Random rand){
+		if(mode == Mode.RANDOM) return DIRECTIONS[rand.nextInt(4)];
+		Point p = PlayerList.getLocal().get(player).getPos();
+		Direction d = solver.getDirection(p.getX(), p.getY());
+		return d == null ? DIRECTIONS[rand.nextInt(4)] : d;
+	}
+	
+	@Override
+	public void stateChanged(GameSnapshot s){
+		if(gameThread == null){
+			gameThread = Thread.currentThread();
+			gameBytes = ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean())
+					.getThreadAllocatedBytes(gameThread.getId());
+		}
+		long now = System.nanoTime();
+		long applied = state.getAppliedCount();
+		batches.record(applied - measured);
+		for(; measured < applied; measured++)
+			latency.record(now - due[(int)(measured & (RING-1))]);
+		winChecks.record(state.getWinCheckNanos());
+	}
+	
+	@Override
+	public void playerWon(Player p){
+		wins.incrementAndGet();
+		totalWins++;
+	}
+	
+	/**
+	 * Describes how the test went.
+	 * @return throughput, latency percentiles, win check cost and allocation
+	 */
+	public String report(){
+		double seconds = elapsed/1e9;
+		long moves = latency.getCount();
+		return String.format("%d players, %d moves in %.2f s: %.0f moves/s, %d batches of %.1f moves%n"
+				+ "Move latency: p50 %.1f us, p90 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n"
+				+ "Win check: p50 %.2f us, p99 %.2f us, max %.2f us per batch, %d wins%n"
+				+ "Allocated: game thread %.0f bytes/move (%.1f MB/s), driver %.0f bytes/move",
+				players, moves, seconds, moves/seconds, batches.getCount(), batches.getMean(),
+				latency.getPercentile(50)/1e3, latency.getPercentile(90)/1e3,
+				latency.getPercentile(99)/1e3, latency.getPercentile(99.9)/1e3,
+				latency.getMax()/1e3,
+				winChecks.getPercentile(50)/1e3, winChecks.getPercentile(99)/1e3,
+				winChecks.getMax()/1e3, totalWins,
+				(double)gameBytes/moves, gameBytes/seconds/1e6, (double)driverBytes/moves);
+	}
+	
+	public Histogram getLatency(){
+		return latency;
+	}
+	public Histogram getWinChecks(){
+		return winChecks;
+	}
+	
+	/**
+	 * Runs a load test and prints its report.
+	 * Usage: playerload players seconds [movesPerSecond] [RANDOM|SOLVER] [sizeX sizeY] [algorithm]
+	 * @param args command line arguments
+	 */
+	public static void main(String[] args){
+		if(args.length < 2){
+			System.err.println("Usage: playerload players seconds [movesPerSecond] [RANDOM|SOLVER]"
+					+ " [sizeX sizeY] [DFS|PRIM|WILSON|FAST_WILSON|GROWING_TREE[:selection[:ratio]]|SIDEWINDER|BINARY_TREE]");
+			System.exit(1);
+		}
+		int players = Integer.parseInt(args[0]);
+		long millis = (long)(Double.parseDouble(args[1])*1000);
+		double rate = args.length > 2 ? Double.parseDouble(args[2]) : 100000;
+		Mode mode = args.length > 3 ? Mode.valueOf(args[3].toUpperCase()) : Mode.RANDOM;
+		MazeOptions options = args.length > 5
+				? new MazeOptions(Integer.parseInt(args[4]), Integer.parseInt(args[5]))
+				: new MazeOptions(100, 100);
+		if(args.length > 6) options.parseAlgorithm(args[6]);
+		
+		PlayerLoadTest test = new PlayerLoadTest(new Maze(options), players, mode);
+		test.run(rate, millis);
+		System.out.println(test.report());
+	}
+}
@@ -0,0 +1,327 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.player;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+import mazegame.Direction;
+import mazegame.Maze;
+import mazegame.Maze.Cell;
+import mazegame.Point;
+
+/**
+ * A registry for large numbers of players in one Maze. Rather than a Player
+ * object per player, the registry stores each piece of player state in its
+ * own primitive array (positions, finished flags, start and finish times),
+ * indexed by a slot number. Going through every player each tick is then a
+ * walk over a few flat arrays instead of chasing thousands of objects.
+ * 
+ * The registry has a fixed capacity. Adding and removing players is
+ * synchronized and may be done from any thread. Moving a player writes only
+ * that player's slot, so different players may be moved from different
+ * threads at the same time, but each player should only be moved by one
+ * thread at a time. A move only lands if the slot still holds the position
+ * it was made from, so a player removed or restarted during a move stays
+ * removed or restarted.
+ * 
+ * A position is packed into one long, x in the high half and y in the low
+ * half, and is written last with release semantics whenever a slot changes.
+ * Another thread that reads a position with getPosition() sees both halves
+ * of the same move, and the finished flag and times written before it. An
+ * empty slot holds EMPTY, which no position can be.
+ * 
+ * The registry can keep an OccupancyIndex up to date, using slot numbers as
+ * player numbers. Players in a registry don't track their Path; use Player
+ * for that.
+ * @author Jeffery Thompson
+ */
+public class PlayerRegistry {
+	private static final long EMPTY = -1;
+	
+	private final Maze maze;
+	private final int capacity;
+	
+	private final AtomicLongArray pos;
+	private final byte[] finished;
+	private final long[] startTime, finishTime;
+	
+	private final int[] free;
+	private int freeCount;
+	private volatile int size = 0;
+	private volatile int highWater = 0;
+	private volatile OccupancyIndex occupancy;
+	
+	/**
+	 * Creates an empty registry for players in the Maze m.
+	 * @param m Maze the players are in
+	 * @param capacity most players the registry can hold
+	 */
+	public PlayerRegistry(Maze m, int capacity){
+		maze = m;
+		this.capacity = capacity;
+		pos = new AtomicLongArray(capacity);
+		for(int i = 0; i < capacity; i++) pos.set(i, EMPTY);
+		finished = new byte[capacity];
+		startTime = new long[capacity];
+		finishTime = new long[capacity];
+		free = new int[capacity];
+		freeCount = 0;
+	}
+	
+	public Maze getMaze(){
+		return maze;
+	}
+	
+	/**
+	 * Sets the OccupancyIndex to keep up to date. Every player already in the
+	 * registry is added to it. With collisions on in the index, players cannot
+	 * move into occupied Cells.
+	 * @param o index for this registry's Maze, or null to stop updating one
+	 * @throws IllegalArgumentException if the index is for another Maze
+	 */
+	public synchronized void setOccupancy(OccupancyIndex o){
+		if(o != null && o.getMaze() != maze)
+			throw new IllegalArgumentException("Index is for another maze");
+		OccupancyIndex old = occupancy;
+		for(int id = 0; id < highWater; id++){
+			long p = pos.get(id);
+			if(p == EMPTY) continue;
+			if(old != null) old.remove(id);
+			if(o != null) o.add(id, unpackX(p), unpackY(p));
+		}
+		occupancy = o;
+	}
+	
+	public OccupancyIndex getOccupancy(){
+		return occupancy;
+	}
+	
+	/**
+	 * Adds a player at the Maze's start Point.
+	 * @return slot of the new player, or -1 if the registry is full
+	 */
+	public int add(){
+		return add(maze.getOptions().getStart());
+	}
+	
+	/**
+	 * Adds a player at the given starting Point. The player's timer starts
+	 * now.
+	 * @param start starting Point of the player
+	 * @return slot of the new player, or -1 if the registry is full
+	 */
+	public synchronized int add(Point start){
+		int id;
+		if(freeCount > 0) id = free[--freeCount];
+		else if(highWater < capacity) id = highWater++;
+		else return -1;
+		
+		finished[id] = 0;
+		startTime[id] = System.nanoTime();
+		finishTime[id] = 0;
+		pos.set(id, pack(start.getX(), start.getY()));
+		size++;
+		OccupancyIndex o = occupancy;
+		if(o != null) o.add(id, start.getX(), start.getY());
+		return id;
+	}
+	
+	/**
+	 * Removes the player in the given slot. The slot may be reused by a later
+	 * add().
+	 * @param id slot of the player
+	 */
+	public synchronized void remove(int id){
+		if(!isActive(id)) return;
+		pos.set(id, EMPTY);
+		OccupancyIndex o = occupancy;
+		if(o != null) o.remove(id);
+		free[freeCount++] = id;
+		size--;
+	}
+	
+	/**
+	 * Gets the number of players in the registry.
+	 * @return number of players
+	 */
+	public int size(){
+		return size;
+	}
+	
+	public int getCapacity(){
+		return capacity;
+	}
+	
+	/**
+	 * Gets one more than the highest slot that has ever been used. Every
+	 * player is in a slot below this.
+	 * @return upper bound of used slots
+	 */
+	public int getHighWater(){
+		return highWater;
+	}
+	
+	public boolean isActive(int id){
+		return id >= 0 && id < capacity && pos.get(id) != EMPTY;
+	}
+	
+	/**
+	 * Gets the position of a player, packed into one long so that x and y
+	 * always come from the same move. Use unpackX() and unpackY() to read it.
+	 * @param id slot of the player
+	 * @return packed position
+	 */
+	public long getPosition(int id){
+		return pos.get(id);
+	}
+	
+	public static int unpackX(long p){
+		return (int)(p >>> 32);
+	}
+	public static int unpackY(long p){
+		return (int)p;
+	}
+	
+	public boolean hasFinished(int id){
+		return finished[id] != 0;
+	}
+	
+	/**
+	 * Gets how long the player has been in the maze, or how long it took them
+	 * to finish if they have.
+	 * @param id slot of the player
+	 * @return time in nanoseconds
+	 */
+	public long getTime(int id){
+		if(finished[id] != 0) return finishTime[id] - startTime[id];
+		return System.nanoTime() - startTime[id];
+	}
+	
+	/**
+	 * Attempts to move the player in the given Direction, following the same
+	 * rules as Player.move(), including collisions if the OccupancyIndex has
+	 * them on. If the move takes the player onto the goal, the player is
+	 * marked as finished, like Player.checkWin().
+	 * @param id slot of the player
+	 * @param dir Direction to move
+	 * @return true if the player moved, false otherwise
+	 */
+	public boolean move(int id, Direction dir){
+		long p = pos.get(id);
+		if(p == EMPTY || finished[id] != 0) return false;
+		int nx = unpackX(p), ny = unpackY(p);
+		Cell c = maze.getCell(nx, ny);
+		if(!c.hasNeighbor(dir) || c.hasWall(dir)) return false;
+		
+		switch(dir){
+			case NORTH: ny--; break;
+			case SOUTH: ny++; break;
+			case EAST: nx++; break;
+			case WEST: nx--; break;
+		}
+		OccupancyIndex o = occupancy;
+		if(o != null && !o.tryMove(id, nx, ny)) return false;
+		Point goal = maze.getOptions().getGoal();
+		boolean win = nx == goal.getX() && ny == goal.getY();
+		if(win){
+			finishTime[id] = System.nanoTime();
+			finished[id] = 1;
+		}
+		if(!pos.compareAndSet(id, p, pack(nx, ny))){
+			//removed or restarted since p was read, so the move is stale
+			if(win){
+				finished[id] = 0;
+				finishTime[id] = 0;
+			}
+			if(o != null) resync(id);
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Puts a player back in the OccupancyIndex where the registry has them,
+	 * after a move claimed a Cell in the index and then lost to restart().
+	 */
+	private synchronized void resync(int id){
+		OccupancyIndex o = occupancy;
+		long p = pos.get(id);
+		if(o != null && p != EMPTY) o.move(id, unpackX(p), unpackY(p));
+	}
+	
+	/**
+	 * Returns a player to the given Point and restarts their timer. Nothing
+	 * happens if the slot is empty. This takes the same lock as remove(), so
+	 * a slot that is being freed is not filled again.
+	 * @param id slot of the player
+	 * @param start Point to return to
+	 */
+	public synchronized void restart(int id, Point start){
+		if(!isActive(id)) return;
+		finished[id] = 0;
+		finishTime[id] = 0;
+		startTime[id] = System.nanoTime();
+		pos.setRelease(id, pack(start.getX(), start.getY()));
+		OccupancyIndex o = occupancy;
+		if(o != null) o.move(id, start.getX(), start.getY());
+	}
+	
+	/**
+	 * Calls action with the slot of every player, in slot order.
+	 * @param action action to call for each player
+	 */
+	public void forEach(IntConsumer action){
+		forEach(0, highWater, action);
+	}
+	
+	/**
+	 * Calls action with the slot of every player in the given range of slots.
+	 * Splitting the slots into ranges lets several threads go
+	 * through the players at once.
+	 * @param from first slot
+	 * @param to slot to stop at (exclusive)
+	 * @param action action to call for each player
+	 */
+	public void forEach(int from, int to, IntConsumer action){
+		int end = Math.min(to, highWater);
+		for(int id = Math.max(from, 0); id < end; id++)
+			if(pos.get(id) != EMPTY) action.accept(id);
+	}
+	
+	/**
+	 * Counts the players who have finished the maze.
+	 * @return number of finished players
+	 */
+	public int countFinished(){
+		int count = 0;
+		int end = highWater;
+		for(int id = 0; id < end; id++)
+			if(pos.get(id) != EMPTY && finished[id] != 0) count++;
+		return count;
+	}
+	
+	private static long pack(int x, int y){
+		return (long)x << 32 | (y & 0xFFFFFFFFL);
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A histogram of positive values, such as times in nanoseconds, in
+ * logarithmic buckets. Values below 64 have a bucket each; above that, every
+ * power of two is split into 32 buckets, so any value is known to within
+ * about 3% no matter how large it is. The whole range of a long fits in
+ * under 2000 buckets, so a histogram takes the same space whether it holds
+ * ten samples or ten million, and two histograms can be merged by adding
+ * their buckets.
+ * 
+ * Histograms are not thread-safe.
+ * @author Jeffery Thompson
+ */
+public class Histogram {
+	private static final int SUB_BITS = 6;
+	private static final int EXACT = 1 << SUB_BITS;
+	private static final int HALF = EXACT >> 1;
+	private static final int BUCKETS = EXACT + (63 - SUB_BITS)*HALF;
+	
+	private final long[] counts = new long[BUCKETS];
+	private long count = 0;
+	private long sum = 0;
+	private long min = Long.MAX_VALUE, max = 0;
+	
+	/**
+	 * Adds a value to the histogram. Negative values are counted as 0.
+	 * @param v value to add
+	 */
+	public void record(long v){
+		if(v < 0) v = 0;
+		counts[index(v)]++;
+		count++;
+		sum += v;
+		if(v < min) min = v;
+		if(v > max) max = v;
+	}
+	
+	/**
+	 * Adds every value of another histogram to this one.
+	 * @param h histogram to add
+	 */
+	public void add(Histogram h){
+		for(int i = 0; i < BUCKETS; i++) counts[i] += h.counts[i];
+		count += h.count;
+		sum += h.sum;
+		min = Math.min(min, h.min);
+		max = Math.max(max, h.max);
+	}
+	
+	public long getCount(){
+		return count;
+	}
+	public long getMin(){
+		return count == 0 ? 0 : min;
+	}
+	public long getMax(){
+		return max;
+	}
+	public double getMean(){
+		return count == 0 ? 0 : (double)sum/count;
+	}
+	
+	/**
+	 * Gets the value that the given percentage of values are at or below.
+	 * The value is the middle of the bucket it falls in, except for 0 and
+	 * 100, which give the exact smallest and largest values.
+	 * @param percent percentile, from 0 to 100
+	 * @return value at the percentile, or 0 if the histogram is empty
+	 */
+	public long getPercentile(double percent){
+		if(count == 0) return 0;
+		if(percent <= 0) return min;
+		if(percent >= 100) return max;
+		long target = Math.max(1, (long)Math.ceil(percent/100*count));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++){
+			seen += counts[i];
+			if(seen >= target){
+				long v = lowest(i) + (width(i) >> 1);
+				return Math.max(getMin(), Math.min(max, v));
+			}
+		}
+		return max;
+	}
+	
+	/**
+	 * Gets the percentage of values less than v, for ranking a new value
+	 * against the ones recorded. Values in the same bucket as v are counted
+	 * as neither below nor above it.
+	 * @param v value to rank
+	 * @return percentage of values below v's bucket, from 0 to 100
+	 */
+	public double getPercentBelow(long v){
+		if(count == 0) return 0;
+		int index = index(Math.max(0, v));
+		long below = 0;
+		for(int i = 0; i < index; i++) below += counts[i];
+		return 100.0*below/count;
+	}
+	
+	/**
+	 * Gets the percentage of values greater than v.
+	 * @param v value to rank
+	 * @return percentage of values above v's bucket, from 0 to 100
+	 */
+	public double getPercentAbove(long v){
+		if(count == 0) return 0;
+		int index = index(Math.max(0, v));
+		long above = 0;
+		for(int i = index + 1; i < BUCKETS; i++) above += counts[i];
+		return 100.0*above/count;
+	}
+	
+	/**
+	 * Writes the histogram. Only the buckets that hold values are written,
+	 * as varints, so a histogram of a few hundred races takes a few hundred
+	 * bytes.
+	 * @param out stream to write to
+	 * @throws IOException if the histogram could not be written
+	 */
+	public void write(DataOutput out) throws IOException {
+		int used = 0;
+		for(int i = 0; i < BUCKETS; i++) if(counts[i] != 0) used++;
+		writeVarlong(out, used);
+		int last = 0;
+		for(int i = 0; i < BUCKETS; i++){
+			if(counts[i] == 0) continue;
+			writeVarlong(out, i - last);
+			writeVarlong(out, counts[i]);
+			last = i;
+		}
+		writeVarlong(out, sum);
+		writeVarlong(out, getMin());
+		writeVarlong(out, max);
+	}
+	
+	/**
+	 * Reads a histogram written by write().
+	 * @param in stream to read from
+	 * @return the Histogram
+	 * @throws IOException if the histogram could not be read
+	 */
+	public static Histogram read(DataInput in) throws IOException {
+		Histogram h = new Histogram();
+		int used = (int)readVarlong(in);
+		int index = 0;
+		for(int n = 0; n < used; n++){
+			index += (int)readVarlong(in);
+			if(index >= BUCKETS) throw new IOException("Bad histogram bucket " + index);
+			h.counts[index] = readVarlong(in);
+			h.count += h.counts[index];
+		}
+		h.sum = readVarlong(in);
+		h.min = h.count == 0 ? Long.MAX_VALUE : readVarlong(in);
+		if(h.count == 0) readVarlong(in);
+		h.max = readVarlong(in);
+		return h;
+	}
+	
+	static int index(long v){
+		if(v < EXACT) return (int)v;
+		int shift = 63 - Long.numberOfLeadingZeros(v) - (SUB_BITS - 1);
+		return EXACT + (shift - 1)*HALF + (int)(v >>> shift) - HALF;
+	}
+	
+	static long lowest(int i){
+		if(i < EXACT) return i;
+		int j = i - EXACT;
+		return (long)(j % HALF + HALF) << (j/HALF + 1);
+	}
+	
+	static long width(int i){
+		return i < EXACT ? 1 : 1L << ((i - EXACT)/HALF + 1);
+	}
+	
+	static void writeVarlong(DataOutput out, long v) throws IOException {
+		while((v & ~0x7FL) != 0){
+			out.writeByte((int)((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		out.writeByte((int)v);
+	}
+	
+	static long readVarlong(DataInput in) throws IOException {
+		long v = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in.readByte();
+			v |= (long)(b & 0x7F) << shift;
+			shift += 7;
+		} while(b < 0);
+		return v;
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.stats;
+
+import mazegame.MazeOptions;
+import mazegame.MazeOptions.Algorithm;
+
+/**
+ * Identifies the maze a race was run in: its size, Algorithm and seed. Races
+ * with the same key were run in the same maze.
+ * @author Jeffery Thompson
+ */
+public final class RaceKey {
+	private final int sizeX, sizeY;
+	private final Algorithm algorithm;
+	private final long seed;
+	
+	public RaceKey(int x, int y, Algorithm a, long s){
+		sizeX = x;
+		sizeY = y;
+		algorithm = a;
+		seed = s;
+	}
+	
+	/**
+	 * Creates the key of a maze made with the MazeOptions o.
+	 * @param o MazeOptions of the maze
+	 */
+	public RaceKey(MazeOptions o){
+		this(o.getSizeX(), o.getSizeY(), o.getAlgorithm(), o.getSeed());
+	}
+	
+	public int getSizeX(){
+		return sizeX;
+	}
+	public int getSizeY(){
+		return sizeY;
+	}
+	public Algorithm getAlgorithm(){
+		return algorithm;
+	}
+	public long getSeed(){
+		return seed;
+	}
+	
+	/**
+	 * Checks if another key is for a maze of the same size and Algorithm,
+	 * whatever its seed.
+	 * @param k key to compare to
+	 * @return true if the mazes are of the same kind
+	 */
+	public boolean sameKind(RaceKey k){
+		return sizeX == k.sizeX && sizeY == k.sizeY && algorithm == k.algorithm;
+	}
+	
+	@Override
+	public int hashCode(){
+		int h = sizeX*31 + sizeY;
+		h = h*31 + algorithm.ordinal();
+		return h*31 + Long.hashCode(seed);
+	}
+	
+	@Override
+	public boolean equals(Object o){
+		if(this == o) return true;
+		if(!(o instanceof RaceKey)) return false;
+		RaceKey k = (RaceKey)o;
+		return sameKind(k) && seed == k.seed;
+	}
+	
+	@Override
+	public String toString(){
+		return sizeX + "x" + sizeY + " " + algorithm.name() + " " + seed;
+	}
+}
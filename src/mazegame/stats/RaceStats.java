@@ -0,0 +1,199 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Jeffery Thompson.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package mazegame.stats;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import mazegame.MazeOptions;
+import mazegame.MazeOptions.Algorithm;
+
+/**
+ * Collects the finish times of races. Times are kept in a Histogram for
+ * each maze, identified by a RaceKey, so any number of races takes a fixed
+ * amount of space per maze, and the times for every maze of a size and
+ * Algorithm can be combined to rank a new time against them.
+ * 
+ * The statistics can be saved to a file and read back. Every method is
+ * synchronized, so races may be recorded from any thread.
+ * @author Jeffery Thompson
+ */
+public class RaceStats {
+	private static final int MAGIC = 0x4D5A5354; //"MZST"
+	private static final int VERSION = 1;
+	
+	private final Map<RaceKey, Histogram> races = new LinkedHashMap();
+	
+	/**
+	 * Gets the file statistics are kept in by default, in the user's home
+	 * directory.
+	 * @return default statistics file
+	 */
+	public static File defaultFile(){
+		return new File(System.getProperty("user.home"), ".mazegame-stats");
+	}
+	
+	/**
+	 * Records a finish time.
+	 * @param o MazeOptions of the maze the race was in
+	 * @param nanos finish time in nanoseconds
+	 */
+	public synchronized void record(MazeOptions o, long nanos){
+		record(new RaceKey(o), nanos);
+	}
+	
+	public synchronized void record(RaceKey k, long nanos){
+		Histogram h = races.get(k);
+		if(h == null){
+			h = new Histogram();
+			races.put(k, h);
+		}
+		h.record(nanos);
+	}
+	
+	/**
+	 * Gets the finish times for one maze.
+	 * @param k key of the maze
+	 * @return copy of the times, empty if there are none
+	 */
+	public synchronized Histogram get(RaceKey k){
+		Histogram copy = new Histogram();
+		Histogram h = races.get(k);
+		if(h != null) copy.add(h);
+		return copy;
+	}
+	
+	/**
+	 * Gets the finish times for every maze of a size and Algorithm.
+	 * @param sizeX horizontal size of the mazes
+	 * @param sizeY vertical size of the mazes
+	 * @param a Algorithm of the mazes
+	 * @return combined times, empty if there are none
+	 */
+	public synchronized Histogram get(int sizeX, int sizeY, Algorithm a){
+		RaceKey kind = new RaceKey(sizeX, sizeY, a, 0);
+		Histogram total = new Histogram();
+		for(Map.Entry<RaceKey, Histogram> e : races.entrySet())
+			if(e.getKey().sameKind(kind)) total.add(e.getValue());
+		return total;
+	}
+	
+	/**
+	 * Gets the keys of every maze with recorded times, in the order they
+	 * were first recorded.
+	 * @return keys of the mazes
+	 */
+	public synchronized List<RaceKey> getKeys(){
+		return new ArrayList(races.keySet());
+	}
+	
+	/**
+	 * Writes the statistics to a file. The file is written next to the old
+	 * one first, so a failed save does not lose the old statistics.
+	 * @param f file to write
+	 * @throws IOException if the file could not be written
+	 */
+	public synchronized void save(File f) throws IOException {
+		File temp = new File(f.getPath() + ".tmp");
+		try(DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(temp)))){
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeInt(races.size());
+			for(Map.Entry<RaceKey, Histogram> e : races.entrySet()){
+				RaceKey k = e.getKey();
+				out.writeInt(k.getSizeX());
+				out.writeInt(k.getSizeY());
+				out.writeByte(k.getAlgorithm().ordinal());
+				out.writeLong(k.getSeed());
+				e.getValue().write(out);
+			}
+		}
+		if(f.exists() && !f.delete()) throw new IOException("Could not replace " + f);
+		if(!temp.renameTo(f)) throw new IOException("Could not write " + f);
+	}
+	
+	/**
+	 * Reads statistics saved by save().
+	 * @param f file to read
+	 * @return the statistics, empty if the file does not exist
+	 * @throws IOException if the file could not be read
+	 */
+	public static RaceStats load(File f) throws IOException {
+		RaceStats stats = new RaceStats();
+		if(!f.exists()) return stats;
+		try(DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(f)))){
+			if(in.readInt() != MAGIC) throw new IOException("Not a statistics file");
+			int version = in.readByte();
+			if(version != VERSION) throw new IOException("Unsupported statistics version " + version);
+			Algorithm[] algorithms = Algorithm.values();
+			for(int n = in.readInt(); n > 0; n--){
+				RaceKey k = new RaceKey(in.readInt(), in.readInt(),
+						algorithms[in.readByte()], in.readLong());
+				stats.races.put(k, Histogram.read(in));
+			}
+		}
+		return stats;
+	}
+	
+	/**
+	 * Prints the statistics in a file.
+	 * 
+	 * Usage: stats [file]
+	 * @param args command line arguments
+	 * @throws IOException if the file could not be read
+	 */
+	public static void main(String[] args) throws IOException {
+		File f = args.length > 0 ? new File(args[0]) : defaultFile();
+		RaceStats stats = load(f);
+		System.out.println(String.format("%-32s %8s %10s %10s %10s %10s",
+				"Maze", "Races", "Best", "Median", "90%", "Worst"));
+		for(RaceKey k : stats.getKeys()){
+			Histogram h = stats.get(k);
+			System.out.println(String.format("%-32s %8d %10s %10s %10s %10s", k,
+					h.getCount(), format(h.getMin()), format(h.getPercentile(50)),
+					format(h.getPercentile(90)), format(h.getMax())));
+		}
+	}
+	
+	/**
+	 * Formats a time as minutes, seconds and milliseconds.
+	 * @param nanos time in nanoseconds
+	 * @return time as mm:ss.SSS
+	 */
+	public static String format(long nanos){
+		long millis = nanos/1000000;
+		return String.format("%02d:%02d.%03d", millis/60000, millis/1000 % 60, millis % 1000);
+	}
+}